@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.gradle
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.GradleException
+import org.gradle.api.tasks.TaskAction
+
+import com.datamaio.scd4j.DriftDetector
+import com.datamaio.scd4j.conf.Configuration
+import com.datamaio.scd4j.conf.Env
+import com.datamaio.scd4j.conf.Install
+
+/**
+ * Task used to check if the targets of the modules have drifted from what
+ * the last scd4j run has applied. Nothing is installed and no backup is taken.
+ * <p>
+ * The report is machine readable. Use <code>./gradlew drift -PfailOnDrift=true</code> 
+ * in order to fail the build whenever a drift is found (e.g. in a cron job).
+ *
+ * @author Fernando Rubbo
+ */
+class DriftTask extends DefaultTask {
+	
+	@TaskAction
+    def action() {
+		def envs = project.scd4j.install.env
+		def config = Input.config(project)
+		def modules = Input.modules(project)
+		
+		if(!Input.validate(modules, config)) {
+			throw new GradleException("Invalid config or modules. Run 'validate' task for more details")
+		}
+		
+		def env = new Env(envs.production, envs.staging, envs.testing)
+		def drifted = false
+		for(module in modules) {
+			Install install = new Install(module.toPath(), config.toPath(), env);
+			// the very same settings of the run, e.g. the template engine used to render the expected content
+			Configuration conf = new Configuration(install, Input.settings(project), [:], project.projectDir);
+			def report = new DriftDetector(conf).detect()
+			println "MODULE\t${module}"
+			println report
+			drifted |= report.hasDrifted()
+		}
+		
+		if(drifted && failOnDrift(project)) {
+			throw new GradleException("Drift detected!")
+		}
+    }
+	
+	def failOnDrift(project) {
+		return project.hasProperty("failOnDrift") ? "true".equals(project.failOnDrift) : false
+	}
+}
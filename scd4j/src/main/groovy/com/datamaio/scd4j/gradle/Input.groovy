@@ -27,6 +27,13 @@ import org.apache.commons.configuration.PropertiesConfiguration
 
 import static com.datamaio.scd4j.conf.Configuration.MODULES_FOLDER;
 import static com.datamaio.scd4j.conf.Configuration.CONFIG_FOLDER;
+import com.datamaio.scd4j.conf.ApplyConfig
+import com.datamaio.scd4j.conf.CacheConfig
+import com.datamaio.scd4j.conf.HookConfig
+import com.datamaio.scd4j.conf.IncrementalConfig
+import com.datamaio.scd4j.conf.PlanConfig
+import com.datamaio.scd4j.conf.Settings
+import com.datamaio.scd4j.conf.Template
 import com.datamaio.scd4j.util.Encryptor
 
 
@@ -55,6 +62,27 @@ class Input {
 		return result;
 	}
 	
+	/** Settings configured in <code>build.gradle</code> plus the <code>-Pplan</code> command line property */
+	static Settings settings(project){
+		def sett = project.scd4j.settings
+		Settings settings = new Settings();
+		settings.setTemplate(new Template(sett.template.engine));
+		settings.setHook(new HookConfig(sett.hook.compiled, sett.hook.session));
+		settings.setCache(new CacheConfig(sett.cache.enabled, sett.cache.maxsize));
+		settings.setApply(new ApplyConfig(sett.parallel.enabled, sett.parallel.threads));
+		settings.setIncremental(new IncrementalConfig(sett.incremental.enabled, sett.incremental.postonunchanged));
+		settings.setPlan(plan(project) ?: new PlanConfig());
+		return settings
+	}
+	
+	static PlanConfig plan(project) {
+		if (!project.hasProperty("plan") || "false".equals(project.plan)) {
+			return null
+		}
+		def dir = project.plan
+		return new PlanConfig(true, ("".equals(dir) || "true".equals(dir)) ? null : dir)
+	}
+	
 	static boolean validate(modules, config) {
 		return validateModules(modules) && validateConfig(config);
 	}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.gradle
+
+import static com.datamaio.scd4j.conf.Configuration.CONFIG_FOLDER
+
+import java.util.function.BiFunction
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.GradleException
+import org.gradle.api.tasks.TaskAction
+
+import com.datamaio.scd4j.RenderFarm
+import com.datamaio.scd4j.cmd.Command
+import com.datamaio.scd4j.cmd.HostFacts
+import com.datamaio.scd4j.conf.Configuration
+import com.datamaio.scd4j.conf.Env
+import com.datamaio.scd4j.conf.Install
+import com.datamaio.scd4j.conf.PlanConfig
+
+/**
+ * Task used to render the plan (see <code>-Pplan</code> in {@link Scd4jTask}) of the modules for 
+ * many config files at once. Nothing is changed in this machine.
+ * <p>
+ * Use <code>./gradlew render -Pconfigs=wildfly/*.conf</code>, where the glob is relative to the 
+ * <code>config</code> directory. Configs are rendered concurrently (<code>-Pthreads=N</code>, 
+ * default is the number of processors), each one into <code>plan/&lt;module&gt;/&lt;config&gt;/root</code> 
+ * (or <code>-Pplan=/some/dir</code>).
+ *
+ * @author Fernando Rubbo
+ */
+class RenderTask extends DefaultTask {
+	
+	@TaskAction
+    def action() {
+		if(!project.hasProperty("configs")) {
+			throw new GradleException("Inform the configs to render. Example: ./gradlew render -Pconfigs=wildfly/*.conf")
+		}
+		def envs = project.scd4j.install.env
+		def modules = Input.modules(project)
+		def configs = project.fileTree(dir: CONFIG_FOLDER, include: project.configs).files.sort()
+		
+		if(configs.isEmpty()) {
+			throw new GradleException("No config matches '${project.configs}' in ${project.file(CONFIG_FOLDER)}")
+		}
+		if(!Input.validateModules(modules)) {
+			throw new GradleException("Invalid modules. Run 'validate' task for more details")
+		}
+		
+		def plan = Input.plan(project) ?: new PlanConfig(true, null)
+		def threads = project.hasProperty("threads") ? Integer.parseInt(project.threads) : 0
+		def dependencies = project.tasks.scd4j.mapDependencies2Path()
+		def factory = { module, config ->
+			// a brand new env, properties and settings for each config. Nothing is shared among threads
+			def env = new Env(envs.production, envs.staging, envs.testing)
+			def settings = Input.settings(project)
+			settings.setPlan(plan)
+			new Configuration(new Install(module, config, env), settings, dependencies, project.projectDir)
+		} as BiFunction<java.nio.file.Path, java.nio.file.Path, Configuration>
+		
+		println "Rendering ${modules.length} module(s) for ${configs.size()} config(s)"
+		// a gradle daemon keeps the JVM among builds. So, the host may have changed since the last run
+		HostFacts.refresh()
+		Command.get().invalidatePackages()
+		def failures = new RenderFarm(modules*.toPath() as java.nio.file.Path[], configs*.toPath(), factory, threads).render()
+		failures.each { config, e -> println "FAILED\t${config}\t${e.message}" }
+		if(!failures.isEmpty()) {
+			throw new GradleException("${failures.size()} of ${configs.size()} configs could not be rendered")
+		}
+    }
+}
@@ -82,6 +82,66 @@ class TemplateNestedExtention{
 	}
 }
 
+/**
+ *
+ * @author Fernando Rubbo
+ */
+class HookNestedExtention{
+	boolean compiled = false
+	boolean session = false
+	void compiled(boolean comp){
+		compiled = comp
+	}
+	void session(boolean sess){
+		session = sess
+	}
+}
+
+/**
+ *
+ * @author Fernando Rubbo
+ */
+class CacheNestedExtention{
+	boolean enabled = true
+	long maxsize = 64
+	void enabled(boolean en){
+		enabled = en
+	}
+	void maxsize(long mb){
+		maxsize = mb
+	}
+}
+
+/**
+ *
+ * @author Fernando Rubbo
+ */
+class ParallelNestedExtention{
+	boolean enabled = false
+	int threads = 0
+	void enabled(boolean en){
+		enabled = en
+	}
+	void threads(int t){
+		threads = t
+	}
+}
+
+/**
+ *
+ * @author Fernando Rubbo
+ */
+class IncrementalNestedExtention{
+	boolean enabled = false
+	boolean postonunchanged = false
+	void enabled(boolean en){
+		enabled = en
+	}
+	void postonunchanged(boolean post){
+		postonunchanged = post
+	}
+}
+
 /**
  *
  * @author Fernando Rubbo
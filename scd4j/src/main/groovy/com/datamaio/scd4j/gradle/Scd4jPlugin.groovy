@@ -49,6 +49,10 @@ class Scd4jPlugin implements Plugin<Project> {
         project.scd4j.install.extensions.create("env", EnvNestedExtension)
 		project.scd4j.extensions.create("settings", SettingsNestedExtention)
 		project.scd4j.settings.extensions.create("template", TemplateNestedExtention)		
+		project.scd4j.settings.extensions.create("hook", HookNestedExtention)
+		project.scd4j.settings.extensions.create("cache", CacheNestedExtention)
+		project.scd4j.settings.extensions.create("parallel", ParallelNestedExtention)
+		project.scd4j.settings.extensions.create("incremental", IncrementalNestedExtention)
 		project.scd4j.settings.extensions.create("linux", LinuxNestedExtention)
 		project.scd4j.settings.extensions.create("windows", WindowsNestedExtention)
 		
@@ -74,6 +78,14 @@ class Scd4jPlugin implements Plugin<Project> {
 			group = "scd4j Tools"
 			description = "Helper to perform a basic sanity check in the configuration (includes password check)"
 		}
+		project.task('drift', type:DriftTask){
+			group = "scd4j Tools"
+			description = "Reports (without installing anything) the targets that have drifted from the last applied manifest"
+		}
+		project.task('render', type:RenderTask){
+			group = "scd4j Tools"
+			description = "Renders (without installing anything) the plan of the modules for many configs at once. Use -Pconfigs=<glob>"
+		}
 		project.task('changepassword', type:ChangePasswordTask){
 			group = "scd4j Tools"
 			description = "Helper to change password for encrypted properties, all at once"
@@ -99,7 +111,7 @@ class Scd4jPlugin implements Plugin<Project> {
 			group = "scd4j"
 			description = "Generates a zip to be installed in another environment. Triggered in the default gradle artifacts generation."
 			from '.'
-			exclude 'build', 'log', 'backup', 'target', ".gradle"
+			exclude 'build', 'log', 'backup', 'cache', 'manifest', 'plan', 'target', ".gradle"
 		}
 		project.configurations {
 			archives
@@ -110,8 +122,8 @@ class Scd4jPlugin implements Plugin<Project> {
 		
 		// -- override the default behaviour to delete more folders
 		project.clean {
-			description = "Deletes the following folders: build, backup, log and target"
-			delete "backup","log", "target"
+			description = "Deletes the following folders: build, backup, log, cache, plan and target"
+			delete "backup","log", "cache", "plan", "target"
 		}
     }
 	
@@ -32,11 +32,11 @@ import org.gradle.internal.jvm.Jvm
 
 import com.datamaio.scd4j.EnvConfigurator
 import com.datamaio.scd4j.cmd.Command;
+import com.datamaio.scd4j.cmd.HostFacts
 import com.datamaio.scd4j.conf.Configuration
 import com.datamaio.scd4j.conf.Env
 import com.datamaio.scd4j.conf.Install
 import com.datamaio.scd4j.conf.Settings
-import com.datamaio.scd4j.conf.Template
 import com.datamaio.scd4j.ui.AlertMessageDialog;
 
 /**
@@ -45,6 +45,10 @@ import com.datamaio.scd4j.ui.AlertMessageDialog;
  * In order to avoid prompting for confirmation use <code>./gradlew -PassumeYes=true</code>. In other words, 
  * this config automatic answer "yes" all prompts and run non-interactively.
  * <p> 
+ * In order to only render a plan (dry run) use <code>./gradlew -Pplan</code>. Everything is rendered under 
+ * <code>plan/&lt;module&gt;/&lt;config&gt;/root</code> (or <code>-Pplan=/some/dir</code>), commands are recorded 
+ * instead of executed and nothing is changed in this machine. See <code>plan.txt</code> for the summary. 
+ * <p> 
  *
  * @author Fernando Rubbo
  * @author Mateus M. da Costa
@@ -79,6 +83,9 @@ class Scd4jTask extends DefaultTask {
 		println "====== Instalation Configuration ======"
         println "CONFIG FILE   : $config" 
         println "MODULE DIRS   : $modules"
+		if (Input.plan(project)) {
+			println "PLAN (DRY RUN): nothing is going to be changed in this machine"
+		}
 		println "=================================================================="
 		
 		if ( configuredGradleVersion != currentGradleVersion ) {
@@ -92,7 +99,7 @@ class Scd4jTask extends DefaultTask {
 			if( Input.validate(modules, config) ) {
 				def console = System.console()
 				
-				if (assumeYes(project)) {
+				if (assumeYes(project) || Input.plan(project)) {
 					run(settings, env, modules, config)
 				} else if(console) {
 					def ok = console.readLine('\nReview the above config. Type "yes/y" to procceed or anything else to abort: ')
@@ -137,10 +144,12 @@ class Scd4jTask extends DefaultTask {
 	def run(sett, envs, modules, config) {
 		def env = new Env(envs.production, envs.staging, envs.testing)
 		def dependencies = mapDependencies2Path();
+		// a gradle daemon keeps the JVM among builds. So, the host may have changed since the last run
+		HostFacts.refresh()
+		Command.get().invalidatePackages()
 		for(module in modules) {	
 			Install install = new Install(module.toPath(), config.toPath(), env);
-			Settings settings = new Settings();
-			settings.setTemplate(new Template(sett.template.engine));
+			Settings settings = Input.settings(project);
 			Configuration conf = new Configuration(install, settings, dependencies, project.projectDir);
 			new EnvConfigurator(conf).execute();
 		}
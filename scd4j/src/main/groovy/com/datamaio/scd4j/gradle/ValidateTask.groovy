@@ -26,7 +26,19 @@ package com.datamaio.scd4j.gradle
 import org.gradle.api.DefaultTask
 import org.gradle.api.tasks.TaskAction
 
+import com.datamaio.scd4j.ModuleValidator
+import com.datamaio.scd4j.conf.Configuration
+import com.datamaio.scd4j.conf.Env
+import com.datamaio.scd4j.conf.Install
+
 /**
+ * Task used to validate the config file and the modules without installing anything.
+ * <p>
+ * Beyond checking that modules and config exist (and that encrypted properties match the 
+ * password), every <code>.hook</code> is compiled and every <code>.tmpl</code> is compiled 
+ * and rendered against the config properties, in parallel (<code>-Pthreads=N</code>, default 
+ * is the number of processors). Problems are reported with file and line. Compiled hooks and 
+ * templates are kept in the cache, so the following run starts warm.
  *
  * @author Fernando Rubbo
  */
@@ -40,7 +52,7 @@ class ValidateTask extends DefaultTask {
 	- Config file: $config
 	- Module inputs: $modules"""
 				
-		if(Input.validate(modules, config) && Input.validateConfigEncryption(config)) {
+		if(Input.validate(modules, config) && Input.validateConfigEncryption(config) && validateFiles(modules, config)) {
 			println "======================="
 			println "=== Config is valid ==="
 			println "======================="
@@ -50,4 +62,20 @@ class ValidateTask extends DefaultTask {
 			println "========================="
 		}
     }
+	
+	def validateFiles(modules, config) {
+		def envs = project.scd4j.install.env
+		def env = new Env(envs.production, envs.staging, envs.testing)
+		def dependencies = project.tasks.scd4j.mapDependencies2Path()
+		def confs = modules.collect { module ->
+			new Configuration(new Install(module.toPath(), config.toPath(), env), Input.settings(project), dependencies, project.projectDir)
+		}
+		def threads = project.hasProperty("threads") ? Integer.parseInt(project.threads) : 0
+		
+		def problems = new ModuleValidator(confs, threads).validate()
+		problems.each { println it }
+		def errors = problems.count { it.error }
+		println "\nHOOKS AND TEMPLATES: ${errors} error(s), ${problems.size() - errors} warning(s)"
+		return errors == 0
+	}
 }
@@ -0,0 +1,91 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.datamaio.scd4j.util.LogContext;
+
+/**
+ * Bounded pool used to apply files (copy and template merge) in parallel.
+ * <p>
+ * Tasks are submitted by the thread walking the module. Whenever an ordering
+ * point is reached (e.g. a file with a hook, or the end of the walk) that
+ * thread calls {@link #await()} and waits for all pending tasks.
+ * 
+ * @author Fernando Rubbo
+ */
+class ApplyPool implements AutoCloseable {
+	private final ForkJoinPool pool;
+	private final List<ForkJoinTask<?>> pending = new ArrayList<>();
+	private final AtomicInteger applied = new AtomicInteger();
+	
+	ApplyPool(int threads) {
+		this.pool = new ForkJoinPool(threads);
+	}
+	
+	void submit(Runnable task) {
+		pending.add(pool.submit(LogContext.runnable(() -> {
+			task.run();
+			applied.incrementAndGet();
+		})));
+	}
+	
+	/**
+	 * Waits for all pending tasks. If any of them has failed, the first failure is rethrown.
+	 */
+	void await() {
+		RuntimeException failure = null;
+		for (ForkJoinTask<?> task : pending) {
+			try {
+				task.join();
+			} catch (RuntimeException e) {
+				if(failure==null) {
+					failure = e;
+				}
+			}
+		}
+		pending.clear();
+		if(failure!=null) {
+			throw failure;
+		}
+	}
+	
+	int getApplied() {
+		return applied.get();
+	}
+	
+	int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+}
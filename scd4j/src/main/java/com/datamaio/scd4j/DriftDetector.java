@@ -0,0 +1,117 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.datamaio.scd4j.DriftReport.Status;
+import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.util.Manifest;
+import com.datamaio.scd4j.util.Manifest.Entry;
+import com.datamaio.scd4j.util.Manifest.Stat;
+import com.datamaio.scd4j.util.PathHelper;
+
+/**
+ * Compares the live targets of a module against the manifest written by its
+ * last run (see {@link EnvConfigurator}), without installing anything and
+ * without taking backups.
+ * <p>
+ * Targets are resolved by the same {@link ModuleIndex} used by {@link EnvConfigurator}.
+ * Their metadata is checked in parallel and a file is only hashed when its
+ * metadata differs from the manifest. Each target is classified as:
+ * <ul>
+ * <li> {@link Status#MISSING}: it is expected but does not exist
+ * <li> {@link Status#ADDED}: it exists but was not applied by scd4j (or it should have been deleted by a <code>.del</code> file)
+ * <li> {@link Status#CHANGED}: its content, mode or owner differs from what was applied
+ * </ul>
+ * 
+ * @author Fernando Rubbo
+ */
+public class DriftDetector {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	
+	private final Configuration conf;
+	private final PathHelper pathHelper;
+	
+	public DriftDetector(Configuration conf) {
+		this.conf = conf;
+		this.pathHelper = new PathHelper(conf);
+	}
+	
+	public DriftReport detect() {
+		return detect(Manifest.load(conf.getManifestFile()));
+	}
+	
+	DriftReport detect(final Manifest manifest) {
+		final Path module = conf.getModule();
+		final DriftReport report = new DriftReport();
+		
+		final ModuleIndex index = ModuleIndex.scan(module, pathHelper);
+		List<ModuleIndex.Entry> entries = new ArrayList<>(index.getDeletes());
+		for (ModuleIndex.Entry entry : index.getApplies()) {
+			if(entry.getKind()!=ModuleIndex.Kind.DIRECTORY) {
+				entries.add(entry);
+			}
+		}
+		LOGGER.info("Checking " + entries.size() + " targets of module " + module);
+		entries.parallelStream()
+			.forEach(entry -> {
+				Path target = entry.getTarget();
+				if(entry.getKind()==ModuleIndex.Kind.DELETE) {
+					report.add(Files.exists(target) ? Status.ADDED : null, target);
+				} else {
+					report.add(check(target, manifest.get(target)), target);
+				}
+			});
+		return report;
+	}
+	
+	/** @return the drift status of the target or <code>null</code> if it matches the manifest */
+	private Status check(Path target, Entry entry) {
+		Stat stat = Stat.of(target);
+		if(stat==null) {
+			return Status.MISSING;
+		}
+		if(entry==null) {
+			return Status.ADDED;
+		}
+		if(stat.matches(entry)) {
+			return null;
+		}
+		
+		// metadata changed. Only now the content must be read
+		Entry current = Entry.of(target);
+		if(current==null) {
+			return Status.MISSING;
+		}
+		boolean same = current.getHash().equals(entry.getHash()) 
+				&& current.getMode().equals(entry.getMode())
+				&& current.getOwner().equals(entry.getOwner());
+		return same ? null : Status.CHANGED;
+	}
+}
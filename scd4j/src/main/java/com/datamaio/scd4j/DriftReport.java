@@ -0,0 +1,124 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Result of a {@link DriftDetector} execution.
+ * <p>
+ * {@link #toString()} is machine readable. One line per drifted target
+ * (<code>STATUS&lt;tab&gt;path</code>), sorted by path, followed by a summary line:
+ * 
+ * <pre>
+ * SUMMARY	added=0 changed=1 missing=2 unchanged=120
+ * </pre>
+ * 
+ * @author Fernando Rubbo
+ */
+public class DriftReport {
+	public enum Status { ADDED, CHANGED, MISSING }
+	
+	private final List<Drift> drifts = new ArrayList<>();
+	private final AtomicInteger unchanged = new AtomicInteger();
+	
+	/** Adds the target to the report. A <code>null</code> status means that it has not drifted. Thread safe */
+	void add(Status status, Path target) {
+		if(status==null) {
+			unchanged.incrementAndGet();
+		} else {
+			synchronized (drifts) {
+				drifts.add(new Drift(status, target));
+			}
+		}
+	}
+	
+	public boolean hasDrifted() {
+		return !drifts.isEmpty();
+	}
+	
+	public int count(Status status) {
+		int count = 0;
+		for (Drift d : drifts) {
+			if(d.status==status) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	public int getUnchanged() {
+		return unchanged.get();
+	}
+	
+	public List<Drift> getDrifts() {
+		List<Drift> sorted = new ArrayList<>(drifts);
+		Collections.sort(sorted, Comparator.comparing(d -> d.target.toString()));
+		return Collections.unmodifiableList(sorted);
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder buff = new StringBuilder();
+		for (Drift d : getDrifts()) {
+			buff.append(d).append("\n");
+		}
+		buff.append("SUMMARY\t")
+			.append("added=").append(count(Status.ADDED))
+			.append(" changed=").append(count(Status.CHANGED))
+			.append(" missing=").append(count(Status.MISSING))
+			.append(" unchanged=").append(getUnchanged());
+		return buff.toString();
+	}
+	
+	/**
+	 * @author Fernando Rubbo
+	 */
+	public static class Drift {
+		private final Status status;
+		private final Path target;
+		
+		Drift(Status status, Path target) {
+			this.status = status;
+			this.target = target;
+		}
+		
+		public Status getStatus() {
+			return status;
+		}
+		public Path getTarget() {
+			return target;
+		}
+		
+		@Override
+		public String toString() {
+			return status + "\t" + target;
+		}
+	}
+}
@@ -23,33 +23,30 @@
  */
 package com.datamaio.scd4j;
 
-import static com.datamaio.scd4j.conf.Configuration.DELETE_SUFFIX;
-import static com.datamaio.scd4j.conf.Configuration.HOOK_SUFFIX;
-import static com.datamaio.scd4j.conf.Configuration.TEMPLATE_SUFFIX;
 import static java.nio.file.Files.exists;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.datamaio.scd4j.cmd.Command;
 import com.datamaio.scd4j.conf.Configuration;
 import com.datamaio.scd4j.hooks.Hook;
+import com.datamaio.scd4j.hooks.HookEvaluator;
 import com.datamaio.scd4j.hooks.file.FileHookEvaluator;
 import com.datamaio.scd4j.hooks.module.ModuleHookEvaluator;
 import com.datamaio.scd4j.tmpl.TemplateEngine;
 import com.datamaio.scd4j.util.BackupHelper;
 import com.datamaio.scd4j.util.LogHelper;
+import com.datamaio.scd4j.util.Manifest;
 import com.datamaio.scd4j.util.PathHelper;
-import com.datamaio.scd4j.util.io.CopyVisitor;
-import com.datamaio.scd4j.util.io.DeleteVisitor;
+import com.datamaio.scd4j.util.io.ChannelWriter;
 import com.datamaio.scd4j.util.io.FileUtils;
 
 /**
@@ -64,17 +61,28 @@ import com.datamaio.scd4j.util.io.FileUtils;
  */
 public class EnvConfigurator {
     private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    /** As the linux kernel (ELOOP) */
+    private static final int MAX_LINKS = 40;
 	
 	private final Configuration conf;
 	private final TemplateEngine engine;
 	private final PathHelper pathHelper;
 	private final BackupHelper backupHelper;
+	/** What has been applied by this run (plus what previous runs have applied) */
+	private Manifest manifest = new Manifest();
+	/** Number of files skipped by the incremental apply */
+	private final AtomicInteger unchanged = new AtomicInteger();
+	/** Not <code>null</code> if this run only renders a plan (see {@link Configuration#isPlan()}) */
+	private final Plan plan;
+	/** Plan of the module, scanned once (after the module pre hook) */
+	private ModuleIndex index;
 	
 	public EnvConfigurator(Configuration conf) {
 		this.conf = conf;
 		this.engine = conf.getTemplateEngine();
 		this.pathHelper = buildPathHelper(conf);
 		this.backupHelper = buildBackupHelper(conf);
+		this.plan = conf.isPlan() ? new Plan(conf) : null;
 		buildLogHelper(conf).startup();
 	}
 	
@@ -90,6 +98,10 @@ public class EnvConfigurator {
 		return new LogHelper(conf);
 	}
 
+	Path buildManifestFile(Configuration conf) {
+		return conf.getManifestFile();
+	}
+
 	/**
 	 * This method starts the installation and configuration process.<br>
 	 * 
@@ -101,22 +113,48 @@ public class EnvConfigurator {
 	public void execute() {
 		conf.prettyPrint();
 		Path module = conf.getModule();
+		long avoidedCompilations = HookEvaluator.getAvoidedCompilations();
+		// commands of all hooks of this run may share a single shell
+		final boolean session = conf.isShellSession() && Command.get().openSession();
 		try {			
+			if(plan!=null) {
+				plan.start();
+			}
 			final ModuleHookEvaluator hook = new ModuleHookEvaluator(conf);
 			try{
 				if (hook.pre()) {
+					// a plan must not change what was applied in the live system
+					final Path manifestFile = plan==null ? buildManifestFile(conf) : null;
+					manifest = manifestFile!=null ? Manifest.load(manifestFile) : new Manifest();
 					deleteFiles();
 					copyFiles();
 					hook.post();
+					if(manifestFile!=null) {
+						manifest.save(manifestFile);
+						LOGGER.info("Manifest saved: " + manifestFile + " (" + manifest.size() + " entries)");
+					}
 				} else {
 					LOGGER.warning("Module " + module + " was not installed. Check Module.hook!");
 				}
 			} finally {
-				hook.finish();
+				try {
+					hook.finish();
+				} finally {
+					if(plan!=null) {
+						LOGGER.info("Plan rendered: " + plan.finish());
+					}
+				}
+			}
+			if(conf.isHookCompiled()) {
+				LOGGER.info("Hook compilations avoided: " + (HookEvaluator.getAvoidedCompilations() - avoidedCompilations));
 			}
 		} catch (final Exception e) {
 			LOGGER.log(Level.SEVERE, "Unexpected Error.", e);
 			throw new RuntimeException("Unexpected Error. Cause: " + e.getMessage(), e);
+		} finally {
+			if(session) {
+				Command.get().closeSession();
+			}
 		}
 	}
 
@@ -155,47 +193,34 @@ public class EnvConfigurator {
 	 * {@link Hook#pre()} and {@link Hook#post()}
 	 */
 	protected void deleteFiles() {		
-		Path module = conf.getModule();
-		
-		FileUtils.deleteDir(module, new DeleteVisitor("*" + DELETE_SUFFIX){
-			private FileHookEvaluator hook;
-			
-			@Override 
-			protected boolean mustDelete(Path source) {
-				if(source.toString().endsWith(HOOK_SUFFIX)){
-					return false;
-				}
-				
-				final Path target = pathHelper.getTargetWithoutSuffix(source, DELETE_SUFFIX);
-				hook = new FileHookEvaluator(source, target, conf);
-
-				boolean mustDelete = super.mustDelete(source);
-				boolean fileExists = exists(target);
-				boolean pre = true;
-				try {						
-					return mustDelete && fileExists && (pre = hook.pre());
-				} finally {
-					if(!pre) {
-						hook.finish();
-					}
-				}
+		for (ModuleIndex.Entry entry : index().getDeletes()) {
+			final Path target = entry.getTarget();
+			final Path live = plan!=null ? plan.live(target) : target;
+			if(!exists(live)) {
+				continue;
 			}
 			
-			/** Deletes the target and not the source */
-			@Override  
-			protected void delete(Path source) throws IOException {
-				try {
-					Path target = pathHelper.getTargetWithoutSuffix(source, DELETE_SUFFIX);
+			final FileHookEvaluator hook = new FileHookEvaluator(entry.getSource(), target, conf, entry.hasHook());
+			if(!hook.pre()) {
+				hook.finish();
+				continue;
+			}
+			try {
+				if(plan!=null) {
+					plan.delete(live);
+					LOGGER.info(" :DELETED (Planned)");
+				} else {
 					backupHelper.backupFileOrDir(target);
 					FileUtils.delete(target);
+					manifest.remove(target);
 					LOGGER.info(" :DELETED");
-					LOGGER.info("\t" + target);
-					hook.post();
-				} finally {
-					hook.finish();
 				}
+				LOGGER.info("\t" + live);
+				hook.post();
+			} finally {
+				hook.finish();
 			}
-		});
+		}
 	}
 	
 	/**
@@ -240,68 +265,193 @@ public class EnvConfigurator {
 	 * {@link Hook#pre()} and {@link Hook#post()}
 	 */
 	protected void copyFiles() {
-		final Path module = conf.getModule();
-		final Map<String, Object> properties = conf.getProps();
-		
-		final Path target = pathHelper.getTarget(module);
+		final ApplyPool pool = conf.isParallelApply() ? new ApplyPool(conf.getApplyThreads()) : null;
+		unchanged.set(0);
 		
-		FileUtils.copy(new CopyVisitor(module, target, "*" + DELETE_SUFFIX){
-			private FileHookEvaluator hook;
-			
-			/** Do not consider .del files */
-			@Override 
-			protected boolean mustCopy(Path source) {
-				if(source.toString().endsWith(HOOK_SUFFIX)){
-					return false;
+		try {
+			for (ModuleIndex.Entry entry : index().getApplies()) {
+				if(entry.getKind()==ModuleIndex.Kind.DIRECTORY) {
+					createDirectory(entry, pool);
+				} else {
+					copyFile(entry, pool);
 				}
-				
-				final Path target = pathHelper.getTargetWithoutSuffix(source, TEMPLATE_SUFFIX);
-				hook = new FileHookEvaluator(source, target, conf);
-				
-				boolean mustCopy = !matcher.matches(source.getFileName());
-				boolean pre = true;
-				try {
-					return mustCopy && (pre = hook.pre());
-				} finally {
-					if(!pre){
-						hook.finish();
-					}
-				}				
 			}
 			
-			/** Copy or merge templates */
-			@Override 
-			protected void copy(Path source, final Path target) throws IOException {
-				try {
-					if(source.toString().endsWith(TEMPLATE_SUFFIX)) {
-						File resolvedTargetFile = new File(target.toString().replace(TEMPLATE_SUFFIX, ""));
-						backupHelper.backupFile(resolvedTargetFile.toPath());
-					    try (Writer out = new BufferedWriter(new FileWriter(resolvedTargetFile))) {
-							engine.createTemplate(source)
-								.make(properties)
-								.writeTo(out);
-						} catch (Exception e) {
-							throw new IOException(e);
-						}
-					    LOGGER.info(" :TMPL_MERGED");
-					    LOGGER.info("\t" + source + " -> " + resolvedTargetFile);
-					    hook.post();
-					} else {
-						backupHelper.backupFile(target);
-						Files.copy(source, target, REPLACE_EXISTING);
-						LOGGER.info(" :COPIED");
-						LOGGER.info("\t" + source + " -> " + target);
-						hook.post();
+			if(pool!=null) {
+				pool.await();
+				LOGGER.info("Parallel apply: " + pool.getApplied() + " files applied by " + pool.getParallelism() + " threads");
+			}
+			if(conf.isIncrementalApply()) {
+				LOGGER.info("Incremental apply: " + unchanged.get() + " unchanged files were skipped");
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error applying module " + conf.getModule() + ". Cause: " + e.getMessage(), e);
+		} finally {
+			if(pool!=null) {
+				pool.close();
+			}
+		}
+	}
+	
+	/** The module is scanned only once. Both delete and copy phases run from this plan */
+	private ModuleIndex index() {
+		if(index==null) {
+			index = ModuleIndex.scan(conf.getModule(), pathHelper);
+		}
+		return index;
+	}
+	
+	/** Directories are only created (and their hooks only executed) if the target does not exist yet */
+	private void createDirectory(ModuleIndex.Entry entry, ApplyPool pool) throws IOException {
+		final Path target = entry.getTarget();
+		if(!Files.notExists(target)) {
+			return;
+		}
+		
+		boolean create = true;
+		if(pool==null || entry.hasHook()) {
+			if(pool!=null) {
+				// a hook may depend on any previous file. So, all of them must be in place
+				pool.await();
+			}
+			final FileHookEvaluator hook = new FileHookEvaluator(entry.getSource(), target, conf, entry.hasHook());
+			create = hook.pre();
+			if(!create) {
+				hook.finish();
+			}
+		}
+		if(create) {
+			Files.createDirectories(target);
+		}
+	}
+	
+	private void copyFile(final ModuleIndex.Entry entry, ApplyPool pool) throws IOException {
+		if(pool!=null) {
+			if(!entry.hasHook()) {
+				// hookless files do not need any evaluator. They are applied by the pool,
+				// with the target resolved here, with the properties set by the previous hooks
+				final Path target = entry.getTarget();
+				pool.submit(() -> {
+					try {
+						apply(entry);
+						manifest.record(target);
+					} catch (IOException e) {
+						throw new RuntimeException("Error applying " + entry.getSource() + ". Cause: " + e.getMessage(), e);
 					}
-				} finally {
-					hook.finish();
-				}
+				});
+				return;
+			}
+			// a hook may depend on any previous file. So, all of them must be in place
+			pool.await();
+		}
+		
+		final FileHookEvaluator hook = new FileHookEvaluator(entry.getSource(), entry.getTarget(), conf, entry.hasHook());
+		if(!hook.pre()) {
+			hook.finish();
+			return;
+		}
+		try {
+			if(apply(entry) || conf.isPostHookOnUnchanged()) {
+				hook.post();
+			} else {
+				LOGGER.info(" :POST (Skipped. File unchanged)");
+			}
+			// note that a post hook may have moved or deleted the target
+			manifest.record(entry.getTarget());
+		} finally {
+			hook.finish();
+		}
+	}
+	
+	/** In parallel mode each file is logged at once, so that lines of different threads do not get mixed */
+	private void logApplied(String status, Path source, Path target) {
+		String detail = "\t" + source + " -> " + target;
+		if(conf.isParallelApply()) {
+			LOGGER.info(" :" + status + System.lineSeparator() + detail);
+		} else {
+			LOGGER.info(" :" + status);
+			LOGGER.info(detail);
+		}
+	}
+	
+	/** 
+	 * Copies the file or merges the template into the target.
+	 * 
+	 * @return <code>false</code> if the target was not written because, in
+	 *         incremental mode, it already had the expected content
+	 */
+	private boolean apply(ModuleIndex.Entry entry) throws IOException {
+		final Path source = entry.getSource();
+		final Path target = entry.getTarget();
+		if(entry.getKind()==ModuleIndex.Kind.TEMPLATE) {
+			return merge(source, target);
+		} else {
+			if(conf.isIncrementalApply() && FileUtils.contentEquals(source, target)) {
+				return skipUnchanged(source, target);
+			}
+			backupHelper.backupFile(target);
+			Files.copy(source, target, REPLACE_EXISTING);
+			manifest.recordCopy(source, target);
+			logApplied("COPIED", source, target);
+		}
+		return true;
+	}
+	
+	/** 
+	 * Renders the template into a temporary file next to the target, which
+	 * then atomically replaces the target. So, services reading the target
+	 * never see a half written file, and a failing template leaves the target
+	 * untouched. If the target already has the rendered content, it is not
+	 * written at all.
+	 */
+	private boolean merge(Path source, Path target) throws IOException {
+		// the former in place write went through links. Replace the file they point to
+		final Path file = followLinks(target);
+		final Path tmp = FileUtils.createSiblingTempFile(file);
+		final Charset charset = conf.getCharset(source);
+		try {
+			try (Writer out = ChannelWriter.open(tmp, charset)) {
+				engine.createTemplate(source, charset)
+					.make(conf.getProps())
+					.writeTo(out);
+			} catch (Exception e) {
+				throw new IOException(e);
 			}
 			
-			@Override
-			protected Path resolveVars(Path path) {			
-				return pathHelper.replaceVars(path);
+			if(FileUtils.contentEquals(tmp, file)) {
+				if(conf.isIncrementalApply()) {
+					return skipUnchanged(source, target);
+				}
+				logApplied("TMPL_UNCHANGED", source, target);
+				return true;
+			}
+			backupHelper.backupFile(target);
+			FileUtils.replace(tmp, file);
+			logApplied("TMPL_MERGED", source, target);
+			return true;
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+	
+	/** 
+	 * Unlike {@link Path#toRealPath(java.nio.file.LinkOption...)}, a dangling
+	 * link is followed too, so that the file it points to gets created
+	 */
+	private static Path followLinks(Path target) throws IOException {
+		Path file = target;
+		for (int i = 0; Files.isSymbolicLink(file); i++) {
+			if(i==MAX_LINKS) {
+				throw new IOException("Too many levels of symbolic links: " + target);
 			}
-		});
+			file = file.resolveSibling(Files.readSymbolicLink(file));
+		}
+		return file;
+	}
+	
+	private boolean skipUnchanged(Path source, Path target) {
+		unchanged.incrementAndGet();
+		logApplied("UNCHANGED", source, target);
+		return false;
 	}
 }
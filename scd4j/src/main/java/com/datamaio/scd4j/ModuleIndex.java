@@ -0,0 +1,203 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import static com.datamaio.scd4j.conf.Configuration.DELETE_SUFFIX;
+import static com.datamaio.scd4j.conf.Configuration.HOOK_SUFFIX;
+import static com.datamaio.scd4j.conf.Configuration.TEMPLATE_SUFFIX;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.datamaio.scd4j.util.PathHelper;
+
+/**
+ * In memory plan of a module, built by walking the module directory only
+ * once.
+ * <p>
+ * Every entry is classified as {@link Kind#DIRECTORY}, {@link Kind#COPY},
+ * {@link Kind#TEMPLATE} or {@link Kind#DELETE} (<code>.hook</code> files are
+ * paired with their owners instead of being entries). Targets are resolved
+ * the first time they are asked for, so a hook that sets a property used in
+ * an <code>@var@</code> path variable still changes the targets of the
+ * following files. Entries are kept in the walk order, i.e. a directory
+ * always comes before its children.
+ * 
+ * @author Fernando Rubbo
+ */
+public class ModuleIndex {
+	public enum Kind { DIRECTORY, COPY, TEMPLATE, DELETE }
+	
+	private final List<Entry> applies = new ArrayList<>();
+	private final List<Entry> deletes = new ArrayList<>();
+	private int hooks;
+	
+	private ModuleIndex() {
+	}
+	
+	public static ModuleIndex scan(final Path module, final PathHelper pathHelper) {
+		final ModuleIndex index = new ModuleIndex();
+		final List<Path> found = new ArrayList<>();
+		final List<Kind> kinds = new ArrayList<>();
+		final Set<Path> hookFiles = new HashSet<>();
+		
+		try {
+			Files.walkFileTree(module, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					if(dir.getFileName().toString().endsWith(DELETE_SUFFIX)) {
+						// the whole target directory is going to be deleted. No need to look inside
+						add(dir, Kind.DELETE);
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					add(dir, Kind.DIRECTORY);
+					return FileVisitResult.CONTINUE;
+				}
+				
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					String name = file.getFileName().toString();
+					if(name.endsWith(HOOK_SUFFIX)) {
+						hookFiles.add(file);
+					} else if(name.endsWith(DELETE_SUFFIX)) {
+						add(file, Kind.DELETE);
+					} else if(name.endsWith(TEMPLATE_SUFFIX)) {
+						add(file, Kind.TEMPLATE);
+					} else {
+						add(file, Kind.COPY);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+				
+				private void add(Path source, Kind kind) {
+					found.add(source);
+					kinds.add(kind);
+				}
+			});
+		} catch (IOException e) {
+			throw new RuntimeException("Error scanning module " + module, e);
+		}
+		
+		// pair hooks with their owners. All in memory, no additional stat
+		for (int i = 0; i < found.size(); i++) {
+			Path source = found.get(i);
+			Path hook = Paths.get(source + HOOK_SUFFIX);
+			Entry entry = new Entry(kinds.get(i), source, hookFiles.contains(hook) ? hook : null, pathHelper);
+			if(entry.hook!=null) {
+				index.hooks++;
+			}
+			if(entry.kind==Kind.DELETE) {
+				index.deletes.add(entry);
+			} else {
+				index.applies.add(entry);
+			}
+		}
+		return index;
+	}
+	
+	/** @return directories (starting by the module itself), copies and templates in walk order */
+	public List<Entry> getApplies() {
+		return Collections.unmodifiableList(applies);
+	}
+	
+	/** @return files and directories that must be deleted, in walk order */
+	public List<Entry> getDeletes() {
+		return Collections.unmodifiableList(deletes);
+	}
+	
+	public int getHooks() {
+		return hooks;
+	}
+	
+	@Override
+	public String toString() {
+		return "ModuleIndex [applies=" + applies.size() + ", deletes=" + deletes.size() + ", hooks=" + hooks + "]";
+	}
+	
+	/**
+	 * @author Fernando Rubbo
+	 */
+	public static class Entry {
+		private final Kind kind;
+		private final Path source;
+		private final Path hook;
+		private final PathHelper pathHelper;
+		private volatile Path target;
+		
+		Entry(Kind kind, Path source, Path hook, PathHelper pathHelper) {
+			this.kind = kind;
+			this.source = source;
+			this.hook = hook;
+			this.pathHelper = pathHelper;
+		}
+		
+		public Kind getKind() {
+			return kind;
+		}
+		public Path getSource() {
+			return source;
+		}
+		/** 
+		 * @return the resolved target. For templates and deletes it is already
+		 *         without the suffix. It is resolved with the properties of the
+		 *         first call and kept from then on
+		 */
+		public Path getTarget() {
+			Path resolved = target;
+			if(resolved==null) {
+				if(kind==Kind.DELETE) {
+					resolved = pathHelper.getTargetWithoutSuffix(source, DELETE_SUFFIX);
+				} else if(kind==Kind.TEMPLATE) {
+					resolved = pathHelper.getTargetWithoutSuffix(source, TEMPLATE_SUFFIX);
+				} else {
+					resolved = pathHelper.getTarget(source);
+				}
+				target = resolved;
+			}
+			return resolved;
+		}
+		/** @return the <code>.hook</code> file of this entry or <code>null</code> if there is none */
+		public Path getHook() {
+			return hook;
+		}
+		public boolean hasHook() {
+			return hook!=null;
+		}
+		
+		@Override
+		public String toString() {
+			return kind + " " + source + " -> " + getTarget() + (hook!=null ? " (hook)" : "");
+		}
+	}
+}
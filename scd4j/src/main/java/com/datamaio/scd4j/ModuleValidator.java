@@ -0,0 +1,254 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import static com.datamaio.scd4j.conf.Configuration.HOOK_SUFFIX;
+
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.codehaus.groovy.control.MultipleCompilationErrorsException;
+import org.codehaus.groovy.control.messages.SyntaxErrorMessage;
+
+import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.exception.MissingPropertyException;
+import com.datamaio.scd4j.hooks.HookEvaluator;
+import com.datamaio.scd4j.hooks.file.FileHookEvaluator;
+import com.datamaio.scd4j.hooks.module.ModuleHookEvaluator;
+import com.datamaio.scd4j.tmpl.Template;
+import com.datamaio.scd4j.tmpl.TemplateEngine;
+import com.datamaio.scd4j.util.PathHelper;
+
+/**
+ * Validates modules before installing them. Every <code>.hook</code> is
+ * compiled and every <code>.tmpl</code> is compiled and rendered (into
+ * nothing) against the properties of the config. Hooks are not run and no
+ * target is touched.
+ * <p>
+ * All files of all modules are validated at once by a pool of threads. As
+ * hooks and templates are compiled by the very same runtime and engine of a
+ * run, they are left in the caches (see {@link com.datamaio.scd4j.util.ScriptCache}
+ * and {@link com.datamaio.scd4j.tmpl.TemplateCache}) and the following run
+ * starts warm.
+ * <p>
+ * Hooks may set properties while running. Therefore, a missing property in
+ * a template of a module with hooks is only a warning.
+ * 
+ * @author Fernando Rubbo
+ */
+public class ModuleValidator {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	
+	private final List<Configuration> confs;
+	private final int threads;
+	
+	/**
+	 * @param confs the configuration of each module to validate
+	 * @param threads number of files validated at once. If less than 1, the number of available processors is used
+	 */
+	public ModuleValidator(List<Configuration> confs, int threads) {
+		this.confs = confs;
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+	
+	/**
+	 * @return what is wrong in the modules, sorted by file and line. Empty if nothing is
+	 */
+	public List<Problem> validate() {
+		final long start = System.currentTimeMillis();
+		final List<Problem> problems = new ArrayList<>();
+		final List<Future<Problem>> futures = new ArrayList<>();
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		int files = 0;
+		try {
+			for (Configuration conf : confs) {
+				final ModuleIndex index;
+				try {
+					index = ModuleIndex.scan(conf.getModule(), new PathHelper(conf));
+				} catch (RuntimeException e) {
+					// e.g. a path variable that is not declared
+					problems.add(new Problem(conf.getModule(), 0, message(e), true));
+					continue;
+				}
+				
+				final Path moduleHook = conf.getModule().resolve("Module" + HOOK_SUFFIX);
+				final boolean hooked = index.getHooks() > 0 || Files.exists(moduleHook);
+				if(Files.exists(moduleHook)) {
+					futures.add(pool.submit(() -> compile(moduleHook, new ModuleHookEvaluator(conf))));
+				}
+				List<ModuleIndex.Entry> entries = new ArrayList<>(index.getApplies());
+				entries.addAll(index.getDeletes());
+				for (ModuleIndex.Entry entry : entries) {
+					if(entry.hasHook()) {
+						futures.add(pool.submit(() -> compile(entry.getHook(), 
+								new FileHookEvaluator(entry.getSource(), entry.getTarget(), conf, true))));
+					}
+					if(entry.getKind()==ModuleIndex.Kind.TEMPLATE) {
+						futures.add(pool.submit(() -> validate(conf, entry.getSource(), hooked)));
+					}
+				}
+			}
+			
+			for (Future<Problem> f : futures) {
+				Problem p = get(f);
+				if(p!=null) {
+					problems.add(p);
+				}
+			}
+			files = futures.size();
+		} finally {
+			pool.shutdownNow();
+		}
+		
+		problems.sort(Comparator.comparing((Problem p) -> p.getFile().toString()).thenComparingInt(Problem::getLine));
+		LOGGER.info("Validated " + files + " hooks and templates of " + confs.size() + " module(s) by " 
+				+ threads + " threads in " + (System.currentTimeMillis() - start) + " ms");
+		return problems;
+	}
+	
+	private Problem compile(Path hook, HookEvaluator evaluator) {
+		try {
+			evaluator.compile();
+			return null;
+		} catch (RuntimeException e) {
+			return new Problem(hook, line(e), message(e), true);
+		}
+	}
+	
+	private Problem validate(Configuration conf, Path source, boolean hooked) {
+		final TemplateEngine engine = conf.getTemplateEngine();
+		final Template template;
+		try {
+			template = engine.createTemplate(source, conf.getCharset(source));
+		} catch (RuntimeException e) {
+			return new Problem(source, engine.getLine(source, e), message(e), true);
+		}
+		
+		try {
+			// groovy templates may set variables in the binding. Do not share it
+			template.make(new HashMap<>(conf.getProps())).writeTo(new NullWriter());
+			return null;
+		} catch (RuntimeException e) {
+			boolean error = !hooked || !(e instanceof MissingPropertyException);
+			return new Problem(source, engine.getLine(source, e), message(e), error);
+		}
+	}
+	
+	private Problem get(Future<Problem> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Validation interrupted", e);
+		}
+	}
+	
+	/** Line of a hook compilation error. Hooks keep their lines, as the header added to them has none */
+	private static int line(Throwable error) {
+		for (Throwable t = error; t != null; t = t.getCause()) {
+			if(t instanceof MultipleCompilationErrorsException) {
+				for (Object msg : ((MultipleCompilationErrorsException) t).getErrorCollector().getErrors()) {
+					if(msg instanceof SyntaxErrorMessage) {
+						return ((SyntaxErrorMessage) msg).getCause().getLine();
+					}
+				}
+			}
+		}
+		return 0;
+	}
+	
+	/** The message of the innermost cause (usually the most precise one) in a single line */
+	private static String message(Throwable error) {
+		String message = error.toString();
+		for (Throwable t = error; t != null; t = t.getCause()) {
+			if(t.getMessage()!=null) {
+				message = t.getMessage();
+			}
+		}
+		return message.replaceAll("\\s*[\\r\\n]+\\s*", " ").trim();
+	}
+	
+	/**
+	 * Something wrong in a hook or in a template
+	 * 
+	 * @author Fernando Rubbo
+	 */
+	public static class Problem {
+		private final Path file;
+		private final int line;
+		private final String message;
+		private final boolean error;
+		
+		Problem(Path file, int line, String message, boolean error) {
+			this.file = file;
+			this.line = line;
+			this.message = message;
+			this.error = error;
+		}
+		
+		public Path getFile() {
+			return file;
+		}
+		/** @return 0 if unknown */
+		public int getLine() {
+			return line;
+		}
+		public String getMessage() {
+			return message;
+		}
+		/** @return <code>false</code> if it may work at run time (i.e. a warning) */
+		public boolean isError() {
+			return error;
+		}
+		
+		@Override
+		public String toString() {
+			return (error ? "ERROR" : "WARNING") + "\t" + file + (line > 0 ? ":" + line : "") + "\t" + message;
+		}
+	}
+	
+	private static class NullWriter extends Writer {
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+		}
+		@Override
+		public void flush() {
+		}
+		@Override
+		public void close() {
+		}
+	}
+}
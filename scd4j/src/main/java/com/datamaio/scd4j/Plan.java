@@ -0,0 +1,121 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.datamaio.scd4j.cmd.Command;
+import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * Plan (dry run) of a module. Targets are rendered under a staging root
+ * directory (see {@link Configuration#getTargetRoot()}), commands are recorded
+ * instead of executed and deletions are only listed. At the end, a
+ * <code>plan.txt</code> file describes everything that would be done:
+ * 
+ * <pre>
+ * APPLY	/opt/my_app/my_file.txt
+ * DELETE	/opt/my_app/old_file.txt
+ * RUN	service my_app restart
+ * </pre>
+ * 
+ * @author Fernando Rubbo
+ */
+class Plan {
+	static final String PLAN_FILE = "plan.txt";
+	
+	private final Path dir;
+	private final Path root;
+	private final List<Path> deletes = Collections.synchronizedList(new ArrayList<>());
+	
+	Plan(Configuration conf) {
+		this.dir = conf.getPlanDir();
+		this.root = conf.getTargetRoot();
+	}
+	
+	/** Cleans up the previous plan and starts recording the commands of the current thread */
+	void start() {
+		FileUtils.delete(dir);
+		FileUtils.createDirectories(root);
+		Command.startRecording();
+	}
+	
+	/** @return the path in the live system of the staged target */
+	Path live(Path staged) {
+		return Paths.get("/").resolve(root.relativize(staged));
+	}
+	
+	void delete(Path live) {
+		deletes.add(live);
+	}
+	
+	/** Stops recording commands and writes the plan file */
+	Path finish() {
+		List<String> commands = Command.stopRecording();
+		List<String> lines = new ArrayList<>();
+		for (Path staged : listStaged()) {
+			lines.add("APPLY\t" + live(staged));
+		}
+		synchronized (deletes) {
+			for (Path live : deletes) {
+				lines.add("DELETE\t" + live);
+			}
+		}
+		for (String cmd : commands) {
+			lines.add("RUN\t" + cmd);
+		}
+		
+		Path file = dir.resolve(PLAN_FILE);
+		try {
+			Files.write(file, lines);
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing plan " + file, e);
+		}
+		return file;
+	}
+	
+	Path getDir() {
+		return dir;
+	}
+	
+	private List<Path> listStaged() {
+		try (Stream<Path> stream = Files.walk(root)) {
+			return stream
+					.filter(Files::isRegularFile)
+					.sorted()
+					.collect(Collectors.toList());
+		} catch (IOException e) {
+			throw new RuntimeException("Error listing plan " + root, e);
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.FileHandler;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.util.LogContext;
+import com.datamaio.scd4j.util.LogHelper;
+
+/**
+ * Renders the plan (see {@link Configuration#isPlan()}) of the very same
+ * modules for many configuration files at once, e.g. one config per node of a
+ * cluster. Each config is rendered by a thread of the pool into its own
+ * staging root and, as a brand new {@link Configuration} is built for each
+ * module/config pair, properties set by hooks never leak from one config to
+ * another.
+ * <p>
+ * The log of each module/config pair goes to its own log file. Only the
+ * summary of the farm is printed in the console.
+ * 
+ * @author Fernando Rubbo
+ */
+public class RenderFarm {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	
+	private final Path[] modules;
+	private final List<Path> configs;
+	private final BiFunction<Path, Path, Configuration> factory;
+	private final int threads;
+	
+	/**
+	 * @param modules modules to render
+	 * @param configs config files. Each one is rendered in its own staging root
+	 * @param factory builds the configuration of a module (first argument) and a config file (second argument)
+	 * @param threads number of configs rendered at once. If less than 1, the number of available processors is used
+	 */
+	public RenderFarm(Path[] modules, List<Path> configs, BiFunction<Path, Path, Configuration> factory, int threads) {
+		this.modules = modules;
+		this.configs = configs;
+		this.factory = factory;
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+	
+	/**
+	 * @return the configs that could not be rendered and why. Empty if all of them were rendered
+	 */
+	public Map<Path, Exception> render() {
+		final long start = System.currentTimeMillis();
+		final Map<Path, Exception> failures = new LinkedHashMap<>();
+		final ConfigLogHandler log = ConfigLogHandler.install();
+		final ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, configs.size())));
+		try {
+			final Map<Path, Future<?>> futures = new LinkedHashMap<>();
+			for (Path config : configs) {
+				futures.put(config, pool.submit(() -> render(config, log)));
+			}
+			for (Map.Entry<Path, Future<?>> e : futures.entrySet()) {
+				try {
+					e.getValue().get();
+				} catch (ExecutionException ex) {
+					Throwable cause = ex.getCause();
+					failures.put(e.getKey(), cause instanceof Exception ? (Exception) cause : new RuntimeException(cause));
+					LOGGER.severe("Render FAILED for " + e.getKey() + ". Cause: " + cause.getMessage());
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Render farm interrupted", ex);
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+			log.uninstall();
+		}
+		
+		LOGGER.info("Render farm: " + (configs.size() - failures.size()) + " of " + configs.size() 
+				+ " configs rendered by " + threads + " threads in " + (System.currentTimeMillis() - start) + " ms");
+		return failures;
+	}
+	
+	private void render(Path config, ConfigLogHandler log) {
+		final long start = System.currentTimeMillis();
+		for (Path module : modules) {
+			final Configuration conf = factory.apply(module, config);
+			if(!conf.isPlan()) {
+				throw new IllegalStateException("Render farm only renders plans. Config: " + config);
+			}
+			
+			log.open(conf.getLogFile());
+			try {
+				new EnvConfigurator(conf) {
+					@Override
+					LogHelper buildLogHelper(Configuration conf) {
+						// the global logger is shared by all threads. See ConfigLogHandler
+						return new LogHelper(conf) {
+							@Override
+							public void startup() {
+							}
+						};
+					}
+				}.execute();
+			} finally {
+				log.closeCurrent();
+			}
+			LOGGER.info("Rendered " + module.getFileName() + " for " + config.getFileName() + " at " + conf.getPlanDir());
+		}
+		LOGGER.info("Rendered " + config.getFileName() + " in " + (System.currentTimeMillis() - start) + " ms");
+	}
+	
+	/**
+	 * Routes each log record to the file of the config being rendered by the
+	 * thread, or on behalf of it (e.g. the parallel apply, asynchronous commands
+	 * and stream pumps, see {@link LogContext}). Records of any other thread go
+	 * to the console.
+	 */
+	private static final class ConfigLogHandler extends Handler {
+		private final Handler console = new ConsoleHandler();
+		private Handler[] previous;
+		
+		static ConfigLogHandler install() {
+			LogHelper.closeAndRemoveFileHandler();
+			ConfigLogHandler handler = new ConfigLogHandler();
+			handler.console.setFormatter(new SimpleFormatter());
+			handler.previous = LOGGER.getHandlers();
+			for (Handler h : handler.previous) {
+				LOGGER.removeHandler(h);
+			}
+			LOGGER.setUseParentHandlers(false);
+			LOGGER.addHandler(handler);
+			return handler;
+		}
+		
+		void uninstall() {
+			LOGGER.removeHandler(this);
+			for (Handler h : previous) {
+				LOGGER.addHandler(h);
+			}
+			console.flush();
+		}
+		
+		void open(Path file) {
+			try {
+				Files.createDirectories(file.getParent());
+				FileHandler handler = new FileHandler(file.toString());
+				handler.setFormatter(new SimpleFormatter());
+				LogContext.set(handler);
+			} catch (IOException e) {
+				throw new RuntimeException("Error creating log file " + file, e);
+			}
+		}
+		
+		void closeCurrent() {
+			Handler handler = LogContext.get();
+			if(handler!=null) {
+				handler.close();
+				LogContext.remove();
+			}
+		}
+		
+		@Override
+		public void publish(LogRecord record) {
+			Handler handler = LogContext.get();
+			(handler!=null ? handler : console).publish(record);
+		}
+		
+		@Override
+		public void flush() {
+			console.flush();
+		}
+		
+		@Override
+		public void close() {
+			console.close();
+		}
+	}
+}
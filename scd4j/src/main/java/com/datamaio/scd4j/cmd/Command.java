@@ -27,22 +27,37 @@ import static java.lang.String.format;
 import static java.util.stream.Collectors.toList;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.net.InetAddress;
-import java.net.NetworkInterface;
-import java.net.UnknownHostException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Enumeration;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.datamaio.scd4j.cmd.linux.debian.DebianCommand;
 import com.datamaio.scd4j.cmd.linux.debian.UbuntuCommand;
@@ -50,6 +65,7 @@ import com.datamaio.scd4j.cmd.linux.redhat.CentosCommand;
 import com.datamaio.scd4j.cmd.linux.redhat.FedoraCommand;
 import com.datamaio.scd4j.cmd.linux.redhat.RedhatCommand;
 import com.datamaio.scd4j.cmd.windows.WindowsCommand;
+import com.datamaio.scd4j.util.LogContext;
 import com.datamaio.scd4j.util.io.FileUtils;
 
 /**
@@ -69,25 +85,34 @@ public abstract class Command {
 		}		
 	};
 	
+	/** While set, commands of the current thread are only recorded, nothing is executed (see plan mode) */
+	private static final ThreadLocal<List<String>> RECORDED = new ThreadLocal<>();
+	
+	/** While set, packages installed by the current thread are queued. See {@link #batch(Runnable)} */
+	private static final ThreadLocal<InstallBatch> BATCH = new ThreadLocal<>();
+	
+	/** Default deadline to wait for a service to be ready */
+	public static final long READY_TIMEOUT_MILLIS = 60_000;
+	private static final long FIRST_BACKOFF_MILLIS = 5;
+	private static final long MAX_BACKOFF_MILLIS = 1000;
+	/** How long the output is still read after the process ends */
+	private static final long DRAIN_AFTER_EXIT_MILLIS = 1000;
+	
+	/** Max number of asynchronous commands running at the same time */
+	public static final int ASYNC_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+	
 	public static Command INSTANCE;
 	public static synchronized final Command get() {
 		if(INSTANCE==null) {
-			String os = System.getProperty("os.name");
-			if(os.toUpperCase().contains("LINUX")) {
-				List<String> cmdList = Arrays.asList("cat /proc/version".split(" "));			
-				String dist = _run(cmdList, NO_PRINTING);
-				if(dist.toUpperCase().contains(UbuntuCommand.DIST_NAME.toUpperCase())) {
-					INSTANCE = new UbuntuCommand();
-				} else if (dist.toUpperCase().contains(DebianCommand.DIST_NAME.toUpperCase())) {
-					INSTANCE = new DebianCommand();
-				} else if (dist.toUpperCase().contains(FedoraCommand.DIST_NAME.toUpperCase())) {
-					INSTANCE = new FedoraCommand();										
-				} else if (dist.toUpperCase().contains(CentosCommand.DIST_NAME.toUpperCase())) {
-					INSTANCE = new CentosCommand();					
-				} else if(dist.toUpperCase().contains(RedhatCommand.DIST_NAME.toUpperCase())) {
-					INSTANCE = new RedhatCommand();
-				} else {
-					throw new RuntimeException("Linux distribution not supported : " + dist);
+			HostFacts facts = HostFacts.get();
+			if(facts.getOsName().toUpperCase().contains("LINUX")) {
+				// os-release is the standard. /proc/version (kernel build) is the fallback for old distributions
+				INSTANCE = linux(facts.getOsRelease("NAME"));
+				if(INSTANCE==null) {
+					INSTANCE = linux(facts.getProcVersion());
+				}
+				if(INSTANCE==null) {
+					throw new RuntimeException("Linux distribution not supported : " + facts.getProcVersion());
 				}
 			} else {
 				INSTANCE = new WindowsCommand();
@@ -95,7 +120,81 @@ public abstract class Command {
 		}
 		return INSTANCE;
 	}
+	
+	private static Command linux(String dist) {
+		if(dist==null) {
+			return null;
+		}
+		dist = dist.toUpperCase();
+		if(dist.contains(UbuntuCommand.DIST_NAME.toUpperCase())) {
+			return new UbuntuCommand();
+		} else if (dist.contains(DebianCommand.DIST_NAME.toUpperCase())) {
+			return new DebianCommand();
+		} else if (dist.contains(FedoraCommand.DIST_NAME.toUpperCase())) {
+			return new FedoraCommand();										
+		} else if (dist.contains(CentosCommand.DIST_NAME.toUpperCase())) {
+			return new CentosCommand();					
+		} else if(dist.contains(RedhatCommand.DIST_NAME.toUpperCase())) {
+			return new RedhatCommand();
+		}
+		return null;
+	}
 
+	/**
+	 * From now on, commands that would change the system and are executed by
+	 * the current thread are recorded instead of executed. Read only commands
+	 * (like {@link #ls(String)}) keep working.
+	 */
+	public static void startRecording() {
+		// asynchronous commands may record from other threads (see #async(Supplier))
+		RECORDED.set(Collections.synchronizedList(new ArrayList<>()));
+	}
+	
+	/**
+	 * Stops recording the commands of the current thread
+	 * 
+	 * @return the recorded commands, in the order they were requested
+	 */
+	public static List<String> stopRecording() {
+		List<String> recorded = RECORDED.get();
+		RECORDED.remove();
+		return recorded != null ? new ArrayList<>(recorded) : Collections.emptyList();
+	}
+	
+	public static boolean isRecording() {
+		return RECORDED.get() != null;
+	}
+	
+	/**
+	 * Records the command if the current thread is recording (see plan mode)
+	 * 
+	 * @return <code>true</code> if recorded, i.e. it must not be executed
+	 */
+	protected static boolean record(String cmd) {
+		List<String> recorded = RECORDED.get();
+		if(recorded == null) {
+			return false;
+		}
+		recorded.add(cmd);
+		LOGGER.info(String.format("\tRecording cmd: %s", cmd));
+		return true;
+	}
+	
+	/**
+	 * Opens a long-lived shell session for the current thread. While it is
+	 * open, commands without interaction are executed through it instead of
+	 * spawning a new process per command.
+	 * 
+	 * @return <code>false</code> if this operating system does not support sessions
+	 */
+	public boolean openSession() {
+		return false;
+	}
+	
+	/** Closes the shell session of the current thread, if any */
+	public void closeSession() {
+	}
+	
 	public abstract String osname();
 	public abstract boolean isLinux();
 	public abstract boolean isWindows();
@@ -104,6 +203,14 @@ public abstract class Command {
 	public abstract void serviceStop(String name);
 	public abstract void serviceRestart(String name);
 	public abstract String serviceStatus(String name);
+	
+	/**
+	 * Checks the service with a single status query. To wait for it, use the
+	 * {@link ReadinessProbe#serviceRunning(String)} probe.
+	 */
+	public boolean isServiceRunning(String name) {
+		throw new RuntimeException("Not Implemented!");
+	}
 
 	public abstract void startServiceAtSystemBoot(String name);
 	public abstract void doNotStartServiceAtSystemBoot(String name);
@@ -115,6 +222,15 @@ public abstract class Command {
 	public abstract void installRemotePack(String pack, String version);
 	public abstract void installLocalPack(String path);
 	public abstract boolean isInstalled(String pack);
+	
+	/**
+	 * Forgets the installed packages cached by {@link #isInstalled(String)}.
+	 * The install and uninstall methods do it, but packages changed through
+	 * {@link #run(String)} (e.g. <code>apt-get install</code>) must call it
+	 */
+	public void invalidatePackages() {
+	}
+	
 	public abstract void uninstallRemotePack(String pack);
 	public abstract void uninstallLocalPack(String pack);
 	public abstract void unzip(String from, String toDir);
@@ -142,15 +258,21 @@ public abstract class Command {
 	}
 	
 	public String whoami() {
-		return System.getProperty("user.name");
+		return HostFacts.get().getUser();
 	}
 
 	public void mkdir(String dir) {
+		if(record(format("mkdir %s", dir))) {
+			return;
+		}
 		logCmdJava(format("mkdir %s", dir));  
 		FileUtils.createDirectories(Paths.get(dir));
 	}
 
 	public void mv(String from, String to) {
+		if(record(format("mv %s to %s", from, to))) {
+			return;
+		}
 		logCmdJava(format("mv %s to %s", from, to));
 		FileUtils.move(Paths.get(from), Paths.get(to));
 		LOGGER.info(String.format("Moving file %s to %s", from, to));
@@ -162,11 +284,17 @@ public abstract class Command {
 	}
 
 	public void rm(String path) {
+		if(record(format("rm %s", path))) {
+			return;
+		}
 		logCmdJava(format("rm %s", path));
 		FileUtils.delete(Paths.get(path));
 	}
 
 	public void cp(String from, String to) {
+		if(record(format("cp %s to %s", from, to))) {
+			return;
+		}
 		logCmdJava(format("cp %s to %s", from, to));
 		FileUtils.copy(Paths.get(from), Paths.get(to));
 	}
@@ -216,6 +344,9 @@ public abstract class Command {
 	}
 	
 	public String run(List<String> cmdList, Interaction interact) { 
+		if(record(cmd2String(cmdList).trim())) {
+			return "";
+		}
 		return _run(cmdList, interact);
 	}
 	
@@ -228,6 +359,10 @@ public abstract class Command {
 	 *
 	 * OBS> este metodo foi criado pois alguns executaveis travavam lendo o
 	 * output
+	 * <p>
+	 * The output (stdout and stderr merged) is streamed through a pipe and
+	 * printed as soon as it is produced. Only its tail is returned. See
+	 * {@link #stream(String, Consumer)}.
 	 */
 	public String runWithNoInteraction(String cmd) {
 		List<String> cmdList = Arrays.asList(cmd.split(" "));
@@ -238,8 +373,291 @@ public abstract class Command {
 		return run(cmdList, (Interaction) null);
 	}
 	
+	// --- streaming ---
+	
+	/**
+	 * Runs the command printing its output (stdout and stderr merged) as soon
+	 * as it is produced. Each line is also given to the callback.
+	 * 
+	 * @param onLine called for each line of the output. May be <code>null</code>
+	 * @return the tail of the output. Memory use is bounded no matter how much the command prints
+	 */
+	public String stream(String cmd, Consumer<String> onLine) {
+		List<String> cmdList = Arrays.asList(cmd.split(" "));
+		return stream(cmdList, onLine);
+	}
+	
+	public String stream(List<String> cmdList, Consumer<String> onLine) {
+		if(record(cmd2String(cmdList).trim())) {
+			return "";
+		}
+		return _stream(cmdList, onLine);
+	}
+	
+	/**
+	 * Runs the command and returns its output (stdout and stderr merged) as a
+	 * lazy stream of lines, read from a pipe while the process runs.
+	 * <p>
+	 * The stream must be closed (e.g. <code>try-with-resources</code>). If the
+	 * whole output was read, closing it checks the process exit code. Otherwise,
+	 * the process is destroyed.
+	 */
+	public Stream<String> lines(String cmd) {
+		List<String> cmdList = Arrays.asList(cmd.split(" "));
+		return lines(cmdList);
+	}
+	
+	public Stream<String> lines(List<String> cmdList) {
+		if(record(cmd2String(cmdList).trim())) {
+			return Stream.empty();
+		}
+		return _lines(cmdList);
+	}
+	
+	// --- batch install ---
+	
+	/**
+	 * Runs the block queueing the packages it installs. When the block ends,
+	 * queued packages are installed with a single package manager transaction
+	 * (remote packages first, then local ones). So, the block must not use the
+	 * packages it installs.
+	 * <p>
+	 * If the block fails, nothing is installed. Nested batches join the outer one.
+	 */
+	public void batch(Runnable block) {
+		if (BATCH.get() != null) {
+			block.run();
+			return;
+		}
+		InstallBatch batch = new InstallBatch();
+		BATCH.set(batch);
+		try {
+			block.run();
+		} finally {
+			BATCH.remove();
+		}
+		if (!batch.remotes.isEmpty()) {
+			installRemotePacks(batch.remotes);
+		}
+		if (!batch.locals.isEmpty()) {
+			installLocalPacks(batch.locals);
+		}
+	}
+	
+	/**
+	 * Installs many packages from the OS repositories (see
+	 * {@link #batch(Runnable)}). By default, one by one.
+	 * 
+	 * @param packs the packages, with versions as accepted by {@link #installRemotePack(String)}
+	 */
+	protected void installRemotePacks(List<String> packs) {
+		installEach(packs, this::installRemotePack);
+	}
+	
+	/** Installs many local packages (see {@link #batch(Runnable)}). By default, one by one. */
+	protected void installLocalPacks(List<String> paths) {
+		installEach(paths, this::installLocalPack);
+	}
+	
+	/**
+	 * Installs each package on its own, so failures are attributed to the
+	 * right package. Every package is tried, even if some fail.
+	 * 
+	 * @throws RuntimeException listing the failed packages. Each failure is a suppressed exception
+	 */
+	protected void installEach(List<String> packs, Consumer<String> install) {
+		List<String> failed = new ArrayList<>();
+		List<RuntimeException> errors = new ArrayList<>();
+		for (String pack : packs) {
+			try {
+				install.accept(pack);
+			} catch (RuntimeException e) {
+				LOGGER.severe("\tPackage " + pack + " was not installed: " + e.getMessage());
+				failed.add(pack);
+				errors.add(e);
+			}
+		}
+		if (!failed.isEmpty()) {
+			RuntimeException e = new RuntimeException("Packages not installed: " + failed);
+			errors.forEach(e::addSuppressed);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Queues the package if the current thread is in a batch
+	 * 
+	 * @return <code>true</code> if queued, i.e. it must not be installed now
+	 */
+	protected static boolean queueRemotePack(String pack) {
+		InstallBatch batch = BATCH.get();
+		if (batch == null) {
+			return false;
+		}
+		LOGGER.info("\tQueueing package " + pack);
+		batch.remotes.add(pack);
+		return true;
+	}
+	
+	/** Same as {@link #queueRemotePack(String)}, for local packages */
+	protected static boolean queueLocalPack(String path) {
+		InstallBatch batch = BATCH.get();
+		if (batch == null) {
+			return false;
+		}
+		LOGGER.info("\tQueueing package " + path);
+		batch.locals.add(path);
+		return true;
+	}
+	
+	// --- readiness ---
+	
+	/**
+	 * Waits until the condition is met, checking it with exponential backoff:
+	 * first after a few milliseconds, then doubling up to one second between
+	 * checks.
+	 * 
+	 * @return <code>true</code> if met, <code>false</code> if the deadline was reached
+	 */
+	public boolean waitFor(BooleanSupplier condition, long timeoutMillis) {
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		long backoff = FIRST_BACKOFF_MILLIS;
+		while (!condition.getAsBoolean()) {
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				return false;
+			}
+			try {
+				Thread.sleep(Math.min(backoff, remaining));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+		}
+		return true;
+	}
+	
+	/**
+	 * Waits until all the probes are ready. For example:
+	 * <pre>
+	 * serviceRestart("tomcat");
+	 * awaitReady(30000, ReadinessProbe.portOpen(8080), ReadinessProbe.httpOk("http://localhost:8080/health"));
+	 * </pre>
+	 * Nothing is checked while recording (see plan mode).
+	 * 
+	 * @throws RuntimeException if the deadline is reached
+	 */
+	public void awaitReady(long timeoutMillis, ReadinessProbe... probes) {
+		if (isRecording() || probes.length == 0) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		boolean ready = waitFor(() -> Arrays.stream(probes).allMatch(ReadinessProbe::isReady), timeoutMillis);
+		if (!ready) {
+			throw new RuntimeException("Not ready after " + timeoutMillis + " ms");
+		}
+		LOGGER.info("\tReady after " + (System.currentTimeMillis() - start) + " ms");
+	}
+	
+	// --- async ---
+	
+	/**
+	 * Same as {@link #run(String)}, but the command is executed in a bounded
+	 * pool of threads. Use it to overlap independent slow steps (e.g. package
+	 * downloads and service restarts). See {@link #async(Supplier)}.
+	 */
+	public CompletableFuture<String> runAsync(String cmd) {
+		List<String> cmdList = Arrays.asList(cmd.split(" "));
+		return runAsync(cmdList);
+	}
+	
+	public CompletableFuture<String> runAsync(List<String> cmdList) {
+		return async(() -> run(cmdList));
+	}
+	
+	public CompletableFuture<String> runAsync(String cmd, Interaction interact) {
+		List<String> cmdList = Arrays.asList(cmd.split(" "));
+		return runAsync(cmdList, interact);
+	}
+	
+	public CompletableFuture<String> runAsync(List<String> cmdList, Interaction interact) {
+		return async(() -> run(cmdList, interact));
+	}
+	
+	/**
+	 * Executes any task (e.g. <code>() -> serviceRestart("nginx")</code>) in a
+	 * bounded pool of threads shared by the whole JVM. At most
+	 * {@link #ASYNC_THREADS} tasks run at the same time, the others wait in a queue.
+	 * <p>
+	 * If the caller is recording (plan mode), the task records in the very
+	 * same plan and logs through the same {@link LogContext}. If the caller is in a {@link #batch(Runnable)}, the task
+	 * queues its packages in the very same batch, so it must be joined before
+	 * the batch block ends. Shell sessions are not shared among threads, so
+	 * the task spawns its own processes.
+	 * <p>
+	 * A task started by another task runs right away, in the same thread.
+	 * Otherwise, tasks waiting for their own tasks could take all the threads
+	 * of the pool and wait forever.
+	 * 
+	 * @return a future completed with the task result. If the task fails, the
+	 *         future completes exceptionally with the original exception as cause
+	 */
+	public <T> CompletableFuture<T> async(Supplier<T> task) {
+		if (Thread.currentThread().getName().startsWith(AsyncPool.THREAD_PREFIX)) {
+			final CompletableFuture<T> future = new CompletableFuture<>();
+			try {
+				future.complete(task.get());
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+			return future;
+		}
+		
+		final List<String> recorded = RECORDED.get();
+		final InstallBatch batch = BATCH.get();
+		return CompletableFuture.supplyAsync(LogContext.supplier(() -> {
+			if(recorded != null) {
+				RECORDED.set(recorded);
+			}
+			if(batch != null) {
+				BATCH.set(batch);
+			}
+			try {
+				return task.get();
+			} finally {
+				RECORDED.remove();
+				BATCH.remove();
+			}
+		}), AsyncPool.EXECUTOR);
+	}
+	
 	/**
-	 * Try to discover what is the machine IP.
+	 * Waits for all the futures, even if some of them fail.
+	 * 
+	 * @return the results, in the same order of the futures
+	 * @throws RuntimeException the first failure (in the order of the futures)
+	 */
+	public static <T> List<T> joinAll(List<CompletableFuture<T>> futures) {
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+		} catch (CompletionException e) {
+			// the first failure is looked up below, in order
+		}
+		List<T> results = new ArrayList<>(futures.size());
+		for (CompletableFuture<T> f : futures) {
+			try {
+				results.add(f.join());
+			} catch (CompletionException e) {
+				Throwable cause = e.getCause();
+				throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Try to discover what is the machine IP. Taken once, see {@link HostFacts}.
 	 * <p>
 	 * Note that this method has unexpected behavior if you have more than one network card/ip 
 	 * 
@@ -247,15 +665,11 @@ public abstract class Command {
 	 */
     public String whatIsMyIp()
     {
-        try {
-        	return getLocalHostLANAddress().getHostAddress().trim();
-		} catch (UnknownHostException e) {
-			throw new RuntimeException(e);
-		}
+    	return HostFacts.get().getIp();
     }
     
 	/**
-	 * Try to discover what is the machine host name.
+	 * Try to discover what is the machine host name. Taken once, see {@link HostFacts}.
 	 * <p>
 	 * Note that this method has unexpected behavior if you have more than one network card/ip
 	 *  
@@ -263,29 +677,55 @@ public abstract class Command {
 	 */
     public String whatIsMyHostName()
     {
-        try {
-			final InetAddress addr = InetAddress.getLocalHost();
-	        return addr.getHostName();
-		} catch (UnknownHostException e) {
-			throw new RuntimeException(e);
-		}
+    	return HostFacts.get().getHostName();
     }
 
 	// ----------- Protected methods -------------
 	
+	/**
+	 * Runs a read only command (e.g. a package database query) printing
+	 * nothing. It is executed even while recording (see plan mode)
+	 */
+	protected String query(List<String> cmdList) {
+		return _run(cmdList, NO_PRINTING);
+	}
+	
+	/**
+	 * Runs a read only command printing nothing, even while recording (see
+	 * plan mode)
+	 * 
+	 * @return its exit code
+	 */
+	protected int exitCode(List<String> cmdList) {
+		final int[] exitCode = new int[1];
+		_run(cmdList, new Interaction() {
+			@Override
+			public boolean shouldPrintCommand() {
+				return false;
+			}
+			@Override
+			public boolean shouldPrintOutput() {
+				return false;
+			}
+			@Override
+			public boolean isTheExecutionSuccessful(int waitfor) {
+				exitCode[0] = waitfor;
+				return true;
+			}
+		});
+		return exitCode[0];
+	}
+	
 	protected void wait(BooleanSupplier supplier) {
 		wait(supplier, 45);
 	}
 	
+	/**
+	 * Same as {@link #waitFor(BooleanSupplier, long)}, giving up after
+	 * <code>maxRetries</code> seconds
+	 */
 	protected void wait(BooleanSupplier supplier, int maxRetries) {
-		int count = 0;
-		while(count < maxRetries) {
-			if( supplier.getAsBoolean() ){
-				break;
-			} 
-			count++;
-			sleep(1000);
-		}
+		waitFor(supplier, TimeUnit.SECONDS.toMillis(maxRetries));
 	}
 	
 	protected void sleep(int time) {
@@ -298,132 +738,196 @@ public abstract class Command {
 
 	// ----------- Private methods -------------
 	
-	private static final class ProcessInteraction extends Interaction {
-		private final Interaction interaction;
-		private final Path noIteractionTempFile;
-		
-		ProcessInteraction(Interaction interaction){
-			this.interaction = interaction;
-			this.noIteractionTempFile = buildTemp();
-		}
-		
-		boolean hasInteraction(){
-			return interaction != null;
-		}
-		Path getNoIteractionTempFile(){
-			return noIteractionTempFile;
-		}
-		void cleanup() {
-			if (!hasInteraction()) {
-				try {
-					Files.delete(noIteractionTempFile);
-				} catch (IOException e) {
-					// ignore
-				}
-			}
-		}
-		
-		@Override
-		public boolean shouldPrintCommand() {
-			return interaction.shouldPrintCommand();
-		}
-		@Override
-		public boolean shouldPrintOutput() {
-			return interaction.shouldPrintOutput();
-		}
-		@Override
-		public void interact(OutputStream out) throws Exception {
-			interaction.interact(out);
-		}
-		@Override
-		public boolean isTheExecutionSuccessful(int processReturn) {
-			if(hasInteraction()) {
-				return interaction.isTheExecutionSuccessful(processReturn);
-			} 
-			return processReturn == 0;
-		}
-		
-		private Path buildTemp() {
-			try {
-				Path tempPath = null;
-				if (!hasInteraction()) {
-					// if do not have interaction, put the output in a temp file
-					tempPath = Files.createTempFile("cmd", ".out");
-				}
-				return tempPath;
-			} catch (IOException e) {
-				throw new RuntimeException("Error creating output commant temp file", e);
-			}
-		}
+	/** Asynchronous tasks may queue from other threads (see #async(Supplier)) */
+	private static final class InstallBatch {
+		private final List<String> remotes = Collections.synchronizedList(new ArrayList<>());
+		private final List<String> locals = Collections.synchronizedList(new ArrayList<>());
+	}
+	
+	/** Lazily created, so commands never used asynchronously do not start any thread */
+	private static final class AsyncPool {
+		private static final String THREAD_PREFIX = "scd4j-async-";
+		private static final AtomicInteger COUNT = new AtomicInteger();
+		private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(ASYNC_THREADS, r -> {
+			Thread t = new Thread(r, THREAD_PREFIX + COUNT.incrementAndGet());
+			t.setDaemon(true); // never holds the JVM (e.g. gradle) alive
+			return t;
+		});
 	}
 	
 	private static String _run(List<String> cmd, Interaction inter) {
-		ProcessInteraction pInter = new ProcessInteraction(inter);
+		if (inter == null) {
+			// no interaction at all: the output is streamed through a pipe
+			return _stream(cmd, null);
+		}
 		
 		OutputStream out = null;
-		ThreadedStreamHandler cmdStdHandler = null;
-		ThreadedStreamHandler cmdErrorHandler = null;
-		String cmdOutput = "";
-		
 		try {
-			final Process process = startProcess(cmd, pInter);
-			if (pInter.hasInteraction()) {
-				cmdStdHandler = new ThreadedStreamHandler(process.getInputStream(), pInter.shouldPrintOutput());
-				cmdErrorHandler = new ThreadedStreamHandler(process.getErrorStream(), pInter.shouldPrintOutput());
-				cmdStdHandler.start();
-				cmdErrorHandler.start();
-
-				out = process.getOutputStream();
-				pInter.interact(out);				
-				out.flush();
+			if(inter.shouldPrintCommand()) {
+				LOGGER.info("\tExecuting cmd: " + cmd2String(cmd));
 			}
+			final Process process = new ProcessBuilder(cmd).start();
+			// drained by the shared pump: no thread is started per command
+			Future<String> cmdOutput = StreamPump.pump(process.getInputStream(), inter.shouldPrintOutput());
+			Future<String> cmdError = StreamPump.pump(process.getErrorStream(), inter.shouldPrintOutput());
+
+			out = process.getOutputStream();
+			inter.interact(out);				
+			out.flush();
 			
 			int waitFor = process.waitFor();
-
-			if (pInter.hasInteraction()) {
-				cmdOutput = readInteractionCmdOutput(cmdStdHandler, cmdErrorHandler);
-			} else {
-				cmdOutput = readNoInteractionCmdOutput(pInter.getNoIteractionTempFile());
-			}
-
-			if(!pInter.isTheExecutionSuccessful(waitFor)){
-				String error = pInter.hasInteraction() ? cmdErrorHandler.getOutput() : cmdOutput;
-				throwExecutionException(waitFor, error);	
+			if(!inter.isTheExecutionSuccessful(waitFor)){
+				throwExecutionException(waitFor, cmdError.get());	
 			}
 			
-			return cmdOutput;
+			return cmdOutput.get();
 		} catch (Exception e) {
 			String msg = "Error executing command: " + cmd2String(cmd) + ".";
 			throw new RuntimeException(msg, e);
 		} finally {
 			quitellyClose(out);
-			pInter.cleanup();
 		}		
 	}
-	
-	static String readInteractionCmdOutput(ThreadedStreamHandler cmdStdHandler, ThreadedStreamHandler cmdErrorHandler) 
-			throws InterruptedException {
-		stopInteractionThreads(cmdStdHandler, cmdErrorHandler);
-		return cmdStdHandler.getOutput();
-	}
 
-	static void stopInteractionThreads(ThreadedStreamHandler cmdStdHandler, ThreadedStreamHandler cmdErrorHandler)
-			throws InterruptedException {
-		cmdStdHandler.interrupt();
-		cmdErrorHandler.interrupt();
-		cmdStdHandler.join();
-		cmdErrorHandler.join();
+	/**
+	 * Runs the command with stdout and stderr merged into a single pipe, which
+	 * is read line by line while the process runs. Each line is printed as soon
+	 * as it is produced, so progress is shown live. Only the tail of the output
+	 * is kept in memory (see {@link OutputBuffer}).
+	 * <p>
+	 * The command ends when its process ends, not when the pipe is closed.
+	 * Daemons started by the command (e.g. <code>service x start</code> or
+	 * <code>nohup x &amp;</code>) may inherit the pipe and keep it open. So,
+	 * after the process ends, the output is read for at most
+	 * {@link #DRAIN_AFTER_EXIT_MILLIS}. Then, what the daemons print is
+	 * discarded (but still read, so they never block writing to a full pipe).
+	 */
+	private static String _stream(List<String> cmd, Consumer<String> onLine) {
+		LOGGER.info("\tExecuting cmd: " + cmd2String(cmd));
+		final OutputBuffer output = new OutputBuffer();
+		final AtomicBoolean detached = new AtomicBoolean();
+		Process process = null;
+		try {
+			process = startMerged(cmd);
+			Future<?> pumped = StreamPump.pumpLines(process.getInputStream(), line -> {
+				synchronized (output) {
+					if (detached.get()) {
+						return;
+					}
+					output.appendLine(line);
+				}
+				LOGGER.info("\t\t" + line);
+				if (onLine != null) {
+					onLine.accept(line);
+				}
+			});
+			
+			int waitFor = process.waitFor();
+			try {
+				pumped.get(DRAIN_AFTER_EXIT_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				LOGGER.info("\t\t(the output is still open, probably by a process started in background. It is no longer printed)");
+			}
+			
+			final String tail;
+			synchronized (output) {
+				detached.set(true);
+				tail = output.tail();
+			}
+			if (waitFor != 0) {
+				throwExecutionException(waitFor, tail);
+			}
+			if (output.isTruncated()) {
+				LOGGER.info("\t\t(" + output.getLines() + " lines printed. Only the last " + OutputBuffer.DEFAULT_CAPACITY + " characters were kept)");
+			}
+			return tail;
+		} catch (Exception e) {
+			String msg = "Error executing command: " + cmd2String(cmd) + ".";
+			throw new RuntimeException(msg, e);
+		} finally {
+			if (process != null && process.isAlive()) {
+				process.destroy();
+			}
+		}
 	}
-
-	static String readNoInteractionCmdOutput(Path tempPath) throws IOException {
-		// If did not have interaction, prints the standard output only at the end of the process 
-		// execution. This is important because the user must know what was executed
-		StringBuilder buff = new StringBuilder();
-		for (String line : Files.readAllLines(tempPath, Charset.defaultCharset())) {
-			LOGGER.info("\t\t" + line);
-			buff.append(line).append("\n");
+	
+	private static Stream<String> _lines(List<String> cmd) {
+		LOGGER.info("\tExecuting cmd: " + cmd2String(cmd));
+		try {
+			final Process process = startMerged(cmd);
+			final OutputBuffer output = new OutputBuffer();
+			final LineIterator lines = new LineIterator(new BufferedReader(new InputStreamReader(process.getInputStream(), Charset.defaultCharset())));
+			return StreamSupport.stream(Spliterators.spliteratorUnknownSize(lines, Spliterator.ORDERED | Spliterator.NONNULL), false)
+					.peek(output::appendLine)
+					.onClose(() -> {
+						if (!lines.isAtEnd()) {
+							// closed before reading the whole output
+							process.destroy();
+							quitellyClose(lines.reader);
+							return;
+						}
+						quitellyClose(lines.reader);
+						int waitFor;
+						try {
+							waitFor = process.waitFor();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							process.destroy();
+							throw new RuntimeException("Error executing command: " + cmd2String(cmd) + ".", e);
+						}
+						if (waitFor != 0) {
+							throw new RuntimeException("Error executing command: " + cmd2String(cmd) + ".", 
+									new RuntimeException("The process has ended with status: " + waitFor + " | Output: " + output.tail()));
+						}
+					});
+		} catch (IOException e) {
+			throw new RuntimeException("Error executing command: " + cmd2String(cmd) + ".", e);
 		}
-		return buff.toString();
+	}
+	
+	/** Like {@link BufferedReader#lines()}, but tells whether the end of the output was reached */
+	private static final class LineIterator implements Iterator<String> {
+		private final BufferedReader reader;
+		private String next;
+		private boolean atEnd;
+		
+		LineIterator(BufferedReader reader) {
+			this.reader = reader;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if (next == null && !atEnd) {
+				try {
+					next = reader.readLine();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				atEnd = next == null;
+			}
+			return next != null;
+		}
+		
+		@Override
+		public String next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			String line = next;
+			next = null;
+			return line;
+		}
+		
+		boolean isAtEnd() {
+			return atEnd;
+		}
+	}
+	
+	private static Process startMerged(List<String> cmd) throws IOException {
+		final Process process = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+		// nothing is going to be written. Otherwise, a process reading its input would hang forever
+		process.getOutputStream().close();
+		return process;
 	}
 
 	private static void throwExecutionException(int waitFor, String error) {
@@ -431,35 +935,15 @@ public abstract class Command {
 		throw new RuntimeException(output);
 	}
 
-	private static void quitellyClose(OutputStream out) {
-		if (out != null) {
+	private static void quitellyClose(Closeable c) {
+		if (c != null) {
 			try {
-				out.close();
+				c.close();
 			} catch (IOException e) {
 			}
 		}
 	}
 
-	private static Process startProcess(List<String> cmd, ProcessInteraction pInter) throws IOException {
-		if(pInter.shouldPrintCommand()) {
-			LOGGER.info("\tExecuting cmd: " + cmd2String(cmd));
-		}
-
-		final ProcessBuilder pb = new ProcessBuilder(cmd);				
-		if (!pInter.hasInteraction()) {
-			Path temp = pInter.getNoIteractionTempFile();			
-			pb.redirectOutput(temp.toFile());
-			pb.redirectErrorStream(true);
-			if(pInter.shouldPrintCommand()) {
-				LOGGER.info("\t\t!!! WHAIT !!! "
-					+ "This command will print the result only at the end of its execution!"
-					+ "Temp file output: " + temp);
-			}
-		}
-
-		return pb.start();
-	}
-
 	private static String cmd2String(List<String> cmd) {
 		final StringBuilder builder = new StringBuilder();
 		for (String st : cmd) {
@@ -468,109 +952,7 @@ public abstract class Command {
 		return builder.toString();
 	}
 	
-	private void logCmdJava(String msg) {
+	protected void logCmdJava(String msg) {
 		LOGGER.info(String.format("\tExecuting cmd: %s (JAVA) ", msg));
 	}
-	
-	private static class ThreadedStreamHandler extends Thread {
-
-		private final InputStream in;
-		private boolean shouldPrint = false;
-		private final StringBuilder output = new StringBuilder();
-
-		ThreadedStreamHandler(InputStream in, boolean shouldPrint) {
-			this.in = in;
-			this.shouldPrint = shouldPrint;
-		}
-
-		@Override
-		public void run() {
-			try (BufferedReader br = new BufferedReader(new InputStreamReader(in))) {
-				String line = null;
-				while ((line = br.readLine()) != null) {
-					if (shouldPrint) {
-						LOGGER.info("\t\t" + line);
-					}
-					output.append(line + "\n");
-				}
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
-		}
-
-		public String getOutput() {
-			return output.toString();
-		}
-	}
-	
-	/**
-	 * FROM: discussion https://issues.apache.org/jira/browse/JCS-40
-	 * 
-     * Returns an <code>InetAddress</code> object encapsulating what is most likely the machine's LAN IP address.
-     * <p/>
-     * This method is intended for use as a replacement of JDK method <code>InetAddress.getLocalHost</code>, because
-     * that method is ambiguous on Linux systems. Linux systems enumerate the loopback network interface the same
-     * way as regular LAN network interfaces, but the JDK <code>InetAddress.getLocalHost</code> method does not
-     * specify the algorithm used to select the address returned under such circumstances, and will often return the
-     * loopback address, which is not valid for network communication. Details
-     * <a href="http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4665037">here</a>.
-     * <p/>
-     * This method will scan all IP addresses on all network interfaces on the host machine to determine the IP address
-     * most likely to be the machine's LAN address. If the machine has multiple IP addresses, this method will prefer
-     * a site-local IP address (e.g. 192.168.x.x or 10.10.x.x, usually IPv4) if the machine has one (and will return the
-     * first site-local address if the machine has more than one), but if the machine does not hold a site-local
-     * address, this method will return simply the first non-loopback address found (IPv4 or IPv6).
-     * <p/>
-     * If this method cannot find a non-loopback address using this selection algorithm, it will fall back to
-     * calling and returning the result of JDK method <code>InetAddress.getLocalHost</code>.
-     * <p/>
-     *
-     * @throws UnknownHostException If the LAN address of the machine cannot be found.
-     */
-    private static InetAddress getLocalHostLANAddress() throws UnknownHostException {
-        try {
-            InetAddress candidateAddress = null;
-            // Iterate all NICs (network interface cards)...
-            for (Enumeration<NetworkInterface> ifaces = NetworkInterface.getNetworkInterfaces(); ifaces.hasMoreElements();) {
-                NetworkInterface iface = ifaces.nextElement();
-                // Iterate all IP addresses assigned to each card...
-                for (Enumeration<InetAddress> inetAddrs = iface.getInetAddresses(); inetAddrs.hasMoreElements();) {
-                    InetAddress inetAddr = inetAddrs.nextElement();
-                    if (!inetAddr.isLoopbackAddress()) {
-
-                        if (inetAddr.isSiteLocalAddress()) {
-                            // Found non-loopback site-local address. Return it immediately...
-                            return inetAddr;
-                        }
-                        else if (candidateAddress == null) {
-                            // Found non-loopback address, but not necessarily site-local.
-                            // Store it as a candidate to be returned if site-local address is not subsequently found...
-                            candidateAddress = inetAddr;
-                            // Note that we don't repeatedly assign non-loopback non-site-local addresses as candidates,
-                            // only the first. For subsequent iterations, candidate will be non-null.
-                        }
-                    }
-                }
-            }
-            if (candidateAddress != null) {
-                // We did not find a site-local address, but we found some other non-loopback address.
-                // Server might have a non-site-local address assigned to its NIC (or it might be running
-                // IPv6 which deprecates the "site-local" concept).
-                // Return this non-loopback candidate address...
-                return candidateAddress;
-            }
-            // At this point, we did not find a non-loopback address.
-            // Fall back to returning whatever InetAddress.getLocalHost() returns...
-            InetAddress jdkSuppliedAddress = InetAddress.getLocalHost();
-            if (jdkSuppliedAddress == null) {
-                throw new UnknownHostException("The JDK InetAddress.getLocalHost() method unexpectedly returned null.");
-            }
-            return jdkSuppliedAddress;
-        }
-        catch (Exception e) {
-            UnknownHostException unknownHostException = new UnknownHostException("Failed to determine LAN address: " + e);
-            unknownHostException.initCause(e);
-            throw unknownHostException;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,290 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of the host facts (operating system, distribution, network, user
+ * and CPUs), taken once per run. The gradle tasks take a new one when a run
+ * starts, as a gradle daemon keeps the JVM among builds. Distribution facts are read from
+ * <code>/etc/os-release</code> and <code>/proc/version</code> in Java, so no
+ * process is started. Network facts are taken when first needed.
+ * <p>
+ * Hooks that change the network configuration (e.g. a new IP) must call
+ * {@link #refresh()}.
+ * 
+ * @author Fernando Rubbo
+ */
+public final class HostFacts {
+	private static final Path OS_RELEASE = Paths.get("/etc/os-release");
+	private static final Path PROC_VERSION = Paths.get("/proc/version");
+	private static volatile HostFacts current;
+	
+	private final String osName;
+	private final Map<String, String> osRelease;
+	private final String procVersion;
+	private final String user;
+	private final int cpus;
+	private volatile Network network;
+	
+	private HostFacts() {
+		this.osName = System.getProperty("os.name");
+		this.osRelease = Collections.unmodifiableMap(parseOsRelease(readIfExists(OS_RELEASE)));
+		this.procVersion = readIfExists(PROC_VERSION).trim();
+		this.user = System.getProperty("user.name");
+		this.cpus = Runtime.getRuntime().availableProcessors();
+	}
+	
+	/** The snapshot of this run */
+	public static HostFacts get() {
+		HostFacts facts = current;
+		if (facts == null) {
+			facts = refresh();
+		}
+		return facts;
+	}
+	
+	/** Takes a new snapshot. Use it after changing the host (e.g. its network) */
+	public static synchronized HostFacts refresh() {
+		current = new HostFacts();
+		return current;
+	}
+	
+	public String getOsName() {
+		return osName;
+	}
+	
+	/**
+	 * @param key a key of <code>/etc/os-release</code>, like <code>ID</code> or <code>VERSION_ID</code>
+	 * @return the value or <code>null</code> if not available
+	 */
+	public String getOsRelease(String key) {
+		return osRelease.get(key);
+	}
+	
+	/** Content of <code>/proc/version</code>. Empty if not available (e.g. Windows) */
+	public String getProcVersion() {
+		return procVersion;
+	}
+	
+	public String getUser() {
+		return user;
+	}
+	
+	public int getCpus() {
+		return cpus;
+	}
+	
+	/** The most likely LAN address of this host. See {@link #getLocalHostLANAddress()} */
+	public String getIp() {
+		return network().ip;
+	}
+	
+	public String getHostName() {
+		return network().hostName();
+	}
+	
+	/** Names of the network interfaces */
+	public List<String> getInterfaces() {
+		return network().interfaces;
+	}
+	
+	/** Every address of every network interface, but loopback ones */
+	public List<String> getAddresses() {
+		return network().addresses;
+	}
+	
+	@Override
+	public String toString() {
+		return "{os:" + osName + ", distribution:" + osRelease.get("PRETTY_NAME") + ", user:" + user + ", cpus:" + cpus + "}";
+	}
+	
+	/** Parses a <code>KEY=value</code> file, like <code>/etc/os-release</code> */
+	static Map<String, String> parseOsRelease(String content) {
+		final Map<String, String> values = new HashMap<>();
+		for (String line : content.split("\n")) {
+			line = line.trim();
+			int eq = line.indexOf('=');
+			if (line.isEmpty() || line.startsWith("#") || eq < 1) {
+				continue;
+			}
+			String value = line.substring(eq + 1).trim();
+			if (value.length() > 1 && (value.startsWith("\"") || value.startsWith("'")) && value.endsWith(value.substring(0, 1))) {
+				value = value.substring(1, value.length() - 1);
+			}
+			values.put(line.substring(0, eq).trim(), value);
+		}
+		return values;
+	}
+	
+	private Network network() {
+		Network net = network;
+		if (net == null) {
+			synchronized (this) {
+				net = network;
+				if (net == null) {
+					// failures are not kept: the next call tries again
+					net = new Network();
+					network = net;
+				}
+			}
+		}
+		return net;
+	}
+	
+	private static String readIfExists(Path path) {
+		try {
+			return Files.exists(path) ? new String(Files.readAllBytes(path), StandardCharsets.UTF_8) : "";
+		} catch (IOException e) {
+			return "";
+		}
+	}
+	
+	private static final class Network {
+		private final String ip;
+		private final List<String> interfaces = new ArrayList<>();
+		private final List<String> addresses = new ArrayList<>();
+		
+		private final String hostName;
+		private final UnknownHostException hostNameError;
+		
+		Network() {
+			try {
+				this.ip = getLocalHostLANAddress().getHostAddress().trim();
+				for (NetworkInterface iface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+					interfaces.add(iface.getName());
+					for (InetAddress address : Collections.list(iface.getInetAddresses())) {
+						if (!address.isLoopbackAddress()) {
+							addresses.add(address.getHostAddress());
+						}
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			
+			String name = null;
+			UnknownHostException error = null;
+			try {
+				name = InetAddress.getLocalHost().getHostName();
+			} catch (UnknownHostException e) {
+				error = e;
+			}
+			this.hostName = name;
+			this.hostNameError = error;
+		}
+		
+		String hostName() {
+			if (hostName == null) {
+				throw new RuntimeException(hostNameError);
+			}
+			return hostName;
+		}
+	}
+	
+	/**
+	 * FROM: discussion https://issues.apache.org/jira/browse/JCS-40
+	 * 
+     * Returns an <code>InetAddress</code> object encapsulating what is most likely the machine's LAN IP address.
+     * <p/>
+     * This method is intended for use as a replacement of JDK method <code>InetAddress.getLocalHost</code>, because
+     * that method is ambiguous on Linux systems. Linux systems enumerate the loopback network interface the same
+     * way as regular LAN network interfaces, but the JDK <code>InetAddress.getLocalHost</code> method does not
+     * specify the algorithm used to select the address returned under such circumstances, and will often return the
+     * loopback address, which is not valid for network communication. Details
+     * <a href="http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4665037">here</a>.
+     * <p/>
+     * This method will scan all IP addresses on all network interfaces on the host machine to determine the IP address
+     * most likely to be the machine's LAN address. If the machine has multiple IP addresses, this method will prefer
+     * a site-local IP address (e.g. 192.168.x.x or 10.10.x.x, usually IPv4) if the machine has one (and will return the
+     * first site-local address if the machine has more than one), but if the machine does not hold a site-local
+     * address, this method will return simply the first non-loopback address found (IPv4 or IPv6).
+     * <p/>
+     * If this method cannot find a non-loopback address using this selection algorithm, it will fall back to
+     * calling and returning the result of JDK method <code>InetAddress.getLocalHost</code>.
+     * <p/>
+     *
+     * @throws UnknownHostException If the LAN address of the machine cannot be found.
+     */
+    private static InetAddress getLocalHostLANAddress() throws UnknownHostException {
+        try {
+            InetAddress candidateAddress = null;
+            // Iterate all NICs (network interface cards)...
+            for (Enumeration<NetworkInterface> ifaces = NetworkInterface.getNetworkInterfaces(); ifaces.hasMoreElements();) {
+                NetworkInterface iface = ifaces.nextElement();
+                // Iterate all IP addresses assigned to each card...
+                for (Enumeration<InetAddress> inetAddrs = iface.getInetAddresses(); inetAddrs.hasMoreElements();) {
+                    InetAddress inetAddr = inetAddrs.nextElement();
+                    if (!inetAddr.isLoopbackAddress()) {
+
+                        if (inetAddr.isSiteLocalAddress()) {
+                            // Found non-loopback site-local address. Return it immediately...
+                            return inetAddr;
+                        }
+                        else if (candidateAddress == null) {
+                            // Found non-loopback address, but not necessarily site-local.
+                            // Store it as a candidate to be returned if site-local address is not subsequently found...
+                            candidateAddress = inetAddr;
+                            // Note that we don't repeatedly assign non-loopback non-site-local addresses as candidates,
+                            // only the first. For subsequent iterations, candidate will be non-null.
+                        }
+                    }
+                }
+            }
+            if (candidateAddress != null) {
+                // We did not find a site-local address, but we found some other non-loopback address.
+                // Server might have a non-site-local address assigned to its NIC (or it might be running
+                // IPv6 which deprecates the "site-local" concept).
+                // Return this non-loopback candidate address...
+                return candidateAddress;
+            }
+            // At this point, we did not find a non-loopback address.
+            // Fall back to returning whatever InetAddress.getLocalHost() returns...
+            InetAddress jdkSuppliedAddress = InetAddress.getLocalHost();
+            if (jdkSuppliedAddress == null) {
+                throw new UnknownHostException("The JDK InetAddress.getLocalHost() method unexpectedly returned null.");
+            }
+            return jdkSuppliedAddress;
+        }
+        catch (Exception e) {
+            UnknownHostException unknownHostException = new UnknownHostException("Failed to determine LAN address: " + e);
+            unknownHostException.initCause(e);
+            throw unknownHostException;
+        }
+    }
+}
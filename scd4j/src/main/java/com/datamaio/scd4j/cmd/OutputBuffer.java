@@ -0,0 +1,107 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd;
+
+/**
+ * Bounded ring buffer that keeps only the last characters of a command
+ * output. No matter how much a command prints, the memory used is limited by
+ * the capacity.
+ * 
+ * @author Fernando Rubbo
+ */
+public final class OutputBuffer {
+	/** Default number of characters kept from a command output */
+	public static final int DEFAULT_CAPACITY = 64 * 1024;
+	
+	private final char[] buff;
+	private int start;
+	private int size;
+	private long lines;
+	private long total;
+	
+	public OutputBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	public OutputBuffer(int capacity) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.buff = new char[capacity];
+	}
+	
+	/** Appends the line followed by a line separator (<code>\n</code>) */
+	public void appendLine(String line) {
+		append(line);
+		append("\n");
+		lines++;
+	}
+	
+	private void append(String s) {
+		int len = s.length();
+		total += len;
+		int from = Math.max(0, len - buff.length);
+		for (int i = from; i < len; i++) {
+			if(size < buff.length) {
+				buff[(start + size) % buff.length] = s.charAt(i);
+				size++;
+			} else {
+				buff[start] = s.charAt(i);
+				start = (start + 1) % buff.length;
+			}
+		}
+	}
+	
+	/**
+	 * @return the kept output. If the output was truncated, the first
+	 *         (partial) line is dropped
+	 */
+	public String tail() {
+		StringBuilder tail = new StringBuilder(size);
+		int end = start + size;
+		if(end <= buff.length) {
+			tail.append(buff, start, size);
+		} else {
+			tail.append(buff, start, buff.length - start).append(buff, 0, end - buff.length);
+		}
+		if(isTruncated()) {
+			int nl = tail.indexOf("\n");
+			tail.delete(0, nl + 1);
+		}
+		return tail.toString();
+	}
+	
+	public boolean isTruncated() {
+		return total > size;
+	}
+	
+	public long getLines() {
+		return lines;
+	}
+	
+	/** @return number of characters appended so far, including the discarded ones */
+	public long getTotal() {
+		return total;
+	}
+}
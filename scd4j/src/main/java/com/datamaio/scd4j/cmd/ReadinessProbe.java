@@ -0,0 +1,200 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.regex.Pattern;
+
+/**
+ * Tells whether something (usually a service) is ready to be used. Probes
+ * are checked by {@link Command#awaitReady(long, ReadinessProbe...)}, with
+ * exponential backoff, until they are ready or a deadline is reached.
+ * 
+ * @author Fernando Rubbo
+ */
+@FunctionalInterface
+public interface ReadinessProbe {
+	/** Max time a single check may block (connect or read) */
+	int CHECK_TIMEOUT_MILLIS = 1000;
+	
+	/** @return <code>true</code> if ready. Must not throw exceptions */
+	boolean isReady();
+	
+	/** Ready when a TCP connection to the local port is accepted */
+	static ReadinessProbe portOpen(int port) {
+		return portOpen("localhost", port);
+	}
+	
+	/** Ready when a TCP connection to the host and port is accepted */
+	static ReadinessProbe portOpen(String host, int port) {
+		return () -> {
+			try (Socket socket = new Socket()) {
+				socket.connect(new InetSocketAddress(host, port), CHECK_TIMEOUT_MILLIS);
+				return true;
+			} catch (IOException e) {
+				return false;
+			}
+		};
+	}
+	
+	/** Ready when the file exists (e.g. a pid file) */
+	static ReadinessProbe fileExists(String file) {
+		Path path = Paths.get(file);
+		return () -> Files.exists(path);
+	}
+	
+	/**
+	 * Ready when a line appended to the log file <b>after</b> this probe was
+	 * created matches the regular expression (e.g. <code>"Started in \\d+ms"</code>)
+	 */
+	static ReadinessProbe logMatches(String file, String regex) {
+		return new LogProbe(Paths.get(file), Pattern.compile(regex));
+	}
+	
+	/**
+	 * Ready when the operating system says the service is running (see
+	 * {@link Command#isServiceRunning(String)}). Each check starts a process
+	 */
+	static ReadinessProbe serviceRunning(String name) {
+		return () -> {
+			try {
+				return Command.get().isServiceRunning(name);
+			} catch (RuntimeException e) {
+				return false;
+			}
+		};
+	}
+	
+	/** Ready when a GET to the url answers with HTTP 200 */
+	static ReadinessProbe httpOk(String url) {
+		return () -> {
+			HttpURLConnection conn = null;
+			try {
+				conn = (HttpURLConnection) new URL(url).openConnection();
+				conn.setConnectTimeout(CHECK_TIMEOUT_MILLIS);
+				conn.setReadTimeout(CHECK_TIMEOUT_MILLIS);
+				return conn.getResponseCode() == HttpURLConnection.HTTP_OK;
+			} catch (IOException e) {
+				return false;
+			} finally {
+				if (conn != null) {
+					conn.disconnect();
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Reads only what was appended since the last check. Once the pattern is
+	 * found, the probe stays ready, given that the other probes of the same
+	 * wait are checked again until all of them are ready
+	 */
+	final class LogProbe implements ReadinessProbe {
+		private final Path file;
+		private final Pattern pattern;
+		private final StringBuilder partial = new StringBuilder();
+		/** UTF-8 characters may be split between two reads. Their first bytes wait here */
+		private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		private byte[] pending = new byte[0];
+		private long position;
+		private boolean matched;
+		
+		LogProbe(Path file, Pattern pattern) {
+			this.file = file;
+			this.pattern = pattern;
+			try {
+				this.position = Files.exists(file) ? Files.size(file) : 0;
+			} catch (IOException e) {
+				this.position = 0;
+			}
+		}
+		
+		@Override
+		public synchronized boolean isReady() {
+			if (matched) {
+				return true;
+			}
+			try {
+				if (!Files.exists(file)) {
+					return false;
+				}
+				if (Files.size(file) < position) {
+					// rotated or truncated
+					position = 0;
+					partial.setLength(0);
+					pending = new byte[0];
+					decoder.reset();
+				}
+				byte[] appended;
+				try (RandomAccessFile in = new RandomAccessFile(file.toFile(), "r")) {
+					appended = new byte[(int) Math.min(in.length() - position, Integer.MAX_VALUE)];
+					in.seek(position);
+					in.readFully(appended);
+				}
+				position += appended.length;
+				decode(appended);
+				
+				int end;
+				while ((end = partial.indexOf("\n")) >= 0) {
+					String line = partial.substring(0, end);
+					partial.delete(0, end + 1);
+					if (pattern.matcher(line).find()) {
+						matched = true;
+						return true;
+					}
+				}
+				return false;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+		
+		private void decode(byte[] appended) {
+			ByteBuffer in = ByteBuffer.allocate(pending.length + appended.length);
+			in.put(pending).put(appended).flip();
+			CharBuffer out = CharBuffer.allocate((int) (in.remaining() * (double) decoder.maxCharsPerByte()) + 1);
+			decoder.decode(in, out, false);
+			out.flip();
+			partial.append(out);
+			// an incomplete character at the end is decoded with the next read
+			pending = new byte[in.remaining()];
+			in.get(pending);
+		}
+	}
+}
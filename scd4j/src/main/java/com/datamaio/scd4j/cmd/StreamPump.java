@@ -0,0 +1,149 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import com.datamaio.scd4j.util.LogContext;
+
+/**
+ * Shared pump of child process streams (stdout and stderr). Instead of
+ * starting (and joining) new threads for each executed command, the streams
+ * are drained by a pool shared by the whole JVM. Streams are read through
+ * char buffers taken from a small shared pool, which works for both pooled
+ * and virtual threads (a thread local would allocate a new buffer for each
+ * virtual thread).
+ * <p>
+ * Reads are blocking, so the pool can not be fixed: a command whose streams
+ * are not drained could hang forever. Idle threads are reused (and discarded
+ * after a while), so no thread is created in the hot path of a module running
+ * many commands. On JDKs with virtual threads (21+), one virtual thread per
+ * stream is used instead.
+ * 
+ * @author Fernando Rubbo
+ */
+final class StreamPump {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	private static final int BUFFER_SIZE = 8 * 1024;
+	/** Usually two streams per running command. More concurrent streams just allocate their own buffer */
+	private static final BlockingQueue<char[]> BUFFERS = new ArrayBlockingQueue<>(16);
+	private static final ExecutorService EXECUTOR = createExecutor();
+	
+	private StreamPump() {
+	}
+	
+	/**
+	 * Drains the stream in background until its end. The output is normalized
+	 * line by line: every line ends with <code>\n</code> (even the last one)
+	 * 
+	 * @param shouldPrint if each line should be logged as soon as it is read
+	 * @return the whole output, available when the stream ends
+	 */
+	static Future<String> pump(InputStream in, boolean shouldPrint) {
+		return EXECUTOR.submit(LogContext.callable(() -> drain(in, Charset.defaultCharset(), shouldPrint)));
+	}
+	
+	/**
+	 * Reads the stream in background until its end, giving each line to the
+	 * consumer as soon as it is read
+	 */
+	static Future<?> pumpLines(InputStream in, Consumer<String> onLine) {
+		return EXECUTOR.submit(LogContext.callable(() -> {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charset.defaultCharset()))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					onLine.accept(line);
+				}
+			}
+			return null;
+		}));
+	}
+	
+	static String drain(InputStream in, Charset charset, boolean shouldPrint) throws IOException {
+		char[] pooled = BUFFERS.poll();
+		final char[] buff = pooled!=null ? pooled : new char[BUFFER_SIZE];
+		final StringBuilder output = new StringBuilder();
+		final StringBuilder line = new StringBuilder();
+		boolean cr = false;
+		try (Reader reader = new InputStreamReader(in, charset)) {
+			int read;
+			while ((read = reader.read(buff)) != -1) {
+				for (int i = 0; i < read; i++) {
+					char c = buff[i];
+					if (c == '\n' && cr) {
+						// second half of a \r\n
+						cr = false;
+					} else if (c == '\n' || c == '\r') {
+						cr = c == '\r';
+						endLine(line, output, shouldPrint);
+					} else {
+						cr = false;
+						line.append(c);
+					}
+				}
+			}
+		} finally {
+			BUFFERS.offer(buff);
+		}
+		if (line.length() > 0) {
+			endLine(line, output, shouldPrint);
+		}
+		return output.toString();
+	}
+
+	private static void endLine(StringBuilder line, StringBuilder output, boolean shouldPrint) {
+		if (shouldPrint) {
+			LOGGER.info("\t\t" + line);
+		}
+		output.append(line).append('\n');
+		line.setLength(0);
+	}
+	
+	private static ExecutorService createExecutor() {
+		try {
+			// JDK 21+. Looked up by reflection as this code targets Java 8
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			final AtomicInteger count = new AtomicInteger();
+			return Executors.newCachedThreadPool(r -> {
+				Thread t = new Thread(r, "scd4j-pump-" + count.incrementAndGet());
+				t.setDaemon(true); // never holds the JVM (e.g. gradle) alive
+				return t;
+			});
+		}
+	}
+}
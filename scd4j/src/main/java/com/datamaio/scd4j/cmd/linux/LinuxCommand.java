@@ -32,12 +32,14 @@ import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import com.datamaio.scd4j.cmd.Command;
 import com.datamaio.scd4j.cmd.Interaction;
 import com.datamaio.scd4j.util.io.FileUtils;
 import com.datamaio.scd4j.util.io.PathUtils;
+import com.datamaio.scd4j.util.io.ZipExtractor;
 
 /**
  * 
@@ -46,9 +48,46 @@ import com.datamaio.scd4j.util.io.PathUtils;
 public abstract class LinuxCommand extends Command {
 	public static final String OS_NAME = "Linux";
 	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	/** Long-lived shell of each thread. See {@link #openSession()} */
+	private static final ThreadLocal<ShellSession> SESSION = new ThreadLocal<>();
+	/** Package managers lock their database. See {@link #changePackages(Runnable)} */
+	private static final Object PACKAGE_MANAGER = new Object();
+	/**
+	 * Installed packages. Loaded when first needed, invalidated by installs,
+	 * removals and when a run starts (see {@link #invalidatePackages()})
+	 */
+	private final PackageInventory inventory = new PackageInventory(this::loadInstalledPacks);
 	
 	public abstract String getPackExtension();
 	
+	/**
+	 * Loads the installed packages from the package database, with a single
+	 * query. See {@link PackageInventory}
+	 * 
+	 * @return package name to installed version
+	 */
+	protected abstract Map<String, String> loadInstalledPacks();
+	
+	protected PackageInventory getInventory() {
+		return inventory;
+	}
+	
+	/**
+	 * Runs a change of the installed packages (e.g. <code>apt-get install</code>)
+	 * and invalidates the installed packages. Changes of this JVM never run at
+	 * the same time (e.g. by {@link #async(java.util.function.Supplier)} tasks),
+	 * as a package manager fails while another one holds its database lock.
+	 */
+	protected void changePackages(Runnable change) {
+		synchronized (PACKAGE_MANAGER) {
+			try {
+				change.run();
+			} finally {
+				inventory.invalidate();
+			}
+		}
+	}
+	
 	@Override
 	public String osname() {
 		return OS_NAME;
@@ -79,6 +118,17 @@ public abstract class LinuxCommand extends Command {
 		run("service " + name + " restart");
 	}
 	
+	/**
+	 * Not running only if <code>service name status</code> answers a LSB not
+	 * running code (1, 2 or 3). Any other code (e.g. 4: unknown, or a script
+	 * without status) counts as running.
+	 */
+	@Override
+	public boolean isServiceRunning(String name) {
+		int code = exitCode(Arrays.asList("service", name, "status"));
+		return code < 1 || code > 3;
+	}
+	
 	@Override
 	public String serviceStatus(String name){
 		try {
@@ -109,8 +159,33 @@ public abstract class LinuxCommand extends Command {
 		chmod(mode, file, false);
 	}
 
+	/**
+	 * Changes the permissions in JVM (see {@link PosixFiles}). Modes not
+	 * supported there (e.g. <code>u+s</code>) run the <code>chmod</code> command.
+	 */
 	@Override
 	public void chmod(final String mode, final String file, final boolean recursive) {
+		String cmd = "chmod " + (recursive ? "-R " : "") + mode + " " + file;
+		if (!record(cmd)) {
+			try {
+				if (PosixFiles.chmod(mode, Paths.get(file), recursive)) {
+					logCmdJava(cmd);
+				} else {
+					runChmod(mode, file, recursive);
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Error executing command: " + cmd + ".", e);
+			}
+		}
+
+		if (file.endsWith(".sh")) {
+			// executa este cara apenas para garantir que se alguem salvou no windows
+			// este arquivo possa ser executado no Linux
+			fixTextContent(file);
+		}
+	}
+
+	private void runChmod(final String mode, final String file, final boolean recursive) {
 		List<String> cmd = new ArrayList<>();
 		cmd.add("chmod");
 		if (recursive) {
@@ -119,12 +194,6 @@ public abstract class LinuxCommand extends Command {
 		cmd.add(mode);
 		cmd.add(file);
 		run(cmd);
-
-		if (file.endsWith(".sh")) {
-			// executa este cara apenas para garantir que se alguem salvou no windows
-			// este arquivo possa ser executado no Linux
-			fixTextContent(file);
-		}
 	}
 
 	@Override
@@ -166,8 +235,28 @@ public abstract class LinuxCommand extends Command {
 		chown(user, group, path, false);
 	}
 
+	/**
+	 * Changes the owner in JVM (see {@link PosixFiles}). Users or groups not
+	 * found by name (e.g. numeric ids) run the <code>chown</code> command.
+	 */
 	@Override
 	public void chown(final String user, final String group, final String path, final boolean recursive) {
+		String cmd = "chown " + (recursive ? "-R " : "") + user + (group!=null ? ":" + group : "") + " " + path;
+		if (record(cmd)) {
+			return;
+		}
+		try {
+			if (PosixFiles.chown(user, group, Paths.get(path), recursive)) {
+				logCmdJava(cmd);
+			} else {
+				runChown(user, group, path, recursive);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error executing command: " + cmd + ".", e);
+		}
+	}
+	
+	private void runChown(final String user, final String group, final String path, final boolean recursive) {
 		List<String> cmd = new ArrayList<>();
 		cmd.add("chown");
 		if (recursive) {
@@ -178,9 +267,30 @@ public abstract class LinuxCommand extends Command {
 		run(cmd);
 	}
 	
+	/**
+	 * Same as <code>ln -sf targetFile link</code>, but in JVM. If the link is
+	 * an existing directory, the link is created inside it.
+	 */
 	@Override
 	public void ln(final String link, final String targetFile) {
-		run("ln -sf " + targetFile + " " + link);
+		String cmd = "ln -sf " + targetFile + " " + link;
+		if (record(cmd)) {
+			return;
+		}
+		try {
+			Path target = Paths.get(targetFile);
+			Path linkPath = Paths.get(link);
+			if (Files.isDirectory(linkPath) && target.getFileName() != null) {
+				linkPath = linkPath.resolve(target.getFileName());
+			}
+			logCmdJava(cmd);
+			Files.deleteIfExists(linkPath);
+			Files.createSymbolicLink(linkPath, target);
+		} catch (UnsupportedOperationException e) {
+			run(cmd);
+		} catch (IOException e) {
+			throw new RuntimeException("Error executing command: " + cmd + ".", e);
+		}
 	}	
 
 	@Override
@@ -218,6 +328,8 @@ public abstract class LinuxCommand extends Command {
 		try {
 			run("id " + user, false);
 			run("userdel " + (options != null ? options.trim() + " " : "") + user);
+			// a new user with the same name may get another uid
+			PosixFiles.clearPrincipals();
 		} catch (Exception e) {
 			// ignore the user does not exists
 		}
@@ -239,12 +351,46 @@ public abstract class LinuxCommand extends Command {
 		});
 	}
 	
+	/**
+	 * Extracts in JVM (see {@link ZipExtractor}), so the <code>unzip</code>
+	 * package is not required
+	 */
 	@Override
 	public void unzip(String from, String toDir) {
+		if (record("unzip -q -o " + from + " -d " + toDir)) {
+			return;
+		}
 		LOGGER.info("\tUnziping " + from + " para " + toDir + " ... ");
-		run("unzip -q -o " + from + " -d " + toDir);
+		new ZipExtractor().extract(Paths.get(from), Paths.get(toDir));
+	}
+	
+
+	@Override
+	public boolean openSession() {
+		if(SESSION.get() == null) {
+			SESSION.set(new ShellSession());
+		}
+		return true;
+	}
+	
+	@Override
+	public void closeSession() {
+		ShellSession session = SESSION.get();
+		if(session != null) {
+			SESSION.remove();
+			LOGGER.info("\tShell session closed. Commands executed: " + session.getExecuted());
+			session.close();
+		}
 	}
 	
+	@Override
+	public String run(List<String> cmdList, Interaction interact) {
+		ShellSession session = SESSION.get();
+		if(session != null && !isRecording() && ShellSession.canRun(interact)) {
+			return session.run(cmdList, interact);
+		}
+		return super.run(cmdList, interact);
+	}
 
 	// ----------- begin bash run --------
 
@@ -281,6 +427,25 @@ public abstract class LinuxCommand extends Command {
 		installRemotePack(pack, null);
 	}
 	
+	/** A memory lookup, as the installed packages are cached */
+	@Override
+	public boolean isInstalled(String pack) {
+		return inventory.isInstalled(pack);
+	}
+	
+	@Override
+	public void invalidatePackages() {
+		inventory.invalidate();
+	}
+	
+	/**
+	 * @return the installed version of the package or <code>null</code> if it
+	 *         is not installed
+	 */
+	public String getInstalledVersion(String pack) {
+		return inventory.getVersion(pack);
+	}
+	
 	protected void replaceLineSeparator(String file) {
 		String fileContent = FileUtils.read(PathUtils.get(file));
 		fileContent = fileContent.replaceAll("\r\n", "\n");
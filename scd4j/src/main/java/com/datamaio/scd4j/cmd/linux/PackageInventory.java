@@ -0,0 +1,148 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd.linux;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of the installed packages (name to version). It is loaded once, when
+ * first needed, and must be invalidated whenever packages are installed or
+ * removed. So, many <code>isInstalled</code> checks cost a single query to the
+ * package database.
+ * 
+ * @author Fernando Rubbo
+ */
+public final class PackageInventory {
+	private final Supplier<Map<String, String>> loader;
+	private volatile Map<String, String> packs;
+	
+	/**
+	 * @param loader loads the installed packages (name to version)
+	 */
+	public PackageInventory(Supplier<Map<String, String>> loader) {
+		this.loader = loader;
+	}
+	
+	/**
+	 * @param pack the package name. Globs (e.g. <code>openjdk-*</code>) are
+	 *             accepted, as in <code>dpkg-query -l</code>
+	 */
+	public boolean isInstalled(String pack) {
+		Map<String, String> installed = packs();
+		if (pack.indexOf('*') < 0 && pack.indexOf('?') < 0) {
+			return installed.containsKey(pack);
+		}
+		Pattern glob = Pattern.compile(Pattern.quote(pack).replace("*", "\\E.*\\Q").replace("?", "\\E.\\Q"));
+		return installed.keySet().stream().anyMatch(p -> glob.matcher(p).matches());
+	}
+	
+	/**
+	 * Like <code>rpm -qa | grep text</code>: any installed package whose
+	 * <code>name-version</code> contains the text
+	 */
+	public boolean isInstalledContaining(String text) {
+		return packs().entrySet().stream().anyMatch(e -> (e.getKey() + "-" + e.getValue()).contains(text));
+	}
+	
+	/**
+	 * @return the installed version or <code>null</code> if not installed
+	 */
+	public String getVersion(String pack) {
+		return packs().get(pack);
+	}
+	
+	/** The next query loads the packages again */
+	public void invalidate() {
+		packs = null;
+	}
+	
+	private Map<String, String> packs() {
+		Map<String, String> installed = packs;
+		if (installed == null) {
+			synchronized (this) {
+				installed = packs;
+				if (installed == null) {
+					installed = Collections.unmodifiableMap(new HashMap<>(loader.get()));
+					packs = installed;
+				}
+			}
+		}
+		return installed;
+	}
+	
+	/**
+	 * Parses the dpkg database (<code>/var/lib/dpkg/status</code>). Only
+	 * installed packages are returned, by name and by <code>name:arch</code>.
+	 */
+	public static Map<String, String> parseDpkgStatus(BufferedReader reader) throws IOException {
+		final Map<String, String> packs = new HashMap<>();
+		String name = null, version = null, arch = null;
+		boolean installed = false;
+		String line;
+		do {
+			line = reader.readLine();
+			if (line == null || line.isEmpty()) {
+				// end of a package paragraph
+				if (name != null && installed) {
+					packs.put(name, version);
+					if (arch != null) {
+						packs.put(name + ":" + arch, version);
+					}
+				}
+				name = version = arch = null;
+				installed = false;
+			} else if (line.startsWith("Package:")) {
+				name = line.substring(8).trim();
+			} else if (line.startsWith("Version:")) {
+				version = line.substring(8).trim();
+			} else if (line.startsWith("Architecture:")) {
+				arch = line.substring(13).trim();
+			} else if (line.startsWith("Status:")) {
+				// e.g. "install ok installed", "deinstall ok config-files"
+				installed = line.trim().endsWith(" installed");
+			}
+		} while (line != null);
+		return packs;
+	}
+	
+	/**
+	 * Parses the output of <code>rpm -qa --qf '%{NAME} %{VERSION}-%{RELEASE}\n'</code>
+	 */
+	public static Map<String, String> parseRpmList(String output) {
+		final Map<String, String> packs = new HashMap<>();
+		for (String line : output.split("\n")) {
+			String[] nameVersion = line.trim().split(" ", 2);
+			if (!nameVersion[0].isEmpty()) {
+				packs.put(nameVersion[0], nameVersion.length > 1 ? nameVersion[1] : "");
+			}
+		}
+		return packs;
+	}
+}
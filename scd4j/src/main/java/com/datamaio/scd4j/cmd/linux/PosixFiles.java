@@ -0,0 +1,364 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd.linux;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipal;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.attribute.UserPrincipalNotFoundException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In JVM implementation of <code>chmod</code> and <code>chown</code>. Recursive
+ * variants walk the tree in parallel (fork/join), so a big tree costs one walk
+ * instead of one process per call. User and group lookups are cached.
+ * <p>
+ * Every method returns <code>false</code> when the request is not supported
+ * here (e.g. <code>chmod u+s</code> or a numeric uid), so the caller can fall
+ * back to the external command.
+ * 
+ * @author Fernando Rubbo
+ */
+final class PosixFiles {
+	private static final Pattern OCTAL = Pattern.compile("0?([0-7]{3})|([0-7]{4})");
+	private static final Pattern SYMBOLIC = Pattern.compile("([ugoa]*)((?:[-+=][rwxX]*)+)");
+	private static final Pattern OPERATION = Pattern.compile("([-+=])([rwxX]*)");
+	private static final int SPECIAL_BITS = 07000;
+	private static final int SETUID_SETGID = 06000;
+	private static final PosixFilePermission[] PERMISSIONS = PosixFilePermission.values();
+	
+	private static final Map<String, UserPrincipal> USERS = new ConcurrentHashMap<>();
+	private static final Map<String, GroupPrincipal> GROUPS = new ConcurrentHashMap<>();
+	private static volatile Integer umask;
+	
+	private PosixFiles() {
+	}
+	
+	/**
+	 * Same as <code>chmod [-R] mode path</code>. Supports octal modes
+	 * (<code>755</code>, <code>2775</code>) and symbolic ones with
+	 * <code>rwxX</code> (<code>u+x,go-w</code>). As <code>chmod -R</code>,
+	 * symbolic links found in the tree are ignored.
+	 */
+	static boolean chmod(String mode, Path path, boolean recursive) throws IOException {
+		Mode m = Mode.parse(mode);
+		if (m == null || !isSupported(path)) {
+			return false;
+		}
+		if (recursive) {
+			walk(path, (p, top) -> {
+				if (top || !Files.isSymbolicLink(p)) {
+					setMode(p, m);
+				}
+			});
+		} else {
+			setMode(path, m);
+		}
+		return true;
+	}
+	
+	/**
+	 * Same as <code>chown [-R] user[:group] path</code>. As <code>chown -R</code>, 
+	 * symbolic links found in the tree are changed themselves, never their targets.
+	 * 
+	 * @param group <code>null</code> to keep the current group
+	 */
+	static boolean chown(String user, String group, Path path, boolean recursive) throws IOException {
+		if (!isSupported(path)) {
+			return false;
+		}
+		UserPrincipal owner = user(user);
+		GroupPrincipal newGroup = group != null ? group(group) : null;
+		if (owner == null || (group != null && newGroup == null)) {
+			return false;
+		}
+		PathAction action = (p, top) -> {
+			LinkOption[] options = top ? new LinkOption[0] : new LinkOption[] { NOFOLLOW_LINKS };
+			PosixFileAttributeView view = Files.getFileAttributeView(p, PosixFileAttributeView.class, options);
+			view.setOwner(owner);
+			if (newGroup != null) {
+				view.setGroup(newGroup);
+			}
+		};
+		if (recursive) {
+			walk(path, action);
+		} else {
+			action.apply(path, true);
+		}
+		return true;
+	}
+	
+	/** Forgets cached users and groups (e.g. after a user was deleted) */
+	static void clearPrincipals() {
+		USERS.clear();
+		GROUPS.clear();
+	}
+	
+	// ----------- Private methods -------------
+	
+	private static boolean isSupported(Path path) {
+		return path.getFileSystem().supportedFileAttributeViews().contains("unix");
+	}
+	
+	private static UserPrincipal user(String name) throws IOException {
+		if (name.contains(":")) {
+			return null;
+		}
+		UserPrincipal user = USERS.get(name);
+		if (user == null) {
+			try {
+				user = lookup().lookupPrincipalByName(name);
+			} catch (UserPrincipalNotFoundException e) {
+				return null;
+			}
+			USERS.put(name, user);
+		}
+		return user;
+	}
+	
+	private static GroupPrincipal group(String name) throws IOException {
+		GroupPrincipal group = GROUPS.get(name);
+		if (group == null) {
+			try {
+				group = lookup().lookupPrincipalByGroupName(name);
+			} catch (UserPrincipalNotFoundException e) {
+				return null;
+			}
+			GROUPS.put(name, group);
+		}
+		return group;
+	}
+	
+	private static UserPrincipalLookupService lookup() {
+		return FileSystems.getDefault().getUserPrincipalLookupService();
+	}
+	
+	private static void setMode(Path p, Mode mode) throws IOException {
+		// the "unix" view also exposes setuid, setgid and sticky bits, which must be kept
+		int current = (Integer) Files.getAttribute(p, "unix:mode") & 07777;
+		int next = mode.apply(current, Files.isDirectory(p));
+		if (next == current) {
+			return;
+		}
+		if ((next & SPECIAL_BITS) == 0 && (current & SPECIAL_BITS) == 0) {
+			Files.getFileAttributeView(p, PosixFileAttributeView.class).setPermissions(toPermissions(next));
+		} else {
+			Files.setAttribute(p, "unix:mode", next);
+		}
+	}
+	
+	private static Set<PosixFilePermission> toPermissions(int bits) {
+		Set<PosixFilePermission> perms = EnumSet.noneOf(PosixFilePermission.class);
+		for (int i = 0; i < PERMISSIONS.length; i++) {
+			if ((bits & (1 << (8 - i))) != 0) {
+				perms.add(PERMISSIONS[i]);
+			}
+		}
+		return perms;
+	}
+	
+	private static int umask() {
+		Integer mask = umask;
+		if (mask == null) {
+			mask = 022;
+			try {
+				for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+					if (line.startsWith("Umask:")) {
+						mask = Integer.parseInt(line.substring(6).trim(), 8);
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				// kernels older than 4.7. Keep the most common default
+			}
+			umask = mask;
+		}
+		return mask;
+	}
+	
+	private static void walk(Path root, PathAction action) throws IOException {
+		if (!Files.isDirectory(root)) {
+			action.apply(root, true);
+			return;
+		}
+		try {
+			new Walk(root, action, true).invoke();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	@FunctionalInterface
+	private interface PathAction {
+		/** @param top if this is the path given by the user (i.e. not found while walking) */
+		void apply(Path path, boolean top) throws IOException;
+	}
+	
+	/**
+	 * Handles a directory and, in parallel, its sub directories. Each directory
+	 * is changed after its content, so restrictive modes (e.g. <code>000</code>)
+	 * never prevent the walk from listing it.
+	 */
+	private static final class Walk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Path dir;
+		private final PathAction action;
+		private final boolean top;
+		
+		Walk(Path dir, PathAction action, boolean top) {
+			this.dir = dir;
+			this.action = action;
+			this.top = top;
+		}
+		
+		@Override
+		protected void compute() {
+			try {
+				List<Walk> subdirs = new ArrayList<>();
+				try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+					for (Path entry : entries) {
+						if (Files.isDirectory(entry, NOFOLLOW_LINKS)) {
+							subdirs.add(new Walk(entry, action, false));
+						} else {
+							action.apply(entry, false);
+						}
+					}
+				}
+				invokeAll(subdirs);
+				action.apply(dir, top);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+	
+	/** A parsed <code>chmod</code> mode */
+	private static abstract class Mode {
+		
+		/** @return the new mode (permissions and special bits) or <code>null</code> if not supported */
+		static Mode parse(String mode) {
+			Matcher octal = OCTAL.matcher(mode);
+			if (octal.matches()) {
+				if (octal.group(1) != null) {
+					int bits = Integer.parseInt(octal.group(1), 8);
+					// as chmod, directories keep their setuid and setgid bits 
+					return new Mode() {
+						@Override
+						int apply(int current, boolean directory) {
+							return directory ? (current & SETUID_SETGID) | bits : bits;
+						}
+					};
+				}
+				int bits = Integer.parseInt(octal.group(2), 8);
+				return new Mode() {
+					@Override
+					int apply(int current, boolean directory) {
+						return bits;
+					}
+				};
+			}
+			
+			List<Mode> clauses = new ArrayList<>();
+			for (String clause : mode.split(",", -1)) {
+				Matcher symbolic = SYMBOLIC.matcher(clause);
+				if (!symbolic.matches()) {
+					return null;
+				}
+				clauses.add(symbolic(symbolic.group(1), symbolic.group(2)));
+			}
+			return new Mode() {
+				@Override
+				int apply(int current, boolean directory) {
+					for (Mode clause : clauses) {
+						current = clause.apply(current, directory);
+					}
+					return current;
+				}
+			};
+		}
+
+		private static Mode symbolic(String who, String operations) {
+			int whoBits = who.isEmpty() || who.contains("a") ? 0777 : 0;
+			whoBits |= who.contains("u") ? 0700 : 0;
+			whoBits |= who.contains("g") ? 0070 : 0;
+			whoBits |= who.contains("o") ? 0007 : 0;
+			// as chmod, the umask is respected when no one is given (e.g. +x)
+			final int mask = who.isEmpty() ? whoBits & ~umask() : whoBits;
+			final int clear = whoBits;
+			
+			List<String[]> ops = new ArrayList<>();
+			Matcher op = OPERATION.matcher(operations);
+			while (op.find()) {
+				ops.add(new String[] { op.group(1), op.group(2) });
+			}
+			return new Mode() {
+				@Override
+				int apply(int current, boolean directory) {
+					for (String[] o : ops) {
+						int bits = 0;
+						bits |= o[1].contains("r") ? 0444 : 0;
+						bits |= o[1].contains("w") ? 0222 : 0;
+						bits |= o[1].contains("x") ? 0111 : 0;
+						if (o[1].contains("X") && (directory || (current & 0111) != 0)) {
+							bits |= 0111;
+						}
+						bits &= mask;
+						switch (o[0]) {
+						case "+":
+							current |= bits;
+							break;
+						case "-":
+							current &= ~bits;
+							break;
+						default:
+							current = (current & ~clear) | bits;
+						}
+					}
+					return current;
+				}
+			};
+		}
+		
+		abstract int apply(int current, boolean directory);
+	}
+}
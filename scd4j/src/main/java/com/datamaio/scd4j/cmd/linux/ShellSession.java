@@ -0,0 +1,211 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd.linux;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import com.datamaio.scd4j.cmd.Interaction;
+import com.datamaio.scd4j.cmd.OutputBuffer;
+
+/**
+ * A long-lived bash process used to run many commands without paying one
+ * fork/exec of the JVM per command.
+ * <p>
+ * Each command is written to the shell as a single framed line:
+ * 
+ * <pre>
+ * ( 'cmd' 'arg1' 'arg2' ) &lt;/dev/null 2&gt;err ; printf '%s %d\n' SENTINEL $?
+ * </pre>
+ * 
+ * Arguments are single quoted, so the command receives exactly the same
+ * arguments it would receive from {@link ProcessBuilder}. It runs in a
+ * subshell (i.e. <code>cd</code>, <code>exit</code> or <code>export</code>
+ * cannot change the session) and never reads the session input. Its output
+ * is read up to the sentinel, which also carries the exit code.
+ * <p>
+ * As in {@link com.datamaio.scd4j.cmd.Command#stream(String, java.util.function.Consumer)},
+ * only the tail of the output is kept (see {@link OutputBuffer}).
+ * <p>
+ * Only commands without interaction can be multiplexed (see
+ * {@link #canRun(Interaction)}). This class is not thread safe. Use one
+ * session per thread.
+ * 
+ * @author Fernando Rubbo
+ */
+class ShellSession implements AutoCloseable {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	
+	private final String sentinel = "__SCD4J_" + UUID.randomUUID().toString().replace("-", "") + "__";
+	private final Process process;
+	private final Writer in;
+	private final BufferedReader out;
+	private final Path err;
+	private long executed;
+	
+	ShellSession() {
+		try {
+			this.err = Files.createTempFile("session", ".err");
+			ProcessBuilder pb = new ProcessBuilder("bash", "--noprofile", "--norc");
+			pb.redirectError(new File("/dev/null"));
+			this.process = pb.start();
+			this.in = new OutputStreamWriter(process.getOutputStream(), Charset.defaultCharset());
+			this.out = new BufferedReader(new InputStreamReader(process.getInputStream(), Charset.defaultCharset()));
+		} catch (IOException e) {
+			throw new RuntimeException("Error starting shell session", e);
+		}
+	}
+	
+	/**
+	 * @return <code>true</code> if the command can be multiplexed through a
+	 *         session, i.e. nothing must be written into its input
+	 */
+	static boolean canRun(Interaction interaction) {
+		if(interaction == null) {
+			return true;
+		}
+		try {
+			return interaction.getClass().getMethod("interact", OutputStream.class).getDeclaringClass() == Interaction.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Runs the command in this session.
+	 * 
+	 * @param interaction <code>null</code> means that the output and the error are merged and 
+	 * 			only printed at the end (as {@link com.datamaio.scd4j.cmd.Command#runWithNoInteraction(String)} does)
+	 * @return the output of the command
+	 */
+	String run(List<String> cmd, Interaction interaction) {
+		if(!isAlive()) {
+			throw new IllegalStateException("Shell session is not alive");
+		}
+		final boolean merge = interaction == null;
+		final boolean printCommand = merge || interaction.shouldPrintCommand();
+		final boolean printOutput = merge || interaction.shouldPrintOutput();
+		if(printCommand) {
+			LOGGER.info("\tExecuting cmd: " + String.join(" ", cmd) + " (SESSION)");
+		}
+		
+		try {
+			in.write(frame(cmd, merge));
+			in.flush();
+			
+			OutputBuffer output = new OutputBuffer();
+			String line;
+			while ((line = out.readLine()) != null) {
+				int idx = line.indexOf(sentinel);
+				if(idx >= 0) {
+					// the last line of the output may not end with a line separator
+					append(output, line.substring(0, idx), printOutput, idx > 0);
+					int exit = Integer.parseInt(line.substring(idx + sentinel.length()).trim());
+					executed++;
+					if(output.isTruncated() && printOutput) {
+						LOGGER.info("\t\t(" + output.getLines() + " lines printed. Only the last " + OutputBuffer.DEFAULT_CAPACITY + " characters were kept)");
+					}
+					return check(cmd, interaction, exit, output.tail());
+				}
+				append(output, line, printOutput, true);
+			}
+			throw new IllegalStateException("Shell session has died executing: " + String.join(" ", cmd));
+		} catch (IOException e) {
+			throw new RuntimeException("Error executing command: " + String.join(" ", cmd) + ".", e);
+		}
+	}
+	
+	long getExecuted() {
+		return executed;
+	}
+	
+	boolean isAlive() {
+		return process.isAlive();
+	}
+	
+	@Override
+	public void close() {
+		try {
+			in.close();
+			process.waitFor();
+		} catch (IOException e) {
+			process.destroy();
+		} catch (InterruptedException e) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+		} finally {
+			try {
+				Files.deleteIfExists(err);
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+	
+	private String frame(List<String> cmd, boolean merge) {
+		StringBuilder buff = new StringBuilder("( ");
+		for (String arg : cmd) {
+			buff.append(quote(arg)).append(' ');
+		}
+		buff.append(") </dev/null ")
+			.append(merge ? "2>&1" : "2>" + quote(err.toString()))
+			.append(" ; printf '%s %d\\n' ").append(sentinel).append(" $?\n");
+		return buff.toString();
+	}
+	
+	private String check(List<String> cmd, Interaction interaction, int exit, String output) throws IOException {
+		boolean successful = interaction != null ? interaction.isTheExecutionSuccessful(exit) : exit == 0;
+		if(!successful) {
+			String error = interaction != null ? new String(Files.readAllBytes(err), Charset.defaultCharset()) : output;
+			throw new RuntimeException("Error executing command: " + String.join(" ", cmd) + ".", 
+					new RuntimeException("The process has ended with status: " + exit + " | Output: " + error));
+		}
+		return output;
+	}
+	
+	private static void append(OutputBuffer output, String line, boolean print, boolean newLine) {
+		if(!newLine) {
+			return;
+		}
+		if(print) {
+			LOGGER.info("\t\t" + line);
+		}
+		output.appendLine(line);
+	}
+	
+	static String quote(String arg) {
+		return "'" + arg.replace("'", "'\\''") + "'";
+	}
+}
@@ -23,11 +23,20 @@
  */
 package com.datamaio.scd4j.cmd.linux.debian;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import com.datamaio.scd4j.cmd.linux.LinuxCommand;
+import com.datamaio.scd4j.cmd.linux.PackageInventory;
 
 /**
  * 
@@ -36,6 +45,7 @@ import com.datamaio.scd4j.cmd.linux.LinuxCommand;
 public abstract class DebBaseCommand  extends LinuxCommand {
 	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
 	public static final String INST_EXTENSION = "deb";
+	private static final Path DPKG_STATUS = Paths.get("/var/lib/dpkg/status");
 	
 	@Override
 	public String getPackExtension(){
@@ -59,44 +69,90 @@ public abstract class DebBaseCommand  extends LinuxCommand {
 	 */	
 	@Override
 	public void installRemotePack(String pack, String version) {
-		LOGGER.info("\tInstalling package " + pack + (version!=null? " ("+version+")" : ""));
+		if(version!=null && version.equals(getInstalledVersion(pack))) {
+			LOGGER.info("\tPackage " + pack + " (" + version + ") is already installed");
+			return;
+		}
 		String fullpack = pack + (version!=null? "=" + version : "");
+		if(queueRemotePack(fullpack)) {
+			return;
+		}
+		LOGGER.info("\tInstalling package " + pack + (version!=null? " ("+version+")" : ""));
 		List<String> cmd = Arrays.asList(new String[] { "apt-get", "-y", "install", fullpack });
-		run(cmd);
+		changePackages(() -> run(cmd));
 	}	
 	
 	@Override	
 	public void installLocalPack(String path) {
+		if(queueLocalPack(path)) {
+			return;
+		}
 		LOGGER.info("\tInstalling DEB File from " + path + " ... ");
-		run("dpkg -i " + path);
+		changePackages(() -> run("dpkg -i " + path));
+	}
+	
+	/** A single apt-get transaction. If it fails, packages are installed one by one to find the failures */
+	@Override
+	protected void installRemotePacks(List<String> packs) {
+		LOGGER.info("\tInstalling packages " + packs);
+		List<String> cmd = new ArrayList<>(Arrays.asList("apt-get", "-y", "install"));
+		cmd.addAll(packs);
+		changePackages(() -> {
+			try {
+				run(cmd);
+			} catch (RuntimeException e) {
+				LOGGER.warning("\tBatch installation failed. Installing one by one: " + e.getMessage());
+				super.installRemotePacks(packs);
+			}
+		});
+	}
+	
+	/** A single dpkg call. If it fails, packages are installed one by one to find the failures */
+	@Override
+	protected void installLocalPacks(List<String> paths) {
+		LOGGER.info("\tInstalling DEB Files " + paths);
+		List<String> cmd = new ArrayList<>(Arrays.asList("dpkg", "-i"));
+		cmd.addAll(paths);
+		changePackages(() -> {
+			try {
+				run(cmd);
+			} catch (RuntimeException e) {
+				LOGGER.warning("\tBatch installation failed. Installing one by one: " + e.getMessage());
+				super.installLocalPacks(paths);
+			}
+		});
 	}
 	
+	/** Reads the dpkg database directly, no process is needed */
 	@Override
-	public boolean isInstalled(String pack) {
-		try {
-			run("dpkg-query -l " + pack, false);
-			return true;
-		} catch (Exception e) {
-			return false;
+	protected Map<String, String> loadInstalledPacks() {
+		try (BufferedReader reader = Files.newBufferedReader(DPKG_STATUS, StandardCharsets.UTF_8)) {
+			return PackageInventory.parseDpkgStatus(reader);
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading " + DPKG_STATUS, e);
 		}
 	}
 	
 	@Override
 	public void uninstallRemotePack(String pack) {
 		LOGGER.info("\tRemoving package " + pack + " and dependencies");
-		run("apt-get -y --auto-remove purge " + pack);
+		changePackages(() -> run("apt-get -y --auto-remove purge " + pack));
 	}
 	
 	@Override
 	public void uninstallLocalPack(String pack) {
 		LOGGER.info("\tUninstalling DEB File from " + pack + " ... ");
-		run("dpkg --purge " + pack);
-		run("apt-get -y autoremove");
+		changePackages(() -> {
+			run("dpkg --purge " + pack);
+			run("apt-get -y autoremove");
+		});
 	}
 	
 	@Override
 	public void addRepository(String repository) {
-		run("add-apt-repository -y " + repository);
-		run("apt-get update", false);
+		changePackages(() -> {
+			run("add-apt-repository -y " + repository);
+			run("apt-get update", false);
+		});
 	}
 }
@@ -23,11 +23,14 @@
  */
 package com.datamaio.scd4j.cmd.linux.redhat;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import com.datamaio.scd4j.cmd.linux.LinuxCommand;
+import com.datamaio.scd4j.cmd.linux.PackageInventory;
 
 /**
  * 
@@ -61,33 +64,87 @@ public abstract class RHBaseCommand extends LinuxCommand {
 	 */
 	@Override
 	public void installRemotePack(String pack, String version) {
-		LOGGER.info("\tInstalling package " + pack + (version!=null? " ("+version+")" : ""));
+		String installed = version!=null ? getInstalledVersion(pack) : null;
+		if(installed!=null && (installed.equals(version) || installed.startsWith(version + "-"))) {
+			LOGGER.info("\tPackage " + pack + " (" + version + ") is already installed");
+			return;
+		}
 		String fullpack = pack + (version!=null? "-" + version : "");
+		if(queueRemotePack(fullpack)) {
+			return;
+		}
+		LOGGER.info("\tInstalling package " + pack + (version!=null? " ("+version+")" : ""));
 		List<String> cmd = Arrays.asList(new String[] { "yum", "-y", "install", fullpack });
-		run(cmd);
+		changePackages(() -> run(cmd));
 	}	
 	
 	@Override
 	public void installLocalPack(String path) {
+		if(queueLocalPack(path)) {
+			return;
+		}
 		LOGGER.info("\tInstalling RPM from " + path + " ... ");
-		run("rpm -i " + path);
+		changePackages(() -> run("rpm -i " + path));
 	}
 	
+	/** A single yum transaction. If it fails, packages are installed one by one to find the failures */
+	@Override
+	protected void installRemotePacks(List<String> packs) {
+		LOGGER.info("\tInstalling packages " + packs);
+		List<String> cmd = new ArrayList<>(Arrays.asList("yum", "-y", "install"));
+		cmd.addAll(packs);
+		changePackages(() -> {
+			try {
+				run(cmd);
+			} catch (RuntimeException e) {
+				LOGGER.warning("\tBatch installation failed. Installing one by one: " + e.getMessage());
+				super.installRemotePacks(packs);
+			}
+		});
+	}
+	
+	/** A single rpm transaction. If it fails, packages are installed one by one to find the failures */
+	@Override
+	protected void installLocalPacks(List<String> paths) {
+		LOGGER.info("\tInstalling RPMs " + paths);
+		List<String> cmd = new ArrayList<>(Arrays.asList("rpm", "-i"));
+		cmd.addAll(paths);
+		changePackages(() -> {
+			try {
+				run(cmd);
+			} catch (RuntimeException e) {
+				LOGGER.warning("\tBatch installation failed. Installing one by one: " + e.getMessage());
+				super.installLocalPacks(paths);
+			}
+		});
+	}
+	
+	/**
+	 * Substring matching, as this check has always been an
+	 * <code>rpm -qa | grep pack</code>. E.g. <code>jdk</code> matches
+	 * <code>java-1.8.0-openjdk</code>
+	 */
 	@Override
 	public boolean isInstalled(String pack) {
-		return run("rpm -qa | grep " + pack).length() > 0;
+		return getInventory().isInstalledContaining(pack);
+	}
+	
+	/** A single rpm query lists every installed package and its version */
+	@Override
+	protected Map<String, String> loadInstalledPacks() {
+		return PackageInventory.parseRpmList(query(Arrays.asList("rpm", "-qa", "--qf", "%{NAME} %{VERSION}-%{RELEASE}\\n")));
 	}
 	
 	@Override
 	public void uninstallRemotePack(String pack) {
 		LOGGER.info("\tRemoving package " + pack);
-		run("yum -y erase " +pack );
+		changePackages(() -> run("yum -y erase " +pack ));
 	}
 	
 	@Override
 	public void uninstallLocalPack(String pack) {
 		LOGGER.info("\tUninstalling RPM pack " + pack + " ... ");
-		run("rpm -e " + pack);
+		changePackages(() -> run("rpm -e " + pack));
 	}
 	
 	@Override
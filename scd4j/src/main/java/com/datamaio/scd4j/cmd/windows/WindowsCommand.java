@@ -31,7 +31,7 @@ import java.util.logging.Logger;
 import com.datamaio.scd4j.cmd.Command;
 import com.datamaio.scd4j.util.io.FileUtils;
 import com.datamaio.scd4j.util.io.PathUtils;
-import com.datamaio.scd4j.util.io.ZipUtils;
+import com.datamaio.scd4j.util.io.ZipExtractor;
 
 /**
  * 
@@ -221,8 +221,11 @@ public class WindowsCommand extends Command {
 
 	@Override
 	public void unzip(String from, String toDir) {
+		if (record("unzip " + from + " " + toDir)) {
+			return;
+		}
 		LOGGER.info("Unziping " + from + " to " + toDir + " ... ");
-		ZipUtils.unzip(Paths.get(from), Paths.get(toDir));
+		new ZipExtractor().extract(Paths.get(from), Paths.get(toDir));
 	}
 	
 	protected void replaceLineSeparator(String file) {
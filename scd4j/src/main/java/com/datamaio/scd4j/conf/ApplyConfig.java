@@ -0,0 +1,63 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.conf;
+
+/**
+ * @author Fernando Rubbo
+ */
+public class ApplyConfig {
+	/** If <code>true</code> files without hooks are copied/merged in parallel */
+	private boolean parallel = false;
+	/** Number of threads used by the parallel apply. Zero means the number of available processors */
+	private int threads = 0;
+
+	public ApplyConfig() { }
+	
+	public ApplyConfig(boolean parallel, int threads) {
+		super();
+		this.parallel = parallel;
+		this.threads = threads;
+	}
+
+	protected boolean isParallel() {
+		return parallel;
+	}
+
+	protected void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	protected int getThreads() {
+		return threads;
+	}
+
+	protected void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	@Override
+	public String toString() {
+		return "{parallel:" + parallel + ", threads:" + threads + "}";
+	}
+}
@@ -49,7 +49,7 @@ import com.datamaio.scd4j.util.Encryptor;
 public class Config extends Properties {
 	
 	private static final long serialVersionUID = 1L;
-	private static final EncodingHelper encodingHelper = new EncodingHelper();
+	private static final EncodingHelper encodingHelper = EncodingHelper.getDefault();
 	private static Pattern variable = Pattern.compile("\\$\\{([^\\$\\{])*\\}");
 	
 	@Override
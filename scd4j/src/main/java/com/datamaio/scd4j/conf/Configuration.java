@@ -24,6 +24,7 @@
 package com.datamaio.scd4j.conf;
 
 import java.io.File;
+import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
@@ -33,8 +34,11 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import com.datamaio.scd4j.hooks.HookRuntime;
 import com.datamaio.scd4j.tmpl.TemplateEngine;
 import com.datamaio.scd4j.tmpl.TemplateEngineConfig;
+import com.datamaio.scd4j.util.EncodingHelper;
+import com.datamaio.scd4j.util.ScriptCache;
 import com.datamaio.scd4j.util.io.PathUtils;
 
 /**
@@ -48,6 +52,10 @@ public class Configuration {
 	public static final String CONFIG_FOLDER = "config";
 	public static final String LOG_FOLDER = "log";
 	public static final String BACKUP_FOLDER = "backup";
+	public static final String CACHE_FOLDER = "cache";
+	public static final String MANIFEST_FOLDER = "manifest";
+	public static final String PLAN_FOLDER = "plan";
+	public static final String PLAN_ROOT_FOLDER = "root";
 	
 	public static final String HOOK_SUFFIX = ".hook";
 	public static final String DELETE_SUFFIX = ".del";
@@ -58,6 +66,9 @@ public class Configuration {
 	/** Dependencies. Where the key is the gradle dependency and the value is the file path */
 	private final Map<String, Path> dependencies;
 	private final Path projectDir;
+	private ScriptCache scriptCache;
+	private TemplateEngine templateEngine;
+	private HookRuntime hookRuntime;
 	
 	public static final Configuration build(Path module){
 		Install install = new Install(module);
@@ -133,10 +144,102 @@ public class Configuration {
 		LOGGER.info("========================================================================================================");
 	}
 	
-	public TemplateEngine getTemplateEngine() {
-		Template template = settings.getTemplate();
-		final TemplateEngineConfig engineConfig = new TemplateEngineConfig(template.getEngine());
-		return TemplateEngine.get(engineConfig);
+	/** The engine is stateless. Therefore, a single instance is shared by all threads of a run */
+	public synchronized TemplateEngine getTemplateEngine() {
+		if(templateEngine==null) {
+			Template template = settings.getTemplate();
+			final TemplateEngineConfig engineConfig = new TemplateEngineConfig(template.getEngine());
+			engineConfig.setScriptCache(getScriptCache());
+			templateEngine = TemplateEngine.get(engineConfig);
+		}
+		return templateEngine;
+	}
+	
+	/**
+	 * Charset of the given module file, as configured in the eclipse settings
+	 * of the project (or the platform default). Templates are read and merged
+	 * with it.
+	 */
+	public Charset getCharset(Path file) {
+		return EncodingHelper.getDefault().getCharset(file.toString());
+	}
+	
+	public boolean isHookCompiled() {
+		return settings.getHook().isCompiled();
+	}
+	
+	public boolean isShellSession() {
+		return settings.getHook().isSession();
+	}
+	
+	public boolean isParallelApply() {
+		return settings.getApply().isParallel();
+	}
+	
+	/**
+	 * @return the number of threads used to apply files in parallel
+	 */
+	public int getApplyThreads() {
+		int threads = settings.getApply().getThreads();
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+	
+	public boolean isIncrementalApply() {
+		return settings.getIncremental().isEnabled();
+	}
+	
+	public boolean isPostHookOnUnchanged() {
+		return settings.getIncremental().isPostOnUnchanged();
+	}
+	
+	/**
+	 * @return <code>true</code> if this run only renders a plan into a staging directory
+	 */
+	public boolean isPlan() {
+		PlanConfig plan = settings.getPlan();
+		return plan!=null && plan.isEnabled();
+	}
+	
+	/**
+	 * @return the directory where the plan of this module and configuration is rendered
+	 */
+	public Path getPlanDir() {
+		String dir = settings.getPlan()!=null ? settings.getPlan().getDir() : null;
+		Path base = dir!=null ? Paths.get(dir).toAbsolutePath() : PathUtils.get(workspace(), PLAN_FOLDER);
+		return PathUtils.get(base, buildModuleName(), buildConfigName()).normalize();
+	}
+	
+	/**
+	 * @return the root directory where targets are written. It is the
+	 *         file system root, unless this run is a plan
+	 */
+	public Path getTargetRoot() {
+		return isPlan() ? PathUtils.get(getPlanDir(), PLAN_ROOT_FOLDER) : Paths.get("/");
+	}
+	
+	/**
+	 * @return the cache of compiled hooks and groovy templates or <code>null</code> if it is disabled
+	 */
+	public synchronized ScriptCache getScriptCache() {
+		CacheConfig cache = settings.getCache();
+		if(scriptCache==null && cache!=null && cache.isEnabled()) {
+			scriptCache = new ScriptCache(getCacheDir(), cache.getMaxSize() * 1024 * 1024);
+		}
+		return scriptCache;
+	}
+	
+	/**
+	 * @return the groovy runtime shared by all hooks of this run
+	 */
+	public synchronized HookRuntime getHookRuntime() {
+		if(hookRuntime==null) {
+			hookRuntime = new HookRuntime(getScriptCache());
+		}
+		return hookRuntime;
+	}
+	
+	public Path getCacheDir() {
+		return PathUtils.get(workspace(), CACHE_FOLDER).normalize();
 	}
 	
 	public Path getLogFile() {
@@ -150,6 +253,13 @@ public class Configuration {
 		return PathUtils.get(workspace(), BACKUP_FOLDER, currentExecutionPath).normalize();
 	}
 
+	/**
+	 * @return the file recording what was applied by the last run of this module with this configuration
+	 */
+	public Path getManifestFile() {
+		return PathUtils.get(workspace(), MANIFEST_FOLDER, buildModuleName(), buildConfigName() + ".manifest").normalize();
+	}
+
 	private Path workspace() {
 		if (this.projectDir == null) {
             throw new IllegalStateException("Project base path ('projectDir') cannot be null!");
@@ -161,19 +271,25 @@ public class Configuration {
 	private synchronized String buildCurrentExecutionPath() {
 		if(currentExecutionPath==null) {		
 			SimpleDateFormat df = new SimpleDateFormat("yyyyMMddHHmmss");
-			
-			Path workspace = workspace();
-			String fileName = this.getConfig().getFileName().toString();
-			if(fileName.endsWith(".conf")) {
-				fileName = fileName.replace(".conf", "");
-			}
-			if(fileName.endsWith(".properties")) {
-				fileName = fileName.replace(".properties", "");
-			}
-			final String module = workspace.relativize(this.getModule().toAbsolutePath()).toString().replace(Configuration.MODULES_FOLDER + File.separator, "");
-			currentExecutionPath = Paths.get(module, fileName + "_" + df.format(new Date())).toString();
+			currentExecutionPath = Paths.get(buildModuleName(), buildConfigName() + "_" + df.format(new Date())).toString();
 		}
 		
 		return currentExecutionPath;
 	}
+
+	private String buildConfigName() {
+		String fileName = this.getConfig().getFileName().toString();
+		if(fileName.endsWith(".conf")) {
+			fileName = fileName.replace(".conf", "");
+		}
+		if(fileName.endsWith(".properties")) {
+			fileName = fileName.replace(".properties", "");
+		}
+		return fileName;
+	}
+
+	private String buildModuleName() {
+		Path workspace = workspace();
+		return workspace.relativize(this.getModule().toAbsolutePath()).toString().replace(Configuration.MODULES_FOLDER + File.separator, "");
+	}
 }
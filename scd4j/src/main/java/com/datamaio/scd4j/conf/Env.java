@@ -27,7 +27,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import com.datamaio.scd4j.cmd.Command;
+import com.datamaio.scd4j.cmd.HostFacts;
 
 /**
  * 
@@ -125,7 +125,7 @@ public class Env {
 	}
 
 	String whatIsMyIp() {
-		return Command.get().whatIsMyIp();
+		return HostFacts.get().getIp();
 	}
 
 	boolean thereExistIntersectionsBetweenIpLists() {
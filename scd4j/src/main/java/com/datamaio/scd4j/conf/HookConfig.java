@@ -0,0 +1,67 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.conf;
+
+/**
+ * @author Fernando Rubbo
+ */
+public class HookConfig {
+	/** If <code>true</code> each hook script is compiled once and reused for pre, post and finish */
+	private boolean compiled = false;
+	/** If <code>true</code> commands executed by hooks go through a single long-lived shell (Linux only) */
+	private boolean session = false;
+
+	public HookConfig() { }
+	
+	public HookConfig(boolean compiled) {
+		this(compiled, false);
+	}
+	
+	public HookConfig(boolean compiled, boolean session) {
+		super();
+		this.compiled = compiled;
+		this.session = session;
+	}
+
+	protected boolean isCompiled() {
+		return compiled;
+	}
+
+	protected void setCompiled(boolean compiled) {
+		this.compiled = compiled;
+	}
+
+	protected boolean isSession() {
+		return session;
+	}
+
+	protected void setSession(boolean session) {
+		this.session = session;
+	}
+
+	@Override
+	public String toString() {
+		return "{compiled:" + compiled + ", session:" + session + "}";
+	}
+}
@@ -28,26 +28,77 @@ package com.datamaio.scd4j.conf;
  */
 public class Settings {
 	private Template template;
+	private HookConfig hook;
+	private CacheConfig cache;
+	private ApplyConfig apply;
+	private IncrementalConfig incremental;
+	private PlanConfig plan;
 	
 	public Settings() {
 		this(new Template());
 	}
 	
+	/** The other configurations start with their defaults. Change them through the setters */
 	public Settings(Template template) {
 		super();
 		this.template = template;
+		this.hook = new HookConfig();
+		this.cache = new CacheConfig();
+		this.apply = new ApplyConfig();
+		this.incremental = new IncrementalConfig();
+		this.plan = new PlanConfig();
 	}
 	
 	protected Template getTemplate() {
 		return template;
 	}
 
-	protected void setTemplate(Template template) {
+	public void setTemplate(Template template) {
 		this.template = template;
 	}
+	
+	protected HookConfig getHook() {
+		return hook;
+	}
+
+	public void setHook(HookConfig hook) {
+		this.hook = hook;
+	}
+	
+	protected CacheConfig getCache() {
+		return cache;
+	}
+
+	public void setCache(CacheConfig cache) {
+		this.cache = cache;
+	}
+	
+	protected ApplyConfig getApply() {
+		return apply;
+	}
+
+	public void setApply(ApplyConfig apply) {
+		this.apply = apply;
+	}
+	
+	protected IncrementalConfig getIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(IncrementalConfig incremental) {
+		this.incremental = incremental;
+	}
+
+	protected PlanConfig getPlan() {
+		return plan;
+	}
+
+	public void setPlan(PlanConfig plan) {
+		this.plan = plan;
+	}
 
 	@Override
 	public String toString() {
-		return "Settings [template=" + template + "]";
+		return "Settings [template=" + template + ", hook=" + hook + ", cache=" + cache + ", apply=" + apply + ", incremental=" + incremental + ", plan=" + plan + "]";
 	}
 }
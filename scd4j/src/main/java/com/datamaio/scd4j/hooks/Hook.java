@@ -30,13 +30,20 @@ import groovy.lang.Script;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import com.datamaio.scd4j.cmd.Command;
+import com.datamaio.scd4j.cmd.HostFacts;
 import com.datamaio.scd4j.cmd.Interaction;
+import com.datamaio.scd4j.cmd.ReadinessProbe;
 import com.datamaio.scd4j.cmd.linux.LinuxCommand;
 import com.datamaio.scd4j.conf.Configuration;
 import com.datamaio.scd4j.conf.Env;
@@ -627,8 +634,9 @@ public abstract class Hook extends Script {
 	}
 
 	/**
-	 * This method does no interaction at all. In other words, it will only show
-	 * the output after the process has finish.
+	 * This method does no interaction at all. The output (stdout and stderr
+	 * merged) is printed as soon as it is produced, but only its tail is
+	 * returned. Thus, memory use is bounded no matter how much the command prints.
 	 * <p>
 	 * Important Notes:
 	 * <ol>
@@ -645,6 +653,90 @@ public abstract class Hook extends Script {
 	public String runWithNoInteraction(String cmd) {
 		return command.runWithNoInteraction(cmd);
 	}
+	
+	/**
+	 * Executes a command (with no interaction) calling back for each line of
+	 * its output, as soon as it is produced. For example:
+	 * 
+	 * <pre>
+	 * stream("apt-get -y upgrade") { line -> if(line.contains("WARNING")) warnings++ }
+	 * </pre>
+	 * 
+	 * @param cmd
+	 *            the command line
+	 * @param onLine
+	 *            called for each line of the output (stdout and stderr merged)
+	 * @return the tail of the output
+	 */
+	public String stream(String cmd, Consumer<String> onLine) {
+		return command.stream(cmd, onLine);
+	}
+	
+	/**
+	 * Executes a command (with no interaction) and returns its output as a lazy
+	 * stream of lines. The stream must be closed. For example:
+	 * 
+	 * <pre>
+	 * def packs = lines("rpm -qa")
+	 * try {
+	 * 	javas = packs.filter { it.startsWith("java") }.count()
+	 * } finally {
+	 * 	packs.close()
+	 * }
+	 * </pre>
+	 * 
+	 * @param cmd
+	 *            the command line
+	 */
+	public Stream<String> lines(String cmd) {
+		return command.lines(cmd);
+	}
+
+	/**
+	 * Runs the command in background and returns immediately. For example:
+	 * 
+	 * <pre>
+	 * def download = runAsync("wget -q http://myserver/big.tar.gz")
+	 * // ... do other things ...
+	 * download.join()
+	 * </pre>
+	 * 
+	 * @param cmd
+	 *            the command line
+	 * @return a future completed with the command output
+	 */
+	public CompletableFuture<String> runAsync(String cmd) {
+		return command.runAsync(cmd);
+	}
+	
+	/**
+	 * Executes independent steps at the same time and waits for all of them.
+	 * For example:
+	 * 
+	 * <pre>
+	 * parallel(
+	 * 	{ installRemotePack("postgresql") },
+	 * 	{ installRemotePack("nginx") },
+	 * 	{ run("wget -q http://myserver/big.tar.gz") }
+	 * )
+	 * </pre>
+	 * 
+	 * Steps run in a bounded pool of threads (see
+	 * {@link Command#ASYNC_THREADS}). They must not depend on each other nor
+	 * set temporary properties. Package installs and removals never overlap,
+	 * as the package manager locks its database: the packages above are
+	 * installed one after the other, while the download goes on.
+	 * 
+	 * @throws RuntimeException
+	 *             the failure of the first failed step, after all steps finished
+	 */
+	public void parallel(Closure<?>... steps) {
+		List<CompletableFuture<Object>> futures = new ArrayList<>(steps.length);
+		for (Closure<?> step : steps) {
+			futures.add(command.async(() -> step.call()));
+		}
+		Command.joinAll(futures);
+	}
 
     // --- env methods ---
 
@@ -753,35 +845,49 @@ public abstract class Hook extends Script {
 	}
 
 	/**
-	 * Try to discover what is the machine IP.
+	 * Try to discover what is the machine IP. It is looked up only once per
+	 * run (see {@link #refreshHostFacts()}).
 	 * <p>
 	 * Note that this method has unexpected behavior if you have more than one network card/ip 
 	 * 
 	 * @return the ip address
 	 */
-	private String ip = null;
     public String whatIsMyIp()
     {
-    	if(ip==null) {
-    		ip = command.whatIsMyIp();
-    	}
-    	return ip;
+    	return command.whatIsMyIp();
     }
         
 	/**
-	 * Try to discover what is the machine host name.
+	 * Try to discover what is the machine host name. It is looked up only once
+	 * per run (see {@link #refreshHostFacts()}).
 	 * <p>
 	 * Note that this method has unexpected behavior if you have more than one network card/ip
 	 *  
 	 * @return the host name
 	 */
-    private String host = null;
     public String whatIsMyHostName()
     {
-    	if(host==null) {
-    		host = command.whatIsMyHostName();
-    	}
-    	return host;
+    	return command.whatIsMyHostName();
+    }
+    
+	/**
+	 * Facts about this host (distribution, network, user, CPUs), taken once
+	 * per run. For example:
+	 * 
+	 * <pre>
+	 * def workers = hostFacts.cpus * 2
+	 * </pre>
+	 */
+    public HostFacts getHostFacts() {
+    	return HostFacts.get();
+    }
+    
+	/**
+	 * Takes the host facts again. Call it after changing the network
+	 * configuration (e.g. a new IP or host name)
+	 */
+    public HostFacts refreshHostFacts() {
+    	return HostFacts.refresh();
     }
 
     /**
@@ -1085,6 +1191,30 @@ public abstract class Hook extends Script {
 		}
 	}
 
+	/**
+	 * Installs the packages requested inside the block with a single package
+	 * manager transaction (e.g. one <code>apt-get install</code>), instead of
+	 * one transaction per package. For example:
+	 * 
+	 * <pre>
+	 * batch {
+	 * 	install "nginx"
+	 * 	install "postgresql"
+	 * 	install "my_dependency.deb"
+	 * }
+	 * </pre>
+	 * 
+	 * Packages are installed when the block ends: first the ones from the OS
+	 * repositories, then the local ones. So, the block must not use the
+	 * packages it installs. If the transaction fails, packages are installed
+	 * one by one and the failed ones are reported.
+	 * 
+	 * @see Command#batch(Runnable)
+	 */
+	public void batch(Closure<?> block) {
+		command.batch(() -> block.call());
+	}
+
 	void installLocalPack(String path) {
 		command.installLocalPack(path);
 	}
@@ -1145,6 +1275,21 @@ public abstract class Hook extends Script {
 	void uninstallRemotePack(String pack) {
 		command.uninstallRemotePack(pack);
 	}
+	
+	/**
+	 * The installed packages are cached, so {@link #install(String)} and
+	 * {@link #uninstall(String)} checks are cheap. Installs and removals made
+	 * by this API update the cache, but packages changed by hand must call
+	 * this method. For example:
+	 * 
+	 * <pre>
+	 * run "apt-get -y install lxde"
+	 * invalidatePackages()
+	 * </pre>
+	 */
+	public void invalidatePackages() {
+		command.invalidatePackages();
+	}
 		
 	/**
 	 * DSL for {@link #unzip(String, String)}
@@ -1323,6 +1468,93 @@ public abstract class Hook extends Script {
 		command.serviceRestart(name);
 	}
 	
+	/**
+	 * Starts the service and waits until all the probes are ready. For example:
+	 * 
+	 * <pre>
+	 * start "tomcat", portOpen(8080), httpOk("http://localhost:8080/health")
+	 * </pre>
+	 * 
+	 * @throws RuntimeException if not ready after {@link Command#READY_TIMEOUT_MILLIS}
+	 */
+	public void start(String name, ReadinessProbe... probes) {
+		command.serviceStart(name);
+		command.awaitReady(Command.READY_TIMEOUT_MILLIS, probes);
+	}
+	
+	/**
+	 * Same as {@link #start(String, ReadinessProbe...)}, with a deadline. For example:
+	 * 
+	 * <pre>
+	 * start "nginx", 10, serviceRunning("nginx")
+	 * </pre>
+	 * 
+	 * @throws RuntimeException if not ready after the deadline
+	 */
+	public void start(String name, long timeoutSeconds, ReadinessProbe... probes) {
+		command.serviceStart(name);
+		command.awaitReady(TimeUnit.SECONDS.toMillis(timeoutSeconds), probes);
+	}
+	
+	/**
+	 * Restarts the service and waits until all the probes are ready. For example:
+	 * 
+	 * <pre>
+	 * restart "wildfly", logMatches("/opt/wildfly/standalone/log/server.log", "WFLYSRV0025|JBAS015874")
+	 * </pre>
+	 * 
+	 * @throws RuntimeException if not ready after {@link Command#READY_TIMEOUT_MILLIS}
+	 */
+	public void restart(String name, ReadinessProbe... probes) {
+		command.serviceRestart(name);
+		command.awaitReady(Command.READY_TIMEOUT_MILLIS, probes);
+	}
+	
+	/** Same as {@link #restart(String, ReadinessProbe...)}, with a deadline */
+	public void restart(String name, long timeoutSeconds, ReadinessProbe... probes) {
+		command.serviceRestart(name);
+		command.awaitReady(TimeUnit.SECONDS.toMillis(timeoutSeconds), probes);
+	}
+	
+	/**
+	 * Waits until all the probes are ready, checking them with exponential
+	 * backoff (from milliseconds up to one second between checks)
+	 * 
+	 * @param timeoutSeconds the deadline
+	 * @throws RuntimeException if the deadline is reached
+	 */
+	public void waitUntil(long timeoutSeconds, ReadinessProbe... probes) {
+		command.awaitReady(TimeUnit.SECONDS.toMillis(timeoutSeconds), probes);
+	}
+	
+	/** Probe ready when the local TCP port accepts connections */
+	public ReadinessProbe portOpen(int port) {
+		return ReadinessProbe.portOpen(port);
+	}
+	
+	/** Probe ready when the file (e.g. a pid file) exists */
+	public ReadinessProbe fileExists(String file) {
+		return ReadinessProbe.fileExists(file);
+	}
+	
+	/** Probe ready when a line written to the log from now on matches the regular expression */
+	public ReadinessProbe logMatches(String file, String regex) {
+		return ReadinessProbe.logMatches(file, regex);
+	}
+	
+	/**
+	 * Probe ready when the operating system says the service is running (on
+	 * Linux, <code>service name status</code>)
+	 */
+	public ReadinessProbe serviceRunning(String name) {
+		return ReadinessProbe.serviceRunning(name);
+	}
+	
+	/** Probe ready when the url answers HTTP 200 */
+	public ReadinessProbe httpOk(String url) {
+		return ReadinessProbe.httpOk(url);
+	}
+	
 	/**
 	 * Checks the Operational System service status<br>
 	 * This method does not throw an exception if the service does not exists.
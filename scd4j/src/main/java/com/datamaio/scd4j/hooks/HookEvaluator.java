@@ -25,15 +25,14 @@ package com.datamaio.scd4j.hooks;
 
 import static com.datamaio.scd4j.hooks.HookPreResult.CONTINUE;
 import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
+import groovy.lang.Script;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
-import org.codehaus.groovy.control.CompilerConfiguration;
-
 import com.datamaio.scd4j.conf.Configuration;
 import com.datamaio.scd4j.util.io.FileUtils;
 
@@ -45,17 +44,34 @@ import com.datamaio.scd4j.util.io.FileUtils;
  */
 public abstract class HookEvaluator {
 	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	private static final AtomicLong AVOIDED_COMPILATIONS = new AtomicLong();
 	
 	private Path groovyPath;
-	private GroovyShell shell;
+	private HookRuntime runtime;
+	private Binding binding;
 	protected String script;
+	private final boolean compiled;
+	private Hook hook;
 	
 	public HookEvaluator(Path groovyPath, Map<String, Object> binds, Configuration conf) {
+		this(groovyPath, Files.exists(groovyPath), binds, conf);
+	}
+	
+	/**
+	 * Use this constructor when the hook existence is already known (e.g. from
+	 * a {@link com.datamaio.scd4j.ModuleIndex}), so the file system is not hit again 
+	 */
+	public HookEvaluator(Path groovyPath, boolean hookExists, Map<String, Object> binds, Configuration conf) {
 		this.groovyPath = groovyPath;
+		this.compiled = conf.isHookCompiled();
 		
-		binds = buildBinding(binds, conf);
-		this.shell = createShell(binds, conf);
-		this.script = readScript(binds);
+		// files without hooks must not create any groovy object
+		if( hookExists ) {
+			binds = buildBinding(binds, conf);
+			this.runtime = conf.getHookRuntime();
+			this.binding = createBinding(binds);
+			this.script = readScript(binds);
+		}
 	}
 
 	private Map<String, Object> buildBinding(Map<String, Object> binds, Configuration conf) {
@@ -64,26 +80,32 @@ public abstract class HookEvaluator {
 	}
 
 	private String readScript(Map<String, Object> binds) {
-		if( Files.exists(groovyPath) ) {	
-			StringBuilder buff = new StringBuilder(400);
-			buff.append("import static com.datamaio.scd4j.hooks.HookPreResult.CONTINUE;")
-				.append("import static com.datamaio.scd4j.hooks.HookPreResult.ABORT;")
-				.append("import static com.datamaio.scd4j.hooks.HookPreResult.SKIP_FILE;")
-				.append("import java.nio.file.*;")
-				.append("import java.io.*;");
-			for (String b : binds.keySet()) {
-				buff.append("set" + b.substring(0,1).toUpperCase() + b.substring(1) + "(" + b + ");");
-			}
-			buff.append(FileUtils.read(groovyPath));
-			return buff.toString();
+		StringBuilder buff = new StringBuilder(400);
+		buff.append("import static com.datamaio.scd4j.hooks.HookPreResult.CONTINUE;")
+			.append("import static com.datamaio.scd4j.hooks.HookPreResult.ABORT;")
+			.append("import static com.datamaio.scd4j.hooks.HookPreResult.SKIP_FILE;")
+			.append("import java.nio.file.*;")
+			.append("import java.io.*;");
+		for (String b : binds.keySet()) {
+			buff.append("set" + b.substring(0,1).toUpperCase() + b.substring(1) + "(" + b + ");");
 		}
-		
-		return null;
+		buff.append(FileUtils.read(groovyPath));
+		return buff.toString();
 	}
 
+	/**
+	 * Number of hook compilations avoided so far (in this JVM) because a hook
+	 * compiled once was reused for its <code>post</code> and <code>finish</code>
+	 * phases. Only incremented when compiled hooks are enabled.
+	 */
+	public static long getAvoidedCompilations() {
+		return AVOIDED_COMPILATIONS.get();
+	}
+	
 	public boolean pre(){
 		if(exists()) {
-			return CONTINUE.equals((HookPreResult) evaluate("_pre"));
+			HookPreResult result = compiled ? compiledHook()._pre() : (HookPreResult) evaluate("_pre");
+			return CONTINUE.equals(result);
 		}
 		
 		return true;
@@ -91,37 +113,81 @@ public abstract class HookEvaluator {
 	
 	public void post(){
 		if(exists()) {
-			evaluate("_post");
+			if(compiled) {
+				compiledHook()._post();
+			} else {
+				evaluate("_post");
+			}
 		}
 	}
 	
 	public void finish(){
 		if(exists()) {
-			evaluate("_finish");
+			if(compiled) {
+				compiledHook()._finish();
+			} else {
+				evaluate("_finish");
+			}
 		}
 		LOGGER.info("--------------------------" );
 	}
 	
+	/**
+	 * Compiles (or loads from the cache) the very same scripts the phases of
+	 * this hook would, but does not run any of them. Used to validate modules
+	 * and to warm the script cache up for the next run.
+	 */
+	public void compile() {
+		if(exists()) {
+			if(compiled) {
+				parse(script);
+			} else {
+				for (String action : new String[]{"_pre", "_post", "_finish"}) {
+					parse(script(action));
+				}
+			}
+		}
+	}
+	
 	private boolean exists() {
 		return script!=null;
 	}
 
 	private Object evaluate(String action) {
-		String fullScript = script + "\n " 
-						  + action + "();";
+		return parse(script(action)).run();
+	}
+	
+	private String script(String action) {
+		return script + "\n " 
+				+ action + "();";
+	}
+	
+	private Script parse(String fullScript) {
 		String fileName = groovyPath.getFileName().toString();
-		return shell.evaluate(fullScript, fileName);
+		return runtime.parse(getScriptBaseClass(), fullScript, fileName, binding);
+	}
+	
+	/**
+	 * Parses the hook script only once and runs its body (which registers the
+	 * <code>pre</code> and <code>post</code> closures). The very same instance is
+	 * then used to execute every phase of this hook.
+	 */
+	private Hook compiledHook() {
+		if(hook==null) {
+			hook = (Hook) parse(script);
+			hook.run();
+		} else {
+			AVOIDED_COMPILATIONS.incrementAndGet();
+		}
+		return hook;
 	}
 	
-	private GroovyShell createShell(Map<String, Object> binds, Configuration conf) {
-		CompilerConfiguration configuration = new CompilerConfiguration();
-		configuration.setScriptBaseClass(getScriptBaseClass());
+	private Binding createBinding(Map<String, Object> binds) {
 		Binding binding = new Binding();
 		for (String b : binds.keySet()) {
 			binding.setProperty(b, binds.get(b));
 		}
-		ClassLoader loader = this.getClass().getClassLoader();
-		return new GroovyShell(loader, binding, configuration);
+		return binding;
 	}
 
 	protected abstract String getScriptBaseClass();
@@ -0,0 +1,84 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.hooks;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import com.datamaio.scd4j.util.ScriptCache;
+
+/**
+ * Groovy runtime shared by all hooks of a run.
+ * <p>
+ * There is only one {@link CompilerConfiguration} and one
+ * {@link GroovyClassLoader} per script base class (i.e. {@link FileHook} and
+ * {@link ModuleHook}). Therefore, hook classes are not spread among one class
+ * loader per file anymore. The only per file state is the {@link Binding}.
+ * 
+ * @author Fernando Rubbo
+ */
+public class HookRuntime {
+	private final ScriptCache cache;
+	private final Map<String, Compiler> compilers = new ConcurrentHashMap<>();
+	
+	/**
+	 * @param cache optional (i.e. may be <code>null</code>) cache of compiled scripts
+	 */
+	public HookRuntime(ScriptCache cache) {
+		this.cache = cache;
+	}
+	
+	/**
+	 * Compiles (or loads from the cache) the given script and returns a new
+	 * instance of it bound to the given binding
+	 */
+	public Script parse(String baseClass, String script, String fileName, Binding binding) {
+		Compiler compiler = compilers.computeIfAbsent(baseClass, Compiler::new);
+		GroovyCodeSource source = new GroovyCodeSource(script, fileName, GroovyShell.DEFAULT_CODE_BASE);
+		Class<?> clazz = cache != null 
+				? cache.load(source, compiler.config, compiler.loader) 
+				: compiler.loader.parseClass(source, false);
+		return InvokerHelper.createScript(clazz, binding);
+	}
+	
+	private static class Compiler {
+		private final CompilerConfiguration config;
+		private final GroovyClassLoader loader;
+		
+		Compiler(String baseClass) {
+			this.config = new CompilerConfiguration();
+			this.config.setScriptBaseClass(baseClass);
+			this.loader = new GroovyClassLoader(HookRuntime.class.getClassLoader(), config);
+		}
+	}
+}
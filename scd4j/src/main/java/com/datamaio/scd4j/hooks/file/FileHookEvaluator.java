@@ -55,6 +55,13 @@ public class FileHookEvaluator extends HookEvaluator {
 		this.pathHelper = new PathHelper(conf);
 	}
 
+	public FileHookEvaluator(final Path src, final Path target,
+			final Configuration conf, final boolean hasHook) {
+		super(Paths.get(src + HOOK_SUFFIX), hasHook, buildBinding(src, target), conf);
+		this.src = src;
+		this.pathHelper = new PathHelper(conf);
+	}
+
 	@Override
 	protected String getScriptBaseClass() {
 		return FileHook.class.getName();
@@ -88,7 +95,8 @@ public class FileHookEvaluator extends HookEvaluator {
 		Path p = Paths.get(relative.substring(relative.indexOf(MODULES_FOLDER
 				+ File.separator)));
 
-		String path = p.subpath(2, p.getNameCount()).toString();
+		// directories right below the module (e.g. while staging a plan) have nothing to skip
+		String path = p.getNameCount() > 2 ? p.subpath(2, p.getNameCount()).toString() : p.getFileName().toString();
 
 		return pathHelper.replaceVars(path);
 	}
@@ -26,6 +26,10 @@ package com.datamaio.scd4j.tmpl;
 import java.util.Map;
 
 /**
+ * A compiled template. Implementations are immutable: every call to
+ * <code>make</code> returns a new {@link Writable} bound to the given
+ * properties.
+ * 
  * @author Fernando Rubbo
  */
 public interface Template {
@@ -0,0 +1,180 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.tmpl;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * In memory cache of compiled {@link Template}s.
+ * <p>
+ * Entries are keyed by the SHA-256 of the engine name and the template text,
+ * not by the file name. Therefore, identical templates of different modules
+ * (or of different configurations applied in the same JVM) are compiled only
+ * once. As compiled templates are immutable, the very same instance is
+ * rendered by everyone who asks for it.<br>
+ * When the cache holds more than the configured number of templates, the
+ * least recently used ones are discarded.
+ * 
+ * @author Fernando Rubbo
+ */
+public class TemplateCache {
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	/** Heap buffers, so that the digest reads their arrays directly */
+	private static final ThreadLocal<ByteBuffer> READ_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(READ_BUFFER_SIZE));
+	
+	private final Map<String, Template> templates;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * @param maxSize maximum number of compiled templates kept in memory
+	 */
+	public TemplateCache(final int maxSize) {
+		this.templates = new LinkedHashMap<String, Template>(64, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the compiled template of the given text, calling the compiler
+	 * only if it is not cached yet. The compilation happens outside of any
+	 * lock, so two threads may compile the same text at the same time. In
+	 * this case, the first one to finish wins.
+	 */
+	public Template get(String engine, String text, Supplier<Template> compiler) {
+		return get(key(engine, text), compiler);
+	}
+	
+	/**
+	 * Returns the compiled template of the given file. The file is streamed
+	 * through a reusable buffer to compute its key, so that a cached template
+	 * costs no copy of the file in memory. The file is only decoded (with the
+	 * given charset) if it has to be compiled.
+	 */
+	public Template get(String engine, Path file, Charset charset, Function<String, Template> compiler) {
+		return get(key(engine, file, charset), () -> compiler.apply(FileUtils.read(file, charset)));
+	}
+	
+	private Template get(String key, Supplier<Template> compiler) {
+		synchronized (templates) {
+			Template template = templates.get(key);
+			if(template!=null) {
+				hits.incrementAndGet();
+				return template;
+			}
+		}
+		
+		misses.incrementAndGet();
+		Template compiled = compiler.get();
+		synchronized (templates) {
+			Template previous = templates.putIfAbsent(key, compiled);
+			return previous!=null ? previous : compiled;
+		}
+	}
+	
+	/** Number of templates served without compiling */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/** Number of templates compiled */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	public int size() {
+		synchronized (templates) {
+			return templates.size();
+		}
+	}
+	
+	public void clear() {
+		synchronized (templates) {
+			templates.clear();
+		}
+	}
+	
+	private String key(String engine, String text) {
+		MessageDigest digest = digest(engine);
+		digest.update(text.getBytes(StandardCharsets.UTF_8));
+		return hex(digest);
+	}
+	
+	private String key(String engine, Path file, Charset charset) {
+		// the same bytes are a different template in another charset
+		MessageDigest digest = digest(engine + "/" + charset.name());
+		ByteBuffer buffer = READ_BUFFER.get();
+		try (FileChannel channel = FileChannel.open(file, READ)) {
+			buffer.clear();
+			while(channel.read(buffer) != -1) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return hex(digest);
+	}
+	
+	private MessageDigest digest(String prefix) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(prefix.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			return digest;
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private String hex(MessageDigest digest) {
+		StringBuilder hex = new StringBuilder(64);
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+}
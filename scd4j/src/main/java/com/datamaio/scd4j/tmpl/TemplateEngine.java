@@ -23,6 +23,7 @@
  */
 package com.datamaio.scd4j.tmpl;
 
+import java.nio.charset.Charset;
 import java.nio.file.Path;
 
 import com.datamaio.scd4j.tmpl.impl.GroovyTemplateEngine;
@@ -31,23 +32,87 @@ import com.datamaio.scd4j.tmpl.impl.MustacheTemplateEngine;
 import com.datamaio.scd4j.tmpl.impl.VelocityTemplateEngine;
 
 /**
+ * Engines are stateless and thread safe: one instance may compile and render
+ * any number of templates at the same time. Everything that belongs to a
+ * single template lives in its immutable {@link Template}, and everything
+ * that belongs to a single render lives in the {@link Writable} returned by
+ * <code>make</code>.
+ * 
  * @author Fernando Rubbo
  */
 public abstract class TemplateEngine {
+	private static final int CACHE_SIZE = 1024;
+	private static final TemplateCache CACHE = new TemplateCache(CACHE_SIZE);
+	private static final TemplateEngine GROOVY = new GroovyTemplateEngine();
+	private static final TemplateEngine HANDLEBARS = new HandlebarsTemplateEngine();
+	private static final TemplateEngine MUSTACHE = new MustacheTemplateEngine();
+	private static final TemplateEngine VELOCITY = new VelocityTemplateEngine();
 	
 	public static TemplateEngine get(TemplateEngineConfig conf) {
 		if(GroovyTemplateEngine.NAME.equalsIgnoreCase(conf.getName())){
-			return new GroovyTemplateEngine();
+			// the script cache is bound to a workspace. Without it, there is nothing to keep apart
+			return conf.getScriptCache()!=null ? new GroovyTemplateEngine(conf.getScriptCache()) : GROOVY;
 		} else if(HandlebarsTemplateEngine.NAME.equalsIgnoreCase(conf.getName())){
-			return new HandlebarsTemplateEngine();
+			return HANDLEBARS;
 		} else if(MustacheTemplateEngine.NAME.equalsIgnoreCase(conf.getName())){
-			return new MustacheTemplateEngine();
+			return MUSTACHE;
 		} else if(VelocityTemplateEngine.NAME.equalsIgnoreCase(conf.getName())){
-			return new VelocityTemplateEngine();
+			return VELOCITY;
 		}
 		throw new RuntimeException("Templete engine '" + conf.getName() 
 				+ "' not found! Check options in package 'com.datamaio.scd4j.tmpl.impl'");
 	}
 	
-	public abstract Template createTemplate(Path path);
+	/** Compiled templates of all engines, shared by every configuration applied in this JVM */
+	public static TemplateCache getCache() {
+		return CACHE;
+	}
+	
+	/** Same as {@link #createTemplate(Path, Charset)}, using the default charset */
+	public Template createTemplate(Path path) {
+		return createTemplate(path, Charset.defaultCharset());
+	}
+	
+	/**
+	 * Returns the compiled template of the given file. The file is only
+	 * compiled if no template with the very same content (and charset) has
+	 * been compiled by this kind of engine before. For engines that resolve
+	 * includes relative to the template file, it must also be in the very
+	 * same directory (see {@link #resolvesRelativeToPath()}).
+	 */
+	public Template createTemplate(Path path, Charset charset) {
+		final String key = resolvesRelativeToPath() ? getName() + ":" + path.toAbsolutePath().getParent() : getName();
+		return CACHE.get(key, path, charset, text -> compile(path, text));
+	}
+	
+	public abstract String getName();
+	
+	/**
+	 * @return <code>true</code> if the compiled template depends on where its
+	 *         file is, e.g. partials looked up in the directory of the
+	 *         template. Then, identical templates of different directories
+	 *         are not shared.
+	 */
+	protected boolean resolvesRelativeToPath() {
+		return false;
+	}
+	
+	/**
+	 * Line of the template where the given error (thrown while compiling or
+	 * rendering it with this engine) happened.
+	 * 
+	 * @return 0 if unknown
+	 */
+	public int getLine(Path path, Throwable error) {
+		return 0;
+	}
+	
+	/**
+	 * Compiles the template. The returned instance must be immutable, given
+	 * that it is cached and rendered as many times as required.
+	 * 
+	 * @param path the template file. Only used to name the template (e.g. in error messages)
+	 * @param text the content of the template file
+	 */
+	protected abstract Template compile(Path path, String text);
 }
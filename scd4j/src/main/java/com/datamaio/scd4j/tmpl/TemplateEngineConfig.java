@@ -26,12 +26,15 @@ package com.datamaio.scd4j.tmpl;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.datamaio.scd4j.util.ScriptCache;
+
 /**
  * @author Fernando Rubbo
  */
 public class TemplateEngineConfig {
 	private String name;
 	private Map<String,String> options;
+	private ScriptCache scriptCache;
 	
 	public TemplateEngineConfig(String name) {
 		this(name, new HashMap<>());
@@ -54,5 +57,11 @@ public class TemplateEngineConfig {
 	public void setOptions(Map<String, String> options) {
 		this.options = options;
 	}
+	public ScriptCache getScriptCache() {
+		return scriptCache;
+	}
+	public void setScriptCache(ScriptCache scriptCache) {
+		this.scriptCache = scriptCache;
+	}
 	
 }
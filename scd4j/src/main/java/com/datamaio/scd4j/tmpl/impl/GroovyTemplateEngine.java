@@ -24,17 +24,24 @@
 package com.datamaio.scd4j.tmpl.impl;
 
 
+import groovy.lang.Binding;
 import groovy.text.SimpleTemplateEngine;
 
 import java.io.IOException;
 import java.io.Writer;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.datamaio.scd4j.exception.MissingPropertyException;
 import com.datamaio.scd4j.tmpl.Template;
 import com.datamaio.scd4j.tmpl.TemplateEngine;
 import com.datamaio.scd4j.tmpl.Writable;
+import com.datamaio.scd4j.util.CachedGroovyShell;
+import com.datamaio.scd4j.util.ScriptCache;
+import com.datamaio.scd4j.util.io.FileUtils;
+import org.codehaus.groovy.control.CompilerConfiguration;
 
 /**
  * Template documentation at http://groovy.codehaus.org/Groovy+Templates
@@ -47,45 +54,107 @@ import com.datamaio.scd4j.tmpl.Writable;
  * 	<li> all '$' as '\$' (not because of the issue, but because it is a char to execute the EL)
  * </ul>  
  */
-public class GroovyTemplateEngine extends TemplateEngine implements Template, Writable {
+public class GroovyTemplateEngine extends TemplateEngine {
 	public static final String NAME = "groovy";
+	private static final Pattern COMPILE_ERROR_LINE = Pattern.compile("@ line (\\d+), column");
 	
-	private final SimpleTemplateEngine engine = new SimpleTemplateEngine();
-	private groovy.text.Template template;
-	private groovy.lang.Writable writable; 
+	private final SimpleTemplateEngine engine;
 	
-	@Override
-	public Template createTemplate(Path path) {
-		try {
-			this.template = engine.createTemplate(path.toFile());
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+	public GroovyTemplateEngine() {
+		this(null);
+	}
+	
+	/**
+	 * @param cache if not <code>null</code> compiled templates are looked up in (and stored into) it
+	 */
+	public GroovyTemplateEngine(ScriptCache cache) {
+		if(cache==null) {
+			this.engine = new SimpleTemplateEngine();
+		} else {
+			ClassLoader loader = GroovyTemplateEngine.class.getClassLoader();
+			this.engine = new SimpleTemplateEngine(new CachedGroovyShell(loader, new Binding(), CompilerConfiguration.DEFAULT, cache));
 		}
-		return this;
 	}
-
+	
 	@Override
-	public Writable make() {
-		this.writable = template.make();
-		return this;
+	public String getName() {
+		return NAME;
 	}
-
+	
+	/**
+	 * The template script keeps the lines of the template. However, the whole
+	 * text between two scriptlets is a single statement of it. So, the line
+	 * of a missing property is looked up in the template, from the line of
+	 * that statement on.
+	 */
 	@Override
-	public Writable make(Map<String, ? extends Object> binding) {
-		this.writable = template.make(binding);
-		return this;
+	public int getLine(Path path, Throwable error) {
+		for (Throwable t = error; t != null; t = t.getCause()) {
+			// SimpleTemplateEngine keeps only the message of compilation errors
+			Matcher m = t.getMessage()!=null ? COMPILE_ERROR_LINE.matcher(t.getMessage()) : null;
+			if(m!=null && m.find()) {
+				return Integer.parseInt(m.group(1));
+			}
+			for (StackTraceElement e : t.getStackTrace()) {
+				if(e.getFileName()!=null && e.getFileName().startsWith("SimpleTemplateScript") && e.getLineNumber() > 0) {
+					return t instanceof groovy.lang.MissingPropertyException 
+							? lineOf(path, ((groovy.lang.MissingPropertyException) t).getProperty(), e.getLineNumber())
+							: e.getLineNumber();
+				}
+			}
+		}
+		return 0;
 	}
-
+	
+	private int lineOf(Path path, String property, int from) {
+		Pattern usage = Pattern.compile("\\$\\{?\\s*" + Pattern.quote(property) + "\\b");
+		String[] lines = FileUtils.read(path).split("\\r?\\n", -1);
+		for (int i = from - 1; i < lines.length; i++) {
+			if(usage.matcher(lines[i]).find()) {
+				return i + 1;
+			}
+		}
+		return from;
+	}
+	
 	@Override
-	public Writer writeTo(Writer out){
+	protected Template compile(Path path, String text) {
 		try {
-			Writer to = writable.writeTo(out);
-			to.flush();
-			return to;
-		} catch (groovy.lang.MissingPropertyException e) {
-			throw new MissingPropertyException(e);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+			return new GroovyTemplate(engine.createTemplate(text));
+		} catch (Exception e) {
+			throw new RuntimeException("Error compiling template " + path, e);
+		}
+	}
+	
+	private static final class GroovyTemplate implements Template {
+		private final groovy.text.Template template;
+		
+		GroovyTemplate(groovy.text.Template template) {
+			this.template = template;
+		}
+		
+		@Override
+		public Writable make() {
+			return writable(template.make());
+		}
+		
+		@Override
+		public Writable make(Map<String, ? extends Object> binding) {
+			return writable(template.make(binding));
+		}
+		
+		private Writable writable(groovy.lang.Writable writable) {
+			return out -> {
+				try {
+					Writer to = writable.writeTo(out);
+					to.flush();
+					return to;
+				} catch (groovy.lang.MissingPropertyException e) {
+					throw new MissingPropertyException(e);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			};
 		}
 	}
 }
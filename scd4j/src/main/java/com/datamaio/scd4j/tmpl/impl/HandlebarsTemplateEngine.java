@@ -39,8 +39,7 @@ import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.HandlebarsException;
 import com.github.jknack.handlebars.Helper;
 import com.github.jknack.handlebars.Options;
-import com.github.jknack.handlebars.io.URLTemplateSource;
-import com.github.mustachejava.MustacheException;
+import com.github.jknack.handlebars.io.StringTemplateSource;
 
 
 /**
@@ -48,7 +47,7 @@ import com.github.mustachejava.MustacheException;
  * 
  * @author Fernando Rubbo
  */
-public class HandlebarsTemplateEngine extends TemplateEngine implements Template, Writable {
+public class HandlebarsTemplateEngine extends TemplateEngine {
 	public static final String NAME = "handlebars";
 
 	private static final Handlebars HANDLEBARS = new Handlebars();
@@ -61,49 +60,64 @@ public class HandlebarsTemplateEngine extends TemplateEngine implements Template
 		});
 	}
 	
-	private com.github.jknack.handlebars.Template template;
-	private Map<String, ? extends Object> binding;
-		
-	@Override
-	public Template createTemplate(Path path) {
-		try {
-			this.template = HANDLEBARS.compile(new URLTemplateSource(path.toString(), path.toUri().toURL()));
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
-		return this;
-	}
-
 	@Override
-	public Writable make() {
-		this.binding = new HashMap<>();
-		return this;
+	public String getName() {
+		return NAME;
 	}
-
+	
 	@Override
-	public Writable make(Map<String, ? extends Object> binding) {
-		this.binding = binding;
-		return this;
+	public int getLine(Path path, Throwable error) {
+		for (Throwable t = error; t != null; t = t.getCause()) {
+			if(t instanceof HandlebarsException && ((HandlebarsException) t).getError()!=null) {
+				return ((HandlebarsException) t).getError().line;
+			}
+		}
+		return 0;
 	}
-
+	
 	@Override
-	public Writer writeTo(Writer out){
+	protected Template compile(Path path, String text) {
 		try {
-			Context context = Context.newContext(binding);
-			template.apply(context, out);
-			out.flush();
-			return out;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		} catch (HandlebarsException e) {
-			Throwable cause = e;
-			while(cause!=null){
-				cause = cause.getCause();
-				if(cause instanceof MissingPropertyException){
-					throw ((MissingPropertyException)cause);
-				}				
-			}
-			throw e;
+			return new HandlebarsTemplate(HANDLEBARS.compile(new StringTemplateSource(path.toString(), text)));
+		} catch (Exception e) {
+			throw new RuntimeException("Error compiling template " + path, e);
+		}
+	}
+	
+	private static final class HandlebarsTemplate implements Template {
+		private final com.github.jknack.handlebars.Template template;
+		
+		HandlebarsTemplate(com.github.jknack.handlebars.Template template) {
+			this.template = template;
+		}
+		
+		@Override
+		public Writable make() {
+			return make(new HashMap<>());
+		}
+		
+		@Override
+		public Writable make(Map<String, ? extends Object> binding) {
+			return out -> {
+				try {
+					Context context = Context.newContext(binding);
+					template.apply(context, out);
+					out.flush();
+					return out;
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				} catch (HandlebarsException e) {
+					Throwable cause = e;
+					while(cause!=null){
+						cause = cause.getCause();
+						if(cause instanceof MissingPropertyException){
+							// keeps the handlebars error, which knows where it happened
+							throw new MissingPropertyException(cause.getMessage(), e);
+						}				
+					}
+					throw e;
+				}
+			};
 		}
 	}
 }
@@ -24,15 +24,15 @@
 package com.datamaio.scd4j.tmpl.impl;
 
 
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
+import java.io.StringReader;
 import java.io.Writer;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.datamaio.scd4j.exception.MissingPropertyException;
 import com.datamaio.scd4j.tmpl.Template;
@@ -53,8 +53,9 @@ import com.github.mustachejava.util.Wrapper;
  * 
  * @author Fernando Rubbo
  */
-public class MustacheTemplateEngine extends TemplateEngine implements Template, Writable {
+public class MustacheTemplateEngine extends TemplateEngine {
 	public static final String NAME = "mustache";
+	private static final Pattern LOCATION = Pattern.compile("@\\[[^\\]]*:(\\d+)\\]");
 	
 	private static final MustacheFactory FACTORY = new DefaultMustacheFactory() { 
 	      @Override 
@@ -71,49 +72,74 @@ public class MustacheTemplateEngine extends TemplateEngine implements Template,
 	        }; 
 	      } 
 	    }; 
-	private Mustache mustache; 		
-	private Map<String, ? extends Object> binding;
 	
 	@Override
-	public Template createTemplate(Path path) {
-		try {
-			Reader reader = new FileReader(path.toFile());
-			this.mustache = FACTORY.compile(reader, path.toString());
-			return this;
-		} catch (FileNotFoundException e) {
-			throw new RuntimeException(e);
-		}
+	public String getName() {
+		return NAME;
 	}
-
+	
+	/** <code>{{> partial}}</code> is looked up in the directory of the template */
 	@Override
-	public Writable make() {
-		this.binding = new HashMap<>();
-		return this;
+	protected boolean resolvesRelativeToPath() {
+		return true;
 	}
-
+	
 	@Override
-	public Writable make(Map<String, ? extends Object> binding) {
-		this.binding = binding;
-		return this;
+	public int getLine(Path path, Throwable error) {
+		for (Throwable t = error; t != null; t = t.getCause()) {
+			if(t instanceof MustacheException && t.getMessage()!=null) {
+				// mustache errors end with @[template:line]
+				Matcher m = LOCATION.matcher(t.getMessage());
+				if(m.find()) {
+					return Integer.parseInt(m.group(1));
+				}
+			}
+		}
+		return 0;
 	}
-
+	
 	@Override
-	public Writer writeTo(Writer out){
+	protected Template compile(Path path, String text) {
 		try {
-			Writer to = mustache.execute(out, binding);
-			to.flush();
-			return to;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+			return new MustacheTemplate(FACTORY.compile(new StringReader(text), path.toString()));
 		} catch (MustacheException e) {
-			Throwable cause = e;
-			while(cause!=null){
-				cause = cause.getCause();
-				if(cause instanceof MissingPropertyException){
-					throw ((MissingPropertyException)cause);
-				}				
-			}
-			throw e;
+			throw new RuntimeException("Error compiling template " + path, e);
+		}
+	}
+	
+	private static final class MustacheTemplate implements Template {
+		private final Mustache mustache;
+		
+		MustacheTemplate(Mustache mustache) {
+			this.mustache = mustache;
+		}
+		
+		@Override
+		public Writable make() {
+			return make(new HashMap<>());
+		}
+		
+		@Override
+		public Writable make(Map<String, ? extends Object> binding) {
+			return out -> {
+				try {
+					Writer to = mustache.execute(out, binding);
+					to.flush();
+					return to;
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				} catch (MustacheException e) {
+					Throwable cause = e;
+					while(cause!=null){
+						cause = cause.getCause();
+						if(cause instanceof MissingPropertyException){
+							// keeps the mustache error, which knows where it happened
+							throw new MissingPropertyException(cause.getMessage(), e);
+						}				
+					}
+					throw e;
+				}
+			};
 		}
 	}
 }
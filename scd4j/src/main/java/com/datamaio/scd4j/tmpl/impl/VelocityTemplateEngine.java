@@ -24,12 +24,18 @@
 package com.datamaio.scd4j.tmpl.impl;
 
 
-import java.io.Writer;
+import java.io.StringReader;
 import java.nio.file.Path;
 import java.util.Map;
 
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.Velocity;
+import org.apache.velocity.exception.MethodInvocationException;
+import org.apache.velocity.exception.ParseErrorException;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.RuntimeSingleton;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.apache.velocity.runtime.parser.Token;
 
 import com.datamaio.scd4j.exception.MissingPropertyException;
 import com.datamaio.scd4j.tmpl.Template;
@@ -43,7 +49,7 @@ import com.datamaio.scd4j.tmpl.Writable;
  * @author Fernando Rubbo
  * @author Mateus M. da Costa
  */
-public class VelocityTemplateEngine extends TemplateEngine implements Template, Writable {
+public class VelocityTemplateEngine extends TemplateEngine {
 	public static final String NAME = "velocity";
 
     static {
@@ -55,38 +61,72 @@ public class VelocityTemplateEngine extends TemplateEngine implements Template,
         Velocity.init();
     }
     
-    private org.apache.velocity.Template template;
-    private VelocityContext context;
-	
-	@Override
-	public Template createTemplate(Path path) {		
-		this.template = Velocity.getTemplate(path.toAbsolutePath().toString());
-		return this;
-	}
-
 	@Override
-	public Writable make() {
-		this.context = new VelocityContext();
-		return this;
+	public String getName() {
+		return NAME;
 	}
-
+	
 	@Override
-	public Writable make(Map<String, ? extends Object> binding) {
-		this.context = new VelocityContext();
-		binding.forEach((String key, Object value) -> context.put(key, value));
-		return this;
+	public int getLine(Path path, Throwable error) {
+		for (Throwable t = error; t != null; t = t.getCause()) {
+			if(t instanceof ParseException && ((ParseException) t).currentToken!=null) {
+				Token token = ((ParseException) t).currentToken;
+				return token.next!=null ? token.next.beginLine : token.beginLine;
+			} else if(t instanceof ParseErrorException) {
+				return ((ParseErrorException) t).getLineNumber();
+			} else if(t instanceof MethodInvocationException) {
+				return ((MethodInvocationException) t).getLineNumber();
+			}
+		}
+		return 0;
 	}
-
+	
 	@Override
-	public Writer writeTo(Writer out){
+	protected Template compile(Path path, String text) {
 		try {
-			template.merge(context, out);
-			out.flush();
-			return out;
-		} catch (org.apache.velocity.exception.MethodInvocationException e) {
-			throw new MissingPropertyException(e);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+			RuntimeServices services = RuntimeSingleton.getRuntimeServices();
+			org.apache.velocity.Template template = new org.apache.velocity.Template();
+			template.setName(path.toAbsolutePath().toString());
+			template.setRuntimeServices(services);
+			template.setData(services.parse(new StringReader(text), template.getName()));
+			template.initDocument();
+			return new VelocityTemplate(template);
+		} catch (ParseException e) {
+			throw new RuntimeException("Error compiling template " + path, e);
+		}
+	}
+	
+	private static final class VelocityTemplate implements Template {
+		private final org.apache.velocity.Template template;
+		
+		VelocityTemplate(org.apache.velocity.Template template) {
+			this.template = template;
+		}
+		
+		@Override
+		public Writable make() {
+			return writable(new VelocityContext());
+		}
+		
+		@Override
+		public Writable make(Map<String, ? extends Object> binding) {
+			VelocityContext context = new VelocityContext();
+			binding.forEach((String key, Object value) -> context.put(key, value));
+			return writable(context);
+		}
+		
+		private Writable writable(VelocityContext context) {
+			return out -> {
+				try {
+					template.merge(context, out);
+					out.flush();
+					return out;
+				} catch (MethodInvocationException e) {
+					throw new MissingPropertyException(e);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			};
 		}
 	}
 	
@@ -28,7 +28,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 
@@ -45,7 +47,14 @@ public class EncodingHelper {
 	private static final String DEFAULT_ECLIPSE_CONF = ".settings/org.eclipse.core.resources.prefs";
 	private static final String ENCODING_PREFIX = "encoding/";
 	private Properties props = new Properties();
+	/** Charsets already found, by file name and default encoding */
+	private final Map<String, Charset> charsets = new ConcurrentHashMap<>();
 
+	/** Instance built from the eclipse configuration of the working directory, shared by everyone */
+	public static EncodingHelper getDefault() {
+		return DefaultHolder.INSTANCE;
+	}
+	
 	public EncodingHelper() {
 		this(DEFAULT_ECLIPSE_CONF);
 	}
@@ -95,6 +104,16 @@ public class EncodingHelper {
 	}
 
 	public Charset getCharset(String fileName, String defaultEncoding) {
+		final String key = fileName + "\0" + defaultEncoding;
+		Charset cs = charsets.get(key);
+		if (cs == null) {
+			cs = lookupCharset(fileName, defaultEncoding);
+			charsets.put(key, cs);
+		}
+		return cs;
+	}
+	
+	private Charset lookupCharset(String fileName, String defaultEncoding) {
 		fileName = fileName.replaceAll("\\\\", "/");
 
 		String encode = props.getProperty(ENCODING_PREFIX + fileName);
@@ -103,8 +122,6 @@ public class EncodingHelper {
 		}
 
 		if (encode == null) {
-			// TODO : improve performance. once it will be executed for each
-			// file merged
 			for (Object _key : props.keySet()) {
 				String key = (String) _key;
 				if (isTheKeyAnEncoding(key)) {
@@ -133,5 +150,9 @@ public class EncodingHelper {
 				&& (!key.equals(ENCODING_PREFIX + "<project>") && !key
 						.equals(ENCODING_PREFIX + "/<project>"));
 	}
+	
+	private static class DefaultHolder {
+		private static final EncodingHelper INSTANCE = new EncodingHelper();
+	}
 
 }
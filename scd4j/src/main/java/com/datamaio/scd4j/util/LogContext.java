@@ -0,0 +1,100 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+import java.util.logging.Handler;
+
+/**
+ * Log handler of the work done by the current thread, e.g. the config
+ * rendered by a render farm thread. Threads of shared pools (asynchronous
+ * commands, stream pumps) outlive the work that created them, so the handler
+ * is never inherited: it is given explicitly to each task run on behalf of
+ * the current thread.
+ * 
+ * @author Fernando Rubbo
+ */
+public final class LogContext {
+	private static final ThreadLocal<Handler> HANDLER = new ThreadLocal<>();
+	
+	private LogContext() {
+	}
+	
+	/** @return the handler of the current thread or <code>null</code> if none */
+	public static Handler get() {
+		return HANDLER.get();
+	}
+	
+	public static void set(Handler handler) {
+		HANDLER.set(handler);
+	}
+	
+	public static void remove() {
+		HANDLER.remove();
+	}
+	
+	/** @return the task, run with the handler of the calling thread */
+	public static <T> Supplier<T> supplier(Supplier<T> task) {
+		final Handler handler = HANDLER.get();
+		if (handler == null) {
+			return task;
+		}
+		return () -> {
+			final Handler previous = HANDLER.get();
+			HANDLER.set(handler);
+			try {
+				return task.get();
+			} finally {
+				HANDLER.set(previous);
+			}
+		};
+	}
+	
+	/** Same as {@link #supplier(Supplier)} */
+	public static <T> Callable<T> callable(Callable<T> task) {
+		final Handler handler = HANDLER.get();
+		if (handler == null) {
+			return task;
+		}
+		return () -> {
+			final Handler previous = HANDLER.get();
+			HANDLER.set(handler);
+			try {
+				return task.call();
+			} finally {
+				HANDLER.set(previous);
+			}
+		};
+	}
+	
+	/** Same as {@link #supplier(Supplier)} */
+	public static Runnable runnable(Runnable task) {
+		final Supplier<Void> supplier = supplier(() -> {
+			task.run();
+			return null;
+		});
+		return supplier::get;
+	}
+}
@@ -0,0 +1,316 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Record of what scd4j has written to each target of a module (for a given
+ * configuration).
+ * <p>
+ * The manifest is a line oriented text file. After a header line, each line
+ * has the following tab separated columns:
+ * 
+ * <pre>
+ * sha256  size  mtime(millis)  mode(octal or -)  owner(or -)  path
+ * </pre>
+ * 
+ * The path is the last column, so it may contain any char but a line break.
+ * 
+ * @author Fernando Rubbo
+ */
+public class Manifest {
+	public static final String HEADER = "# scd4j manifest v1";
+	public static final String NONE = "-";
+	
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	
+	/** 
+	 * Loads the manifest. If the file does not exist, an empty manifest is returned 
+	 */
+	public static Manifest load(Path file) {
+		Manifest manifest = new Manifest();
+		if(!Files.exists(file)) {
+			return manifest;
+		}
+		
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			if(!HEADER.equals(line)) {
+				throw new RuntimeException("Invalid manifest file " + file + ". Unexpected header: " + line);
+			}
+			while((line = reader.readLine()) != null) {
+				if(!line.isEmpty()) {
+					Entry entry = Entry.parse(line);
+					manifest.entries.put(entry.path, entry);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading manifest " + file, e);
+		}
+		return manifest;
+	}
+	
+	/**
+	 * Stats the target and records it in this manifest. The target is only
+	 * hashed if its stat does not match the one already recorded, otherwise
+	 * the recorded hash is kept. If the target does not exist anymore, it is
+	 * removed. This method is thread safe.
+	 */
+	public void record(Path target) {
+		Stat stat = Stat.of(target);
+		if(stat!=null) {
+			Entry previous = entries.get(stat.path);
+			String hash = previous!=null && stat.matches(previous) ? previous.hash : hash(target);
+			entries.put(stat.path, stat.toEntry(hash));
+		} else {
+			remove(target);
+		}
+	}
+	
+	/**
+	 * Records the target which has just been copied from the source, taking
+	 * the hash from the source. A later {@link #record(Path)} keeps this hash
+	 * as long as the target is not touched in between.
+	 */
+	public void recordCopy(Path source, Path target) {
+		Stat stat = Stat.of(target);
+		if(stat!=null) {
+			entries.put(stat.path, stat.toEntry(hash(source)));
+		} else {
+			remove(target);
+		}
+	}
+	
+	public void remove(Path target) {
+		entries.remove(target.toAbsolutePath().toString());
+	}
+	
+	public Entry get(Path target) {
+		return entries.get(target.toAbsolutePath().toString());
+	}
+	
+	public Collection<Entry> getEntries() {
+		return Collections.unmodifiableCollection(entries.values());
+	}
+	
+	public int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Puts all entries of the given manifest in this one, replacing the existing ones
+	 */
+	public void putAll(Manifest other) {
+		entries.putAll(other.entries);
+	}
+	
+	/**
+	 * Saves the manifest (sorted by path). The file is written to a temporary
+	 * file first and then moved, so a crash never leaves a half written manifest
+	 */
+	public void save(Path file) {
+		List<String> paths = new ArrayList<>(entries.keySet());
+		Collections.sort(paths);
+		try {
+			Files.createDirectories(file.getParent());
+			Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+			try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+				writer.write(HEADER);
+				writer.newLine();
+				for (String path : paths) {
+					writer.write(entries.get(path).toLine());
+					writer.newLine();
+				}
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing manifest " + file, e);
+		}
+	}
+	
+	/** @return the SHA-256 (hex) of the file content */
+	public static String hash(Path file) {
+		try (InputStream in = Files.newInputStream(file)) {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] buff = new byte[65536];
+			int n;
+			while ((n = in.read(buff)) != -1) {
+				digest.update(buff, 0, n);
+			}
+			StringBuilder hex = new StringBuilder(64);
+			for (byte b : digest.digest()) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (IOException | NoSuchAlgorithmException e) {
+			throw new RuntimeException("Error hashing " + file, e);
+		}
+	}
+	
+	/**
+	 * @author Fernando Rubbo
+	 */
+	public static class Entry {
+		private final String path;
+		private final String hash;
+		private final long size;
+		private final long mtime;
+		private final String mode;
+		private final String owner;
+		
+		public Entry(String path, String hash, long size, long mtime, String mode, String owner) {
+			this.path = path;
+			this.hash = hash;
+			this.size = size;
+			this.mtime = mtime;
+			this.mode = mode;
+			this.owner = owner;
+		}
+		
+		/** 
+		 * @return the current state of the given file or <code>null</code> if it does not exist
+		 */
+		public static Entry of(Path file) {
+			Stat stat = Stat.of(file);
+			return stat!=null ? stat.toEntry(hash(file)) : null;
+		}
+		
+		static Entry parse(String line) {
+			String[] cols = line.split("\t", 6);
+			if(cols.length!=6) {
+				throw new RuntimeException("Invalid manifest line: " + line);
+			}
+			return new Entry(cols[5], cols[0], Long.parseLong(cols[1]), Long.parseLong(cols[2]), cols[3], cols[4]);
+		}
+		
+		String toLine() {
+			return hash + "\t" + size + "\t" + mtime + "\t" + mode + "\t" + owner + "\t" + path;
+		}
+
+		public Path getPath() {
+			return Paths.get(path);
+		}
+		public String getHash() {
+			return hash;
+		}
+		public long getSize() {
+			return size;
+		}
+		public long getMtime() {
+			return mtime;
+		}
+		public String getMode() {
+			return mode;
+		}
+		public String getOwner() {
+			return owner;
+		}
+		
+		@Override
+		public String toString() {
+			return toLine();
+		}
+	}
+	
+	/**
+	 * File metadata (everything but the hash) read with a single stat call
+	 * 
+	 * @author Fernando Rubbo
+	 */
+	public static class Stat {
+		private final String path;
+		private final long size;
+		private final long mtime;
+		private final String mode;
+		private final String owner;
+		
+		private Stat(String path, long size, long mtime, String mode, String owner) {
+			this.path = path;
+			this.size = size;
+			this.mtime = mtime;
+			this.mode = mode;
+			this.owner = owner;
+		}
+		
+		/** 
+		 * @return the metadata of the given file or <code>null</code> if it does not exist
+		 */
+		public static Stat of(Path file) {
+			String path = file.toAbsolutePath().toString();
+			try {
+				try {
+					PosixFileAttributes attrs = Files.readAttributes(file, PosixFileAttributes.class);
+					return new Stat(path, attrs.size(), attrs.lastModifiedTime().toMillis(), 
+							toOctal(attrs.permissions()), attrs.owner().getName());
+				} catch (UnsupportedOperationException e) {
+					BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+					return new Stat(path, attrs.size(), attrs.lastModifiedTime().toMillis(), NONE, NONE);
+				}
+			} catch (NoSuchFileException e) {
+				return null;
+			} catch (IOException e) {
+				throw new RuntimeException("Error reading attributes of " + file, e);
+			}
+		}
+		
+		/** @return <code>true</code> if size, mtime, mode and owner are the same of the entry */
+		public boolean matches(Entry entry) {
+			return size==entry.size && mtime==entry.mtime && mode.equals(entry.mode) && owner.equals(entry.owner);
+		}
+		
+		Entry toEntry(String hash) {
+			return new Entry(path, hash, size, mtime, mode, owner);
+		}
+		
+		private static String toOctal(Set<PosixFilePermission> perms) {
+			int mode = 0;
+			for (PosixFilePermission p : perms) {
+				mode |= 1 << (8 - p.ordinal());
+			}
+			return Integer.toOctalString(mode);
+		}
+	}
+}
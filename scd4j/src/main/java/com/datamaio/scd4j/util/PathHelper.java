@@ -39,14 +39,21 @@ import com.datamaio.scd4j.conf.Configuration;
 public final class PathHelper {
 	private final Map<String, Object> properties;
 	private final Path module;
+	/** Where targets are resolved. The file system root, unless running a plan */
+	private final Path root;
 
 	public PathHelper(final Configuration conf){
-		this(conf.getProps(), conf.getModule());
+		this(conf.getProps(), conf.getModule(), conf.getTargetRoot());
 	}
 
 	PathHelper(final Map<String, Object> properties, final Path module){
+		this(properties, module, Paths.get("/"));
+	}
+
+	PathHelper(final Map<String, Object> properties, final Path module, final Path root){
 		this.properties = properties;
 		this.module = module;
+		this.root = root;
 	}
 
 	public final Path getTargetWithoutSuffix(Path path, final String sufix) {
@@ -60,7 +67,7 @@ public final class PathHelper {
 	public final Path getTarget(final Path path) {
 		// gets the destination path, based on module
 		final Path relativized = this.module.relativize(path);
-		final Path resolved = Paths.get("/").resolve(relativized);
+		final Path resolved = root.resolve(relativized);
 
 		// resolve the variables in the directories
 		return replaceVars(resolved);
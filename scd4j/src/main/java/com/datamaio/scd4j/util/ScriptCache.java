@@ -0,0 +1,293 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.GroovySystem;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.tools.GroovyClass;
+
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * Persistent cache of compiled Groovy scripts (hooks and Groovy templates).
+ * <p>
+ * Each entry is keyed by the SHA-256 of the script text, the script base class,
+ * the scd4j version and the Groovy version. Therefore, any change in one of
+ * them produces a new entry and the old one will be evicted eventually.<br>
+ * Entries are kept in memory during the run and persisted in the
+ * <code>cache</code> folder of the workspace, so that warm runs load the
+ * bytecode directly instead of compiling the scripts again. When the folder
+ * grows beyond the configured size, the least recently used entries are
+ * deleted.
+ * 
+ * @author Fernando Rubbo
+ */
+public class ScriptCache {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	
+	private static final String ENTRY_SUFFIX = ".gcache";
+	private static final int MAGIC = 0x5CD4C1A5;
+	private static final String VERSION = buildVersion();
+	
+	private final Path dir;
+	private final long maxSize;
+	private final Map<String, Class<?>> loaded = new ConcurrentHashMap<>();
+	
+	/**
+	 * @param dir the directory where the entries are persisted
+	 * @param maxSize maximum size of the directory, in bytes
+	 */
+	public ScriptCache(Path dir, long maxSize) {
+		this.dir = dir;
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * Returns the main class of the given script, compiling it only if it is
+	 * neither in memory nor on disk.
+	 */
+	public Class<?> load(GroovyCodeSource codeSource, CompilerConfiguration config, ClassLoader parent) {
+		final String text = codeSource.getScriptText();
+		final String key = key(text, config);
+		Class<?> clazz = loaded.get(key);
+		if(clazz==null) {
+			Entry entry = read(key);
+			if(entry==null) {
+				entry = compile(codeSource, config, parent);
+				write(key, entry);
+			}
+			clazz = entry.define(parent);
+			Class<?> previous = loaded.putIfAbsent(key, clazz);
+			clazz = previous!=null ? previous : clazz;
+		}
+		return clazz;
+	}
+	
+	public Path getDir() {
+		return dir;
+	}
+	
+	// --- private methods ---
+	
+	private String key(String text, CompilerConfiguration config) {
+		String base = config.getScriptBaseClass()!=null ? config.getScriptBaseClass() : "groovy.lang.Script";
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(text.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(base.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(VERSION.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(64);
+			for (byte b : digest.digest()) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private Entry compile(GroovyCodeSource codeSource, CompilerConfiguration config, ClassLoader parent) {
+		GroovyClassLoader loader = new GroovyClassLoader(parent, config);
+		try {
+			CompilationUnit unit = new CompilationUnit(config, null, loader);
+			unit.addSource(codeSource.getName(), codeSource.getScriptText());
+			unit.compile(Phases.CLASS_GENERATION);
+			
+			String mainClass = unit.getAST().getModules().get(0).getClasses().get(0).getName();
+			Map<String, byte[]> classes = new HashMap<>();
+			for (Object o : unit.getClasses()) {
+				GroovyClass gc = (GroovyClass) o;
+				classes.put(gc.getName(), gc.getBytes());
+			}
+			return new Entry(mainClass, classes);
+		} finally {
+			try {
+				loader.close();
+			} catch (IOException e) {
+				// nothing to do
+			}
+		}
+	}
+	
+	private Entry read(String key) {
+		Path file = dir.resolve(key + ENTRY_SUFFIX);
+		if(!Files.exists(file)) {
+			return null;
+		}
+		
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+			if(in.readInt()!=MAGIC) {
+				throw new IOException("Invalid cache entry");
+			}
+			String mainClass = in.readUTF();
+			int count = in.readInt();
+			Map<String, byte[]> classes = new HashMap<>();
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				classes.put(name, bytes);
+			}
+			touch(file);
+			return new Entry(mainClass, classes);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Discarding corrupted script cache entry " + file, e);
+			FileUtils.delete(file);
+			return null;
+		}
+	}
+	
+	private void write(String key, Entry entry) {
+		try {
+			ByteArrayOutputStream buff = new ByteArrayOutputStream();
+			try (DataOutputStream out = new DataOutputStream(buff)) {
+				out.writeInt(MAGIC);
+				out.writeUTF(entry.mainClass);
+				out.writeInt(entry.classes.size());
+				for (Map.Entry<String, byte[]> c : entry.classes.entrySet()) {
+					out.writeUTF(c.getKey());
+					out.writeInt(c.getValue().length);
+					out.write(c.getValue());
+				}
+			}
+			
+			// write to a temporary file first, so that concurrent runs never read half written entries
+			Files.createDirectories(dir);
+			Path tmp = Files.createTempFile(dir, key, ".tmp");
+			Files.write(tmp, buff.toByteArray());
+			Files.move(tmp, dir.resolve(key + ENTRY_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			evict();
+		} catch (IOException e) {
+			// the cache is only an optimization. Do not abort the installation
+			LOGGER.log(Level.WARNING, "Could not write script cache entry in " + dir, e);
+		}
+	}
+	
+	private synchronized void evict() throws IOException {
+		List<Path> entries = new ArrayList<>();
+		long size = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + ENTRY_SUFFIX)) {
+			for (Path p : stream) {
+				entries.add(p);
+				size += Files.size(p);
+			}
+		}
+		if(size <= maxSize) {
+			return;
+		}
+		
+		final Map<Path, FileTime> times = new HashMap<>();
+		for (Path p : entries) {
+			times.put(p, Files.getLastModifiedTime(p));
+		}
+		Collections.sort(entries, Comparator.comparing(times::get));
+		for (Path p : entries) {
+			if(size <= maxSize) {
+				break;
+			}
+			size -= Files.size(p);
+			Files.deleteIfExists(p);
+		}
+	}
+	
+	private void touch(Path file) {
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			// only used by the eviction policy
+		}
+	}
+	
+	private static String buildVersion() {
+		String version = ScriptCache.class.getPackage().getImplementationVersion();
+		return (version != null ? version : "dev") + "/" + GroovySystem.getVersion();
+	}
+	
+	private static class Entry {
+		private final String mainClass;
+		private final Map<String, byte[]> classes;
+		
+		Entry(String mainClass, Map<String, byte[]> classes) {
+			this.mainClass = mainClass;
+			this.classes = classes;
+		}
+		
+		Class<?> define(ClassLoader parent) {
+			try {
+				return new EntryClassLoader(parent, classes).loadClass(mainClass);
+			} catch (ClassNotFoundException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+	
+	/** Defines the classes of one entry (the script and its closures) on demand */
+	private static class EntryClassLoader extends ClassLoader {
+		private final Map<String, byte[]> classes;
+		
+		EntryClassLoader(ClassLoader parent, Map<String, byte[]> classes) {
+			super(parent);
+			this.classes = classes;
+		}
+		
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] bytes = classes.get(name);
+			if(bytes==null) {
+				throw new ClassNotFoundException(name);
+			}
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util.io;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+
+/**
+ * {@link Writer} that encodes into a {@link WritableByteChannel} with an
+ * explicit charset.
+ * <p>
+ * Characters are gathered and encoded in large buffers, so that the many
+ * small writes done by template engines end up in a few big channel writes.
+ * The buffers are reused by every writer of the same thread (unless the
+ * thread has two writers open at the same time), so writing a file does not
+ * allocate them again.<br>
+ * As {@link java.io.OutputStreamWriter} does, malformed and unmappable
+ * characters are replaced.
+ * 
+ * @author Fernando Rubbo
+ */
+public class ChannelWriter extends Writer {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+	
+	private final WritableByteChannel channel;
+	private final CharsetEncoder encoder;
+	private final Buffers buffers;
+	private final CharBuffer chars;
+	private final ByteBuffer bytes;
+	private boolean closed;
+	
+	public ChannelWriter(WritableByteChannel channel, Charset charset) {
+		this.channel = channel;
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		Buffers pooled = BUFFERS.get();
+		this.buffers = pooled.inUse ? new Buffers() : pooled;
+		this.buffers.inUse = true;
+		this.chars = buffers.chars;
+		this.bytes = buffers.bytes;
+		chars.clear();
+		bytes.clear();
+	}
+	
+	/** Opens (creating or truncating) the file for writing */
+	public static ChannelWriter open(Path file, Charset charset) throws IOException {
+		return new ChannelWriter(FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE), charset);
+	}
+	
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		ensureOpen();
+		while(len > 0) {
+			int n = Math.min(len, chars.remaining());
+			chars.put(cbuf, off, n);
+			off += n;
+			len -= n;
+			if(!chars.hasRemaining()) {
+				encode(false);
+			}
+		}
+	}
+	
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		ensureOpen();
+		while(len > 0) {
+			int n = Math.min(len, chars.remaining());
+			// CharBuffer.put(String) copies char by char. getChars copies the whole range at once
+			str.getChars(off, off + n, chars.array(), chars.arrayOffset() + chars.position());
+			chars.position(chars.position() + n);
+			off += n;
+			len -= n;
+			if(!chars.hasRemaining()) {
+				encode(false);
+			}
+		}
+	}
+	
+	@Override
+	public void write(int c) throws IOException {
+		ensureOpen();
+		chars.put((char) c);
+		if(!chars.hasRemaining()) {
+			encode(false);
+		}
+	}
+	
+	/** Writes everything gathered so far to the channel. It does not force it to the disk */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		encode(false);
+		drain();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		closed = true;
+		try {
+			encode(true);
+			while(encoder.flush(bytes).isOverflow()) {
+				drain();
+			}
+			drain();
+		} finally {
+			buffers.inUse = false;
+			channel.close();
+		}
+	}
+	
+	private void encode(boolean endOfInput) throws IOException {
+		chars.flip();
+		while(true) {
+			CoderResult result = encoder.encode(chars, bytes, endOfInput);
+			if(result.isOverflow()) {
+				drain();
+			} else if(result.isUnderflow()) {
+				break;
+			} else {
+				result.throwException();
+			}
+		}
+		// keeps a dangling high surrogate, if any, for the next write
+		chars.compact();
+	}
+	
+	private void drain() throws IOException {
+		bytes.flip();
+		while(bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+	
+	private void ensureOpen() throws IOException {
+		if(closed) {
+			throw new IOException("Writer closed");
+		}
+	}
+	
+	private static class Buffers {
+		// heap buffers: the encoders only take their fast (array based) path when both have arrays
+		private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+		private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+		private boolean inUse;
+	}
+}
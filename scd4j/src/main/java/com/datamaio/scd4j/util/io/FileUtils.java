@@ -27,13 +27,21 @@ import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.util.stream.Collectors.toList;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.log4j.Logger;
 
@@ -45,6 +53,10 @@ import org.apache.log4j.Logger;
 public final class FileUtils {
 	
 	private static final Logger LOGGER = Logger.getLogger(FileUtils.class);
+	private static final int COMPARE_BUFFER_SIZE = 64 * 1024;
+	/** Each thread compares files with its own pair of buffers */
+	private static final ThreadLocal<byte[][]> COMPARE_BUFFERS = 
+			ThreadLocal.withInitial(() -> new byte[][]{new byte[COMPARE_BUFFER_SIZE], new byte[COMPARE_BUFFER_SIZE]});
 	
 	private FileUtils(){}
 	
@@ -170,7 +182,7 @@ public final class FileUtils {
 	
 	public static String read(Path file, Charset charset) {
 		try {
-			return new String(Files.readAllBytes(file));
+			return new String(Files.readAllBytes(file), charset);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -206,6 +218,125 @@ public final class FileUtils {
 		}
 	}
 	
+	/**
+	 * Creates an empty hidden file in the directory of the given one (and
+	 * therefore in the same file system), so that it may later replace it by
+	 * {@link #replace(Path, Path)}. The new file gets the default permissions
+	 * of the process, as any other new file would.
+	 */
+	public static Path createSiblingTempFile(Path file) {
+		Path dir = file.toAbsolutePath().getParent();
+		String prefix = "." + file.getFileName() + ".";
+		while(true) {
+			try {
+				String suffix = Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+				return Files.createFile(dir.resolve(prefix + suffix + ".tmp"));
+			} catch (FileAlreadyExistsException e) {
+				// try another name
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Moves the file over the target in a single step, so that readers of the
+	 * target see either its old or its new content, never a partial one. If
+	 * the target exists, its permissions (and its owner, when this process is
+	 * allowed to set it) are kept.
+	 */
+	public static void replace(Path file, Path target) {
+		try {
+			copyPosixAttributes(target, file);
+			try {
+				Files.move(file, target, ATOMIC_MOVE, REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				LOGGER.debug("Atomic move not supported. Replacing " + target + " in place");
+				Files.move(file, target, REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static void copyPosixAttributes(Path from, Path to) throws IOException {
+		PosixFileAttributeView view = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+		if(view==null || !Files.isRegularFile(from)) {
+			return;
+		}
+		PosixFileAttributes attrs = Files.readAttributes(from, PosixFileAttributes.class);
+		view.setPermissions(attrs.permissions());
+		try {
+			view.setGroup(attrs.group());
+			view.setOwner(attrs.owner());
+		} catch (FileSystemException e) {
+			// only root may give files away. The new file belongs to whoever is running
+			LOGGER.debug("Could not keep the owner of " + from + ": " + e.getMessage());
+		}
+	}
+	
+	/** 
+	 * Checks if both files have exactly the same content. 
+	 * Sizes are compared first, so that only files with the same size are read
+	 */
+	public static boolean contentEquals(Path file1, Path file2) {
+		try {
+			if(!Files.isRegularFile(file1) || !Files.isRegularFile(file2) || Files.size(file1)!=Files.size(file2)) {
+				return false;
+			}
+			try (InputStream in1 = Files.newInputStream(file1);
+				 InputStream in2 = Files.newInputStream(file2)) {
+				return contentEquals(in1, in2);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/** Checks if the file content is exactly the given bytes */
+	public static boolean contentEquals(Path file, byte[] content) {
+		try {
+			if(!Files.isRegularFile(file) || Files.size(file)!=content.length) {
+				return false;
+			}
+			try (InputStream in = Files.newInputStream(file)) {
+				return contentEquals(in, new ByteArrayInputStream(content));
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static boolean contentEquals(InputStream in1, InputStream in2) throws IOException {
+		byte[][] buffers = COMPARE_BUFFERS.get();
+		byte[] buff1 = buffers[0];
+		byte[] buff2 = buffers[1];
+		while(true) {
+			int n1 = fill(in1, buff1);
+			int n2 = fill(in2, buff2);
+			if(n1!=n2) {
+				return false;
+			}
+			if(n1==0) {
+				return true;
+			}
+			for (int i = 0; i < n1; i++) {
+				if(buff1[i]!=buff2[i]) {
+					return false;
+				}
+			}
+		}
+	}
+	
+	private static int fill(InputStream in, byte[] buff) throws IOException {
+		int total = 0;
+		int n;
+		while(total < buff.length && (n = in.read(buff, total, buff.length - total)) != -1) {
+			total += n;
+		}
+		return total;
+	}
+	
 	public static void createSymbolicLink(Path link, Path targetFile) {
 		try {
 			Files.createSymbolicLink(link, targetFile);
@@ -0,0 +1,405 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.log4j.Logger;
+
+/**
+ * High throughput zip extractor (e.g. for application servers, with hundreds
+ * of MB). Compared to {@link ZipUtils#unzip(Path, Path)}:
+ * <ul>
+ * <li>entries are streamed through a large buffer, reused by each thread</li>
+ * <li>entries are extracted in parallel</li>
+ * <li>entries already extracted (same size and CRC) are not written again</li>
+ * <li>unix permissions, modification times and symbolic links stored in the zip are restored</li>
+ * </ul>
+ * As <code>unzip -o</code>, existing files are overwritten.
+ * 
+ * @author Fernando Rubbo
+ */
+public class ZipExtractor {
+	private static final Logger LOGGER = Logger.getLogger(ZipExtractor.class);
+	private static final int BUFFER_SIZE = 256 * 1024;
+	private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+	
+	private static final int EOCD_SIGNATURE = 0x06054b50;
+	private static final int CEN_SIGNATURE = 0x02014b50;
+	private static final int EOCD_SIZE = 22;
+	private static final int CEN_SIZE = 46;
+	private static final int HOST_UNIX = 3;
+	private static final int ASI_UNIX_EXTRA = 0x756e;
+	private static final int TYPE_MASK = 0170000;
+	private static final int TYPE_LINK = 0120000;
+	private static final PosixFilePermission[] PERMISSIONS = PosixFilePermission.values();
+	
+	private final int threads;
+	
+	public ZipExtractor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	public ZipExtractor(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Threads must be positive: " + threads);
+		}
+		this.threads = threads;
+	}
+	
+	/**
+	 * Extracts the zip file into the destination directory, which is created
+	 * if it does not exist
+	 * 
+	 * @return what was done
+	 */
+	public Stats extract(final Path zipFile, final Path destDir) {
+		LOGGER.trace("Extracting Archive: " + zipFile);
+		final Path dest = destDir.toAbsolutePath().normalize();
+		FileUtils.createDirectories(dest);
+		final boolean posix = Files.getFileAttributeView(dest, PosixFileAttributeView.class) != null;
+		final Map<String, Integer> modes = posix ? readUnixModes(zipFile) : Collections.emptyMap();
+		final Stats stats = new Stats();
+		
+		try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+			final Path realDest = dest.toRealPath();
+			final Set<Path> checked = new HashSet<>();
+			final List<ZipEntry> dirs = new ArrayList<>();
+			final List<ZipEntry> files = new ArrayList<>();
+			final List<ZipEntry> links = new ArrayList<>();
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				Path target = target(dest, entry);
+				if (entry.isDirectory()) {
+					dirs.add(entry);
+					checkRealPath(realDest, target, checked);
+					Files.createDirectories(target);
+				} else {
+					Integer mode = modes.get(entry.getName());
+					(mode != null && (mode & TYPE_MASK) == TYPE_LINK ? links : files).add(entry);
+					checkRealPath(realDest, target.getParent(), checked);
+					Files.createDirectories(target.getParent());
+				}
+			}
+			
+			extractFiles(zip, files, dest, modes, stats);
+			
+			// links only after all files, so no entry is ever written through a link of the zip
+			for (ZipEntry link : links) {
+				extractLink(zip, link, dest, realDest);
+				stats.extracted.incrementAndGet();
+			}
+			
+			// directories at last, so restrictive permissions never block the extraction
+			for (ZipEntry dir : dirs) {
+				Path target = target(dest, dir);
+				setMode(target, modes, dir);
+				if (dir.getTime() != -1) {
+					Files.setLastModifiedTime(target, FileTime.fromMillis(dir.getTime()));
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error extracting " + zipFile + " to " + destDir, e);
+		}
+		LOGGER.trace("Extracted " + stats.getExtracted() + " files from " + zipFile 
+				+ " (" + stats.getSkipped() + " were already up to date)");
+		return stats;
+	}
+
+	private void extractFiles(ZipFile zip, List<ZipEntry> files, Path dest, Map<String, Integer> modes, Stats stats) 
+			throws IOException {
+		if (threads == 1 || files.size() < 2) {
+			for (ZipEntry entry : files) {
+				extract(zip, entry, dest, modes, stats);
+			}
+			return;
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+		try {
+			List<Future<Void>> futures = new ArrayList<>(files.size());
+			for (ZipEntry entry : files) {
+				futures.add(executor.submit(() -> {
+					extract(zip, entry, dest, modes, stats);
+					return null;
+				}));
+			}
+			for (Future<Void> f : futures) {
+				f.get();
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private void extract(ZipFile zip, ZipEntry entry, Path dest, Map<String, Integer> modes, Stats stats) 
+			throws IOException {
+		final Path target = target(dest, entry);
+		if (Files.isSymbolicLink(target)) {
+			// as unzip -o, the link is replaced instead of being written through
+			Files.delete(target);
+		}
+		
+		if (isUpToDate(target, entry)) {
+			LOGGER.trace("Skipping " + entry.getName() + ": already extracted");
+			stats.skipped.incrementAndGet();
+		} else {
+			LOGGER.trace("Extracting file " + entry.getName() + " to " + target);
+			final byte[] buff = BUFFER.get();
+			try (InputStream in = zip.getInputStream(entry); 
+					OutputStream out = Files.newOutputStream(target)) {
+				int read;
+				while ((read = in.read(buff)) != -1) {
+					out.write(buff, 0, read);
+				}
+			}
+			stats.extracted.incrementAndGet();
+		}
+		setMode(target, modes, entry);
+		if (entry.getTime() != -1) {
+			Files.setLastModifiedTime(target, FileTime.fromMillis(entry.getTime()));
+		}
+	}
+	
+	private void extractLink(ZipFile zip, ZipEntry entry, Path dest, Path realDest) throws IOException {
+		final Path target = target(dest, entry);
+		// a previous link of the zip may be one of the parents
+		checkRealPath(realDest, target.getParent(), null);
+		String link;
+		try (InputStream in = zip.getInputStream(entry)) {
+			link = new String(readAll(in), StandardCharsets.UTF_8);
+		}
+		LOGGER.trace("Linking " + entry.getName() + " to " + link);
+		Files.deleteIfExists(target);
+		Files.createSymbolicLink(target, target.getFileSystem().getPath(link));
+	}
+	
+	private boolean isUpToDate(Path target, ZipEntry entry) throws IOException {
+		if (entry.getCrc() == -1 || !Files.isRegularFile(target) || Files.size(target) != entry.getSize()) {
+			return false;
+		}
+		final CRC32 crc = new CRC32();
+		final byte[] buff = BUFFER.get();
+		try (InputStream in = Files.newInputStream(target)) {
+			int read;
+			while ((read = in.read(buff)) != -1) {
+				crc.update(buff, 0, read);
+			}
+		}
+		return crc.getValue() == entry.getCrc();
+	}
+	
+	private void setMode(Path target, Map<String, Integer> modes, ZipEntry entry) throws IOException {
+		Integer mode = modes.get(entry.getName());
+		if (mode == null) {
+			mode = asiUnixMode(entry.getExtra());
+		}
+		PosixFileAttributeView view = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+		if (view != null && mode != null && (mode & 0777) != 0) {
+			view.setPermissions(toPermissions(mode));
+		}
+	}
+	
+	private Path target(Path dest, ZipEntry entry) {
+		final Path target = dest.resolve(entry.getName()).normalize();
+		if (!target.startsWith(dest)) {
+			throw new RuntimeException("Entry " + entry.getName() + " is outside of " + dest);
+		}
+		return target;
+	}
+	
+	/** 
+	 * {@link #target(Path, ZipEntry)} is only lexical. Here the existing part
+	 * of the path is resolved, so that a symbolic link pointing outside of the
+	 * destination is never followed.
+	 */
+	private void checkRealPath(Path realDest, Path path, Set<Path> checked) throws IOException {
+		Path existing = path;
+		while (!Files.exists(existing)) {
+			existing = existing.getParent();
+		}
+		if (checked != null && !checked.add(existing)) {
+			return;
+		}
+		if (!existing.toRealPath().startsWith(realDest)) {
+			throw new RuntimeException(path + " is outside of " + realDest + " through a symbolic link");
+		}
+	}
+	
+	/**
+	 * Unix permissions are kept by the zip central directory (external
+	 * attributes, when created on unix), which {@link ZipEntry} does not expose.
+	 * So, the central directory is read here. Zip64 files are not supported:
+	 * their permissions are taken only from the extra fields, if any.
+	 */
+	static Map<String, Integer> readUnixModes(Path zipFile) {
+		final Map<String, Integer> modes = new HashMap<>();
+		try (FileChannel channel = FileChannel.open(zipFile, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			final int tail = (int) Math.min(size, EOCD_SIZE + 0xFFFF);
+			final ByteBuffer end = read(channel, size - tail, tail);
+			int eocd = -1;
+			for (int i = tail - EOCD_SIZE; i >= 0; i--) {
+				if (end.getInt(i) == EOCD_SIGNATURE) {
+					eocd = i;
+					break;
+				}
+			}
+			if (eocd < 0) {
+				return modes;
+			}
+			final long cenSize = end.getInt(eocd + 12) & 0xFFFFFFFFL;
+			final long cenOffset = end.getInt(eocd + 16) & 0xFFFFFFFFL;
+			if (cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL || cenOffset + cenSize > size) {
+				return modes;
+			}
+			
+			final ByteBuffer cen = read(channel, cenOffset, (int) cenSize);
+			int pos = 0;
+			while (pos + CEN_SIZE <= cenSize && cen.getInt(pos) == CEN_SIGNATURE) {
+				final int madeBy = (cen.getShort(pos + 4) & 0xFFFF) >> 8;
+				final int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+				final int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+				final int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+				final int external = cen.getInt(pos + 38);
+				
+				final byte[] name = new byte[nameLength];
+				cen.position(pos + CEN_SIZE);
+				cen.get(name);
+				final int mode = external >>> 16;
+				if (madeBy == HOST_UNIX && mode != 0) {
+					modes.put(new String(name, StandardCharsets.UTF_8), mode);
+				}
+				pos += CEN_SIZE + nameLength + extraLength + commentLength;
+			}
+		} catch (IOException | RuntimeException e) {
+			LOGGER.debug("Unix permissions of " + zipFile + " will not be restored: " + e.getMessage());
+			modes.clear();
+		}
+		return modes;
+	}
+	
+	/** The mode from the ASi unix extra field (0x756e), if present */
+	static Integer asiUnixMode(byte[] extra) {
+		if (extra == null) {
+			return null;
+		}
+		final ByteBuffer buff = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+		int pos = 0;
+		while (pos + 4 <= extra.length) {
+			final int id = buff.getShort(pos) & 0xFFFF;
+			final int length = buff.getShort(pos + 2) & 0xFFFF;
+			// CRC(4) followed by the mode(2)
+			if (id == ASI_UNIX_EXTRA && length >= 6 && pos + 10 <= extra.length) {
+				return buff.getShort(pos + 8) & 0xFFFF;
+			}
+			pos += 4 + length;
+		}
+		return null;
+	}
+	
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		final ByteBuffer buff = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buff.hasRemaining()) {
+			if (channel.read(buff, position + buff.position()) < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+		buff.flip();
+		return buff;
+	}
+	
+	private static byte[] readAll(InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buff = new byte[4096];
+		int read;
+		while ((read = in.read(buff)) != -1) {
+			out.write(buff, 0, read);
+		}
+		return out.toByteArray();
+	}
+	
+	private static Set<PosixFilePermission> toPermissions(int mode) {
+		final Set<PosixFilePermission> perms = EnumSet.noneOf(PosixFilePermission.class);
+		for (int i = 0; i < PERMISSIONS.length; i++) {
+			if ((mode & (1 << (8 - i))) != 0) {
+				perms.add(PERMISSIONS[i]);
+			}
+		}
+		return perms;
+	}
+	
+	/** What an extraction did */
+	public static final class Stats {
+		private final AtomicInteger extracted = new AtomicInteger();
+		private final AtomicInteger skipped = new AtomicInteger();
+		
+		/** Number of files (and links) written */
+		public int getExtracted() {
+			return extracted.get();
+		}
+		
+		/** Number of files not written because they were already extracted */
+		public int getSkipped() {
+			return skipped.get();
+		}
+	}
+}
@@ -38,22 +38,35 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
+import com.datamaio.scd4j.conf.ApplyConfig;
+import com.datamaio.scd4j.conf.CacheConfig;
 import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.conf.HookConfig;
+import com.datamaio.scd4j.conf.IncrementalConfig;
+import com.datamaio.scd4j.conf.Install;
+import com.datamaio.scd4j.conf.PlanConfig;
+import com.datamaio.scd4j.conf.Settings;
+import com.datamaio.scd4j.hooks.HookEvaluator;
 import com.datamaio.scd4j.util.BackupHelper;
 import com.datamaio.scd4j.util.LogHelper;
+import com.datamaio.scd4j.util.Manifest;
 import com.datamaio.scd4j.util.io.FileUtils;
 import com.datamaio.scd4j.util.io.PathUtils;
 
@@ -69,6 +82,7 @@ public class EnvConfiguratorTest {
 		Path base = new File(".").getAbsoluteFile().toPath();
 		FileUtils.delete(PathUtils.get(base, "backup"));
 		FileUtils.delete(PathUtils.get(base, "log"));
+		FileUtils.delete(PathUtils.get(base, "cache"));
 	}
 	
 	@Test
@@ -157,6 +171,34 @@ public class EnvConfiguratorTest {
 	}
 	
 
+	@Test
+	public void testTmplIsMergedThroughDanglingLinks() throws Exception {
+		Assume.assumeFalse(isWindows());
+		Path[] paths = createEnv(3);
+		Path root = paths[0];
+		Path fs = paths[1];
+		Path module = paths[2];
+		Path result = paths[3];
+		
+		try {
+			Path link = PathUtils.get(fs, "ff.txt");
+			Files.delete(link);
+			Files.createDirectories(PathUtils.get(fs, "real"));
+			Files.createSymbolicLink(link, Paths.get("real/ff.txt"));
+			
+			Map<String, Object> props = new HashMap<>();
+			props.put("favlang", "aaaaaa");
+			props.put("favlang2", "bbbbbb");
+			new EnvConfiguratorMock(build(module, props)).copyFiles();
+			
+			assertThat(Files.isSymbolicLink(link), is(true));
+			assertThat(exists(PathUtils.get(fs, "real/ff.txt")), is(true));
+			checkFileContent(fs, result, "ff.txt");
+		} finally {
+			FileUtils.delete(root);
+		}
+	}
+	
 	@Test
 	public void testExecWithTmplAndDelete() throws Exception {
 		Path[] paths = createEnv(4);
@@ -249,6 +291,220 @@ public class EnvConfiguratorTest {
 		}
 	}
 	
+	@Test
+	public void testExecWithCompiledHooks() throws Exception {
+		Path[] paths = createEnv(6);
+		Path root = paths[0];
+		Path fs = paths[1];
+		Path module = paths[2];
+		
+		try {
+			Map<String, Object> props = new HashMap<>();
+			props.put("favlang", "aaaaaa");
+			props.put("favlang2", "bbbbbb");
+			Settings settings = new Settings();
+			settings.setHook(new HookConfig(true));
+			Configuration conf = buildConf(module, props, settings);
+			
+			long before = HookEvaluator.getAvoidedCompilations();
+			new EnvConfiguratorMock(conf).execute();
+			
+			// 3 hooks, each one compiled once and reused for post and finish  
+			assertThat(HookEvaluator.getAvoidedCompilations() - before, is(6L));
+			assertThat(exists(PathUtils.get(fs, "ff.txt.postexecuted")), is(true));
+			assertThat(exists(PathUtils.get(fs, "dir3/f3.txt")), is(false));
+			assertThat(exists(PathUtils.get(fs, "dir3/f3.txt.postexecuted")), is(true));
+		} finally {		
+			FileUtils.delete(root);
+		}
+	}
+	
+	@Test
+	public void testParallelCopyWithTmpl() throws Exception {
+		Path[] paths = createEnv(3);
+		Path root = paths[0];
+		Path fs = paths[1];
+		Path module = paths[2];
+		Path result = paths[3];
+		
+		try {
+			Map<String, Object> props = new HashMap<>();
+			props.put("favlang", "aaaaaa");
+			props.put("favlang2", "bbbbbb");
+			new EnvConfiguratorMock(buildConf(module, props, parallelSettings())).copyFiles();		
+	
+			checkFileContent(fs, result, "dir1/f1.txt");
+			checkFileContent(fs, result, "dir2/dir21/f21.txt");
+			checkFileContent(fs, result, "f.txt");
+			checkFileContent(fs, result, "ff.txt");
+			checkFileContent(fs, result, "dir3/f3.txt");
+		} finally {
+			FileUtils.delete(root);
+		}
+	}
+	
+	@Test
+	public void testParallelExecWithFilePostCondition() throws Exception {
+		Path[] paths = createEnv(6);
+		Path root = paths[0];
+		Path fs = paths[1];
+		Path module = paths[2];
+		
+		try {
+			Map<String, Object> props = new HashMap<>();
+			props.put("favlang", "aaaaaa");
+			props.put("favlang2", "bbbbbb");
+			new EnvConfiguratorMock(buildConf(module, props, parallelSettings())).execute();		
+	
+			assertThat(exists(PathUtils.get(fs, "f.txt")), is(true));
+			assertThat(exists(PathUtils.get(fs, "ff.txt.postexecuted")), is(true));
+			assertThat(exists(PathUtils.get(fs, "dir3/f3.txt")), is(false));
+			assertThat(exists(PathUtils.get(fs, "dir3/f3.txt.postexecuted")), is(true));
+		} finally {		
+			FileUtils.delete(root);
+		}
+	}
+	
+	@Test
+	public void testIncrementalCopyWithTmpl() throws Exception {
+		Path[] paths = createEnv(3);
+		Path root = paths[0];
+		Path fs = paths[1];
+		Path module = paths[2];
+		Path result = paths[3];
+		
+		try {
+			Map<String, Object> props = new HashMap<>();
+			props.put("favlang", "aaaaaa");
+			props.put("favlang2", "bbbbbb");
+			Settings settings = new Settings();
+			settings.setIncremental(new IncrementalConfig(true, false));
+			new EnvConfiguratorMock(buildConf(module, props, settings)).copyFiles();
+			checkFileContent(fs, result, "f.txt");
+			checkFileContent(fs, result, "dir1/f1.txt");
+			
+			// a re-run must not write converged files
+			FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+			Files.setLastModifiedTime(PathUtils.get(fs, "f.txt"), old);
+			Files.setLastModifiedTime(PathUtils.get(fs, "dir1/f1.txt"), old);
+			Files.write(PathUtils.get(fs, "ff.txt"), "changed".getBytes());
+			new EnvConfiguratorMock(buildConf(module, props, settings)).copyFiles();
+			
+			assertThat(Files.getLastModifiedTime(PathUtils.get(fs, "f.txt")), is(old));
+			assertThat(Files.getLastModifiedTime(PathUtils.get(fs, "dir1/f1.txt")), is(old));
+			checkFileContent(fs, result, "f.txt");
+			checkFileContent(fs, result, "dir1/f1.txt");
+			checkFileContent(fs, result, "ff.txt");
+		} finally {
+			FileUtils.delete(root);
+		}
+	}
+	
+	@Test
+	public void testTmplIsReplacedAtomically() throws Exception {
+		Path[] paths = createEnv(3);
+		Path root = paths[0];
+		Path fs = paths[1];
+		Path module = paths[2];
+		Path result = paths[3];
+		
+		try {
+			Map<String, Object> props = new HashMap<>();
+			props.put("favlang", "aaaaaa");
+			props.put("favlang2", "bbbbbb");
+			new EnvConfiguratorMock(build(module, props)).copyFiles();
+			checkFileContent(fs, result, "ff.txt");
+			
+			// rendering the very same content must not write the target
+			Path ff = PathUtils.get(fs, "ff.txt");
+			FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+			Files.setLastModifiedTime(ff, old);
+			new EnvConfiguratorMock(build(module, props)).copyFiles();
+			assertThat(Files.getLastModifiedTime(ff), is(old));
+			
+			// a failing template must leave the target (and nothing else) behind
+			props.remove("favlang2");
+			try {
+				new EnvConfiguratorMock(build(module, props)).copyFiles();
+				fail("favlang2 is missing");
+			} catch (RuntimeException e) {
+				// expected
+			}
+			checkFileContent(fs, result, "ff.txt");
+			try (Stream<Path> files = Files.walk(fs)) {
+				assertThat(files.filter(p -> p.getFileName().toString().endsWith(".tmp")).count(), is(0L));
+			}
+		} finally {
+			FileUtils.delete(root);
+		}
+	}
+	
+	@Test
+	public void testExecRecordsManifest() throws Exception {
+		Path[] paths = createEnv(4);
+		Path root = paths[0];
+		Path fs = paths[1];
+		Path module = paths[2];
+		
+		try {
+			Map<String, Object> props = new HashMap<>();
+			props.put("favlang", "aaaaaa");
+			props.put("favlang2", "bbbbbb");
+			Configuration conf = build(module, props);
+			EnvConfiguratorMock configurator = new EnvConfiguratorMock(conf);
+			configurator.execute();
+			
+			Manifest manifest = Manifest.load(configurator.buildManifestFile(conf));
+			Path f1 = PathUtils.get(fs, "dir1/f1.txt");
+			assertThat(manifest.get(f1).getHash(), is(Manifest.hash(f1)));
+			assertThat(manifest.get(f1).getSize(), is(Files.size(f1)));
+			assertThat(manifest.get(PathUtils.get(fs, "f.txt")) != null, is(true));
+			assertThat(manifest.get(PathUtils.get(fs, "dir3/f3.txt")) == null, is(true));
+		} finally {
+			FileUtils.delete(root);
+		}
+	}
+	
+	@Test
+	public void testDriftAfterExec() throws Exception {
+		Path[] paths = createEnv(4);
+		Path root = paths[0];
+		Path fs = paths[1];
+		Path module = paths[2];
+		
+		try {
+			Map<String, Object> props = new HashMap<>();
+			props.put("favlang", "aaaaaa");
+			props.put("favlang2", "bbbbbb");
+			Configuration conf = build(module, props);
+			EnvConfiguratorMock configurator = new EnvConfiguratorMock(conf);
+			configurator.execute();
+			Path manifestFile = configurator.buildManifestFile(conf);
+			
+			DriftReport report = new DriftDetector(conf).detect(Manifest.load(manifestFile));
+			assertThat(report.hasDrifted(), is(false));
+			
+			Path f1 = PathUtils.get(fs, "dir1/f1.txt");
+			Files.write(f1, "drifted".getBytes());
+			Files.delete(PathUtils.get(fs, "f.txt"));
+			Files.createFile(PathUtils.get(fs, "dir3/f3.txt"));
+			
+			report = new DriftDetector(conf).detect(Manifest.load(manifestFile));
+			assertThat(report.count(DriftReport.Status.CHANGED), is(1));
+			assertThat(report.count(DriftReport.Status.MISSING), is(1));
+			assertThat(report.count(DriftReport.Status.ADDED), is(1));
+			assertThat(report.toString().contains("CHANGED\t" + f1), is(true));
+			
+			// only the mtime has changed: not a drift
+			new EnvConfiguratorMock(conf).execute();
+			Files.setLastModifiedTime(f1, FileTime.fromMillis(System.currentTimeMillis() - 60000));
+			report = new DriftDetector(conf).detect(Manifest.load(manifestFile));
+			assertThat(report.count(DriftReport.Status.CHANGED), is(0));
+		} finally {
+			FileUtils.delete(root);
+		}
+	}
+	
 	@Test
 	public void testExecWithModulePreCondition() throws Exception {
 		Path[] paths = createEnv(7);
@@ -374,6 +630,54 @@ public class EnvConfiguratorTest {
 				+ "\n}").getBytes();
 	}
 
+	private Settings parallelSettings() {
+		Settings settings = new Settings();
+		settings.setApply(new ApplyConfig(true, 4));
+		return settings;
+	}
+	
+	@Test
+	public void testPlanDoesNotTouchTheSystem() throws Exception {
+		Path[] paths = createEnv(4);
+		Path root = paths[0];
+		Path fs = paths[1];
+		Path module = paths[2];
+		Path result = paths[3];
+		
+		try {
+			Path config = Files.write(root.resolve("test.conf"), "favlang=aaaaaa\nfavlang2=bbbbbb\n".getBytes());
+			Settings settings = new Settings();
+			settings.setCache(new CacheConfig(false, 0));
+			settings.setPlan(new PlanConfig(true, root.resolve("plan").toString()));
+			Configuration conf = new Configuration(new Install(module, config), settings, new HashMap<>(), root.toFile());
+			byte[] ff = Files.readAllBytes(PathUtils.get(fs, "ff.txt"));
+			new EnvConfiguratorMock(conf).execute();
+			
+			// nothing changed in the live system
+			assertThat(exists(PathUtils.get(fs, "f.txt")), is(false));
+			assertThat(exists(PathUtils.get(fs, "dir3/f3.txt")), is(true));
+			assertThat(Files.readAllBytes(PathUtils.get(fs, "ff.txt")), is(equalTo(ff)));
+			assertThat(exists(root.resolve("test.manifest")), is(false));
+			
+			// but everything was rendered to the staging root
+			Path staged = PathUtils.get(conf.getTargetRoot(), fs);
+			checkFileContent(staged, result, "dir1/f1.txt");
+			checkFileContent(staged, result, "dir2/dir21/f21.txt");
+			checkFileContent(staged, result, "f.txt");
+			checkFileContent(staged, result, "ff.txt");
+			
+			List<String> plan = Files.readAllLines(conf.getPlanDir().resolve(Plan.PLAN_FILE));
+			assertThat(plan.contains("APPLY\t" + PathUtils.get(fs, "f.txt")), is(true));
+			assertThat(plan.contains("DELETE\t" + PathUtils.get(fs, "dir3/f3.txt")), is(true));
+		} finally {
+			FileUtils.delete(root);
+		}
+	}
+	
+	private Configuration buildConf(Path module, Map<String, Object> props, Settings settings) {
+		return new Configuration(new Install(module, props), settings, new HashMap<>(), new File(".").getAbsoluteFile());
+	}
+
 	private Path[] createEnv(int index) throws IOException, URISyntaxException {
 		Path root = null;				
 		if (isWindows()) {
@@ -455,6 +759,12 @@ public class EnvConfiguratorTest {
 			};
 		}		
 		
+		@Override
+		Path buildManifestFile(Configuration conf) {
+			// the module dir is inside of the temporary root dir, which is deleted by each test
+			return conf.getModule().resolveSibling("test.manifest");
+		}
+		
 		@Override
 		LogHelper buildLogHelper(Configuration conf) {
 			return new LogHelper(conf){
@@ -0,0 +1,147 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.ModuleIndex.Entry;
+import com.datamaio.scd4j.ModuleIndex.Kind;
+import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.util.PathHelper;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ *
+ * @author Fernando Rubbo
+ */
+public class ModuleIndexTest {
+	private Path root;
+	private Path module;
+	private Map<String, Object> props;
+	private PathHelper pathHelper;
+	
+	@Before
+	public void before() throws IOException {
+		root = Files.createTempDirectory("index");
+		module = Files.createDirectories(root.resolve("modules/mymodule"));
+		
+		props = new HashMap<>();
+		props.put("app", "my_app");
+		Configuration conf = mock(Configuration.class);
+		when(conf.getModule()).thenReturn(module);
+		when(conf.getProps()).thenReturn(props);
+		when(conf.getTargetRoot()).thenReturn(Paths.get("/"));
+		pathHelper = new PathHelper(conf);
+	}
+	
+	@After
+	public void after() {
+		FileUtils.delete(root);
+	}
+	
+	@Test
+	public void scan() throws Exception {
+		touch("opt/@app@/conf.txt.tmpl");
+		touch("opt/@app@/conf.txt.tmpl.hook");
+		touch("opt/@app@/lib.jar");
+		touch("opt/old.txt.del");
+		touch("opt/old.txt.del.hook");
+		touch("opt/olddir.del/anything.txt");
+		
+		ModuleIndex index = ModuleIndex.scan(module, pathHelper);
+		
+		List<Entry> applies = index.getApplies();
+		assertThat(applies.size(), is(5));
+		assertThat(applies.get(0).getKind(), is(Kind.DIRECTORY));
+		assertThat(applies.get(0).getSource(), is(module));
+		
+		Entry tmpl = find(applies, "conf.txt.tmpl");
+		assertThat(tmpl.getKind(), is(Kind.TEMPLATE));
+		assertThat(tmpl.getTarget(), is(Paths.get("/opt/my_app/conf.txt")));
+		assertThat(tmpl.getHook(), is(module.resolve("opt/@app@/conf.txt.tmpl.hook")));
+		
+		Entry jar = find(applies, "lib.jar");
+		assertThat(jar.getKind(), is(Kind.COPY));
+		assertThat(jar.getTarget(), is(Paths.get("/opt/my_app/lib.jar")));
+		assertThat(jar.getHook(), is(nullValue()));
+		
+		// a directory always comes before its children
+		assertThat(applies.indexOf(find(applies, "@app@")) < applies.indexOf(jar), is(true));
+		
+		List<Entry> deletes = index.getDeletes();
+		assertThat(deletes.size(), is(2));
+		Entry file = find(deletes, "old.txt.del");
+		assertThat(file.getTarget(), is(Paths.get("/opt/old.txt")));
+		assertThat(file.hasHook(), is(true));
+		Entry dir = find(deletes, "olddir.del");
+		assertThat(dir.getTarget(), is(Paths.get("/opt/olddir")));
+		assertThat(dir.hasHook(), is(false));
+		
+		assertThat(index.getHooks(), is(2));
+	}
+	
+	@Test
+	public void targetsAreResolvedWhenFirstAskedFor() throws Exception {
+		touch("opt/@app@/lib.jar");
+		touch("opt/@app@/other.jar");
+		ModuleIndex index = ModuleIndex.scan(module, pathHelper);
+		assertThat(find(index.getApplies(), "lib.jar").getTarget(), is(Paths.get("/opt/my_app/lib.jar")));
+		
+		// e.g. a permanent property set by a hook of a previous file
+		props.put("app", "changed");
+		assertThat(find(index.getApplies(), "other.jar").getTarget(), is(Paths.get("/opt/changed/other.jar")));
+		assertThat(find(index.getApplies(), "lib.jar").getTarget(), is(Paths.get("/opt/my_app/lib.jar")));
+	}
+	
+	private void touch(String path) throws IOException {
+		Path file = module.resolve(path);
+		Files.createDirectories(file.getParent());
+		Files.createFile(file);
+	}
+	
+	private Entry find(List<Entry> entries, String name) {
+		for (Entry entry : entries) {
+			if(entry.getSource().getFileName().toString().equals(name)) {
+				return entry;
+			}
+		}
+		throw new AssertionError(name + " not found in " + entries);
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.ModuleValidator.Problem;
+import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.conf.Install;
+import com.datamaio.scd4j.conf.Settings;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * @author Fernando Rubbo
+ */
+public class ModuleValidatorTest {
+	private Path root;
+	private Map<String, Object> props;
+	
+	@Before
+	public void setUp() throws IOException {
+		root = Files.createTempDirectory("validate");
+		props = new HashMap<>();
+		props.put("key", "value");
+	}
+	
+	@After
+	public void tearDown() {
+		FileUtils.delete(root);
+	}
+	
+	@Test
+	public void validModule() throws IOException {
+		Path module = module("m1");
+		write(module, "etc/ok.conf.tmpl", "key=${key}\n");
+		write(module, "etc/ok.conf.tmpl.hook", "pre {\n\tCONTINUE\n}\n");
+		write(module, "etc/plain.conf", "not a ${template}");
+		write(module, "Module.hook", "post {\n\tlog 'done'\n}\n");
+		
+		assertThat(validate(module).isEmpty(), is(true));
+	}
+	
+	@Test
+	public void reportsFileAndLine() throws IOException {
+		Path module = module("m1");
+		write(module, "etc/broken.conf.tmpl", "a\nb\n<% if ( %>\n");
+		write(module, "etc/missing.conf.tmpl", "a\nb=${nokey}\n");
+		write(module, "etc/file.conf", "x");
+		write(module, "etc/file.conf.hook", "pre {\n\tCONTINUE\n}\n}\n");
+		
+		List<Problem> problems = validate(module);
+		
+		assertThat(problems.size(), is(3));
+		assertProblem(problems.get(0), module.resolve("etc/broken.conf.tmpl"), 3, true);
+		assertProblem(problems.get(1), module.resolve("etc/file.conf.hook"), 4, true);
+		assertProblem(problems.get(2), module.resolve("etc/missing.conf.tmpl"), 2, false);
+		assertThat(problems.get(2).getMessage(), containsString("nokey"));
+	}
+	
+	@Test
+	public void missingPropertyWithoutHooksIsAnError() throws IOException {
+		Path module = module("m1");
+		write(module, "etc/missing.conf.tmpl", "a\nb=${nokey}\n");
+		Path other = module("m2");
+		write(other, "etc/ok.conf.tmpl", "key=${key}\n");
+		
+		List<Problem> problems = new ModuleValidator(Arrays.asList(conf(module), conf(other)), 2).validate();
+		
+		assertThat(problems.size(), is(1));
+		assertProblem(problems.get(0), module.resolve("etc/missing.conf.tmpl"), 2, true);
+	}
+	
+	private void assertProblem(Problem problem, Path file, int line, boolean error) {
+		assertThat(problem.toString(), problem.getFile(), is(file));
+		assertThat(problem.toString(), problem.getLine(), is(line));
+		assertThat(problem.toString(), problem.isError(), is(error));
+	}
+	
+	private List<Problem> validate(Path module) {
+		return new ModuleValidator(Arrays.asList(conf(module)), 0).validate();
+	}
+	
+	private Configuration conf(Path module) {
+		return new Configuration(new Install(module, props), new Settings(), new HashMap<>(), new File(".").getAbsoluteFile());
+	}
+	
+	private Path module(String name) throws IOException {
+		return Files.createDirectories(root.resolve("modules").resolve(name));
+	}
+	
+	private void write(Path module, String file, String content) throws IOException {
+		Path path = module.resolve(file);
+		Files.createDirectories(path.getParent());
+		Files.write(path, content.getBytes());
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.conf.CacheConfig;
+import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.conf.Install;
+import com.datamaio.scd4j.conf.PlanConfig;
+import com.datamaio.scd4j.conf.Settings;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ *
+ * @author Fernando Rubbo
+ */
+public class RenderFarmTest {
+	private Path root;
+	private Path module;
+	
+	@Before
+	public void before() throws IOException {
+		root = Files.createTempDirectory("farm");
+		module = Files.createDirectories(root.resolve("modules/mod"));
+		Path dir = Files.createDirectories(module.resolve("opt/app"));
+		Files.write(dir.resolve("app.conf.tmpl"), "node=${node}".getBytes());
+		// each config sets its own temporary property. It must not leak to the other ones
+		Files.write(module.resolve("Module.hook"), 
+				("pre { if(get('tmp')!=null) throw new IllegalStateException('leaked'); setTempProperty('tmp', node); CONTINUE }\n").getBytes());
+		Files.createDirectories(root.resolve("config"));
+	}
+	
+	@After
+	public void after() {
+		FileUtils.delete(root);
+	}
+	
+	@Test
+	public void render() throws Exception {
+		Path n1 = config("node1.conf", "node=n1");
+		Path n2 = config("node2.conf", "node=n2");
+		Path n3 = config("node3.conf", "node=n3");
+		Path broken = config("broken.conf", "other=x");
+		
+		Map<Path, Exception> failures = new RenderFarm(new Path[]{module}, Arrays.asList(n1, n2, n3, broken), this::build, 2).render();
+		
+		assertThat(failures.size(), is(1));
+		assertThat(failures.get(broken), instanceOf(RuntimeException.class));
+		for (String node : Arrays.asList("n1", "n2", "n3")) {
+			Path staged = build(module, root.resolve("config/node" + node.substring(1) + ".conf")).getTargetRoot();
+			assertThat(new String(Files.readAllBytes(staged.resolve("opt/app/app.conf"))), is("node=" + node));
+		}
+		assertThat(Files.exists(root.resolve("plan/mod/node1/plan.txt")), is(true));
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void onlyPlans() throws Exception {
+		Path n1 = config("node1.conf", "node=n1");
+		Map<Path, Exception> failures = new RenderFarm(new Path[]{module}, Arrays.asList(n1), 
+				(m, c) -> new Configuration(new Install(m, c), new Settings(), new HashMap<>(), root.toFile()), 1).render();
+		throw failures.get(n1);
+	}
+	
+	private Configuration build(Path module, Path config) {
+		Settings settings = new Settings();
+		settings.setCache(new CacheConfig(false, 0));
+		settings.setPlan(new PlanConfig(true, null));
+		return new Configuration(new Install(module, config), settings, new HashMap<>(), root.toFile());
+	}
+	
+	private Path config(String name, String content) throws IOException {
+		return Files.write(root.resolve("config").resolve(name), content.getBytes());
+	}
+}
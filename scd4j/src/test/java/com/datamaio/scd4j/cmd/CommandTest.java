@@ -5,18 +5,27 @@ import static java.nio.file.Files.exists;
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 
+import com.datamaio.junit.IsLinux;
 import com.datamaio.junit.IsWindows;
+import com.datamaio.junit.RunIfRule;
 import com.datamaio.junit.RunIfRule.RunIf;
 import com.datamaio.scd4j.util.io.FileUtils;
 import com.datamaio.scd4j.util.io.PathUtils;
@@ -28,6 +37,8 @@ import com.datamaio.scd4j.util.io.PathUtils;
  * @author Mateus M. da Costa
  */
 public class CommandTest {
+	@Rule
+	public RunIfRule rule = new RunIfRule();
 	private Path root;
 
 	@Before
@@ -152,4 +163,127 @@ public class CommandTest {
 		// is(true));
 	}
 
+	@Test
+	public void recordInsteadOfRun() throws Exception {
+		Path dir = PathUtils.get(root, "/recorded");
+		Command.startRecording();
+		try {
+			assertThat(Command.isRecording(), is(true));
+			Command.get().mkdir(dir.toString());
+			assertThat(Command.get().run("rm -rf " + root), is(""));
+		} finally {
+			List<String> recorded = Command.stopRecording();
+			assertThat(recorded, hasItem("mkdir " + dir));
+			assertThat(recorded, hasItem("rm -rf " + root));
+		}
+		assertThat(Command.isRecording(), is(false));
+		assertThat(exists(dir), is(false));
+		assertThat(exists(root), is(true));
+	}
+
+	@Test
+	@RunIf(IsLinux.class)
+	public void streamKeepsOnlyTheTail() throws Exception {
+		AtomicInteger lines = new AtomicInteger();
+		String tail = Command.get().stream(Arrays.asList("seq", "1", "200000"), line -> lines.incrementAndGet());
+		assertThat(lines.get(), is(200000));
+		assertThat(tail.length() <= 64 * 1024, is(true));
+		assertThat(tail.endsWith("199999\n200000\n"), is(true));
+		
+		assertThat(Command.get().runWithNoInteraction("echo no interaction"), is("no interaction\n"));
+	}
+
+	@Test
+	@RunIf(IsLinux.class)
+	public void lines() throws Exception {
+		try (Stream<String> lines = Command.get().lines("seq 1 10")) {
+			assertThat(lines.filter(l -> l.startsWith("1")).count(), is(2L));
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	@RunIf(IsLinux.class)
+	public void streamFailure() throws Exception {
+		Command.get().stream(Arrays.asList("bash", "-c", "echo before; exit 2"), null);
+	}
+
+	@Test
+	@RunIf(IsLinux.class)
+	public void streamDoesNotWaitForBackgroundProcesses() throws Exception {
+		long start = System.currentTimeMillis();
+		// the background sleep inherits the pipe, which stays open after bash ends
+		String tail = Command.get().stream(Arrays.asList("bash", "-c", "echo started; sleep 10 &"), null);
+		assertThat(tail, is("started\n"));
+		assertThat(System.currentTimeMillis() - start < 5000, is(true));
+	}
+
+	@Test
+	@RunIf(IsLinux.class)
+	public void linesFailureWhenFullyRead() throws Exception {
+		Stream<String> lines = Command.get().lines(Arrays.asList("bash", "-c", "echo before; exit 2"));
+		assertThat(lines.count(), is(1L));
+		try {
+			lines.close();
+			fail("closing the stream must check the exit code");
+		} catch (RuntimeException e) {
+			assertThat(e.getCause().getMessage().startsWith("The process has ended with status: 2"), is(true));
+		}
+	}
+
+	@Test
+	@RunIf(IsLinux.class)
+	public void linesClosedEarlyDestroysTheProcess() throws Exception {
+		try (Stream<String> lines = Command.get().lines("seq 1 1000000")) {
+			assertThat(lines.findFirst().get(), is("1"));
+		}
+	}
+
+	@Test
+	@RunIf(IsLinux.class)
+	public void runAsyncOverlaps() throws Exception {
+		long start = System.currentTimeMillis();
+		List<CompletableFuture<String>> futures = Arrays.asList(
+				Command.get().runAsync("sleep 1"), 
+				Command.get().runAsync("sleep 1"));
+		Command.joinAll(futures);
+		assertThat(System.currentTimeMillis() - start < 1900, is(true));
+	}
+
+	@Test(timeout = 10000)
+	public void nestedAsyncDoesNotExhaustThePool() throws Exception {
+		List<CompletableFuture<Integer>> futures = new ArrayList<>();
+		for (int i = 0; i < Command.ASYNC_THREADS * 2; i++) {
+			futures.add(Command.get().async(() -> Command.get().async(() -> 1).join()));
+		}
+		assertThat(Command.joinAll(futures).size(), is(Command.ASYNC_THREADS * 2));
+	}
+
+	@Test
+	@RunIf(IsLinux.class)
+	public void asyncFailureIsPropagatedAfterAll() throws Exception {
+		Path file = createTempFile(root, "async", ".txt");
+		CompletableFuture<String> failed = Command.get().runAsync(Arrays.asList("bash", "-c", "exit 3"));
+		CompletableFuture<String> ok = Command.get().runAsync(Arrays.asList("bash", "-c", "sleep 0.5; rm " + file));
+		try {
+			Command.joinAll(Arrays.asList(failed, ok));
+			fail("the failure must be propagated");
+		} catch (RuntimeException e) {
+			assertThat(ok.isDone(), is(true));
+			assertThat(exists(file), is(false));
+		}
+	}
+
+	@Test
+	public void asyncRecordsInTheCallerPlan() throws Exception {
+		Command.startRecording();
+		try {
+			Command.get().runAsync("rm -rf " + root).join();
+			Command.get().async(() -> { Command.get().mkdir(root + "/async"); return null; }).join();
+		} finally {
+			List<String> recorded = Command.stopRecording();
+			assertThat(recorded, hasItem("rm -rf " + root));
+			assertThat(recorded, hasItem("mkdir " + root + "/async"));
+		}
+		assertThat(exists(root), is(true));
+	}
 }
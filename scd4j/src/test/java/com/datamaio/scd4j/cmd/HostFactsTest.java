@@ -0,0 +1,92 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.datamaio.junit.IsLinux;
+import com.datamaio.junit.RunIfRule;
+import com.datamaio.junit.RunIfRule.RunIf;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class HostFactsTest {
+	@Rule
+	public RunIfRule rule = new RunIfRule();
+	
+	@Test
+	public void osRelease() throws Exception {
+		Map<String, String> values = HostFacts.parseOsRelease(
+				  "# comment\n"
+				+ "NAME=\"CentOS Linux\"\n"
+				+ "ID=centos\n"
+				+ "VERSION_ID='7'\n"
+				+ "PRETTY_NAME=\"CentOS Linux 7 (Core)\"\n"
+				+ "\n");
+		assertThat(values.size(), is(4));
+		assertThat(values.get("NAME"), is("CentOS Linux"));
+		assertThat(values.get("ID"), is("centos"));
+		assertThat(values.get("VERSION_ID"), is("7"));
+	}
+	
+	@Test
+	public void takenOnce() throws Exception {
+		HostFacts facts = HostFacts.get();
+		assertThat(HostFacts.get(), is(sameInstance(facts)));
+		assertThat(facts.getIp(), is(facts.getIp()));
+		assertThat(facts.getUser(), is(System.getProperty("user.name")));
+		assertThat(facts.getCpus(), is(Runtime.getRuntime().availableProcessors()));
+		assertThat(Command.get().whatIsMyIp(), is(facts.getIp()));
+		assertThat(Command.get().whoami(), is(facts.getUser()));
+	}
+	
+	@Test
+	public void refresh() throws Exception {
+		HostFacts facts = HostFacts.get();
+		HostFacts refreshed = HostFacts.refresh();
+		assertThat(refreshed, is(not(sameInstance(facts))));
+		assertThat(HostFacts.get(), is(sameInstance(refreshed)));
+		assertThat(refreshed.getIp(), is(facts.getIp()));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void linuxFacts() throws Exception {
+		HostFacts facts = HostFacts.get();
+		assertThat(facts.getProcVersion().startsWith("Linux version"), is(true));
+		assertThat(facts.getOsRelease("ID"), is(not(nullValue())));
+		assertThat(facts.getInterfaces().isEmpty(), is(false));
+	}
+}
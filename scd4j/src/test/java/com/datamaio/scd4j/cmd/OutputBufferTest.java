@@ -0,0 +1,68 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Fernando Rubbo
+ */
+public class OutputBufferTest {
+
+	@Test
+	public void keepsEverythingUpToTheCapacity() {
+		OutputBuffer buff = new OutputBuffer(16);
+		buff.appendLine("abc");
+		buff.appendLine("def");
+		assertThat(buff.tail(), is("abc\ndef\n"));
+		assertThat(buff.isTruncated(), is(false));
+		assertThat(buff.getLines(), is(2L));
+	}
+	
+	@Test
+	public void keepsOnlyTheTail() {
+		OutputBuffer buff = new OutputBuffer(10);
+		for (int i = 0; i < 1000; i++) {
+			buff.appendLine("line" + i);
+		}
+		// partial first line is dropped
+		assertThat(buff.tail(), is("line999\n"));
+		assertThat(buff.isTruncated(), is(true));
+		assertThat(buff.getLines(), is(1000L));
+		assertThat(buff.getTotal(), is(7890L));
+	}
+	
+	@Test
+	public void lineBiggerThanTheCapacity() {
+		OutputBuffer buff = new OutputBuffer(4);
+		buff.appendLine("0123456789");
+		assertThat(buff.tail(), is(""));
+		buff.appendLine("ab");
+		assertThat(buff.tail(), is("ab\n"));
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.util.io.FileUtils;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class ReadinessProbeTest {
+	private Path root;
+	
+	@Before
+	public void setup() throws Exception {
+		root = Files.createTempDirectory("READY");
+	}
+	
+	@After
+	public void teardown() throws Exception {
+		FileUtils.delete(root);
+	}
+	
+	@Test
+	public void backoffStartsAtMilliseconds() throws Exception {
+		AtomicInteger checks = new AtomicInteger();
+		long start = System.currentTimeMillis();
+		boolean met = Command.get().waitFor(() -> checks.incrementAndGet() == 4, 5000);
+		assertThat(met, is(true));
+		// 5 + 10 + 20 ms of sleep, instead of 3 seconds
+		assertThat(System.currentTimeMillis() - start < 500, is(true));
+	}
+	
+	@Test
+	public void deadline() throws Exception {
+		long start = System.currentTimeMillis();
+		assertThat(Command.get().waitFor(() -> false, 200), is(false));
+		long elapsed = System.currentTimeMillis() - start;
+		assertThat(elapsed >= 200 && elapsed < 1000, is(true));
+	}
+	
+	@Test(expected = RuntimeException.class)
+	public void awaitReadyFailsAfterTheDeadline() throws Exception {
+		Command.get().awaitReady(100, ReadinessProbe.fileExists(root.resolve("never.pid").toString()));
+	}
+	
+	@Test
+	public void portOpen() throws Exception {
+		try (ServerSocket server = new ServerSocket(0)) {
+			assertThat(ReadinessProbe.portOpen(server.getLocalPort()).isReady(), is(true));
+		}
+		int closed;
+		try (ServerSocket server = new ServerSocket(0)) {
+			closed = server.getLocalPort();
+		}
+		assertThat(ReadinessProbe.portOpen(closed).isReady(), is(false));
+	}
+	
+	@Test
+	public void fileExists() throws Exception {
+		Path pid = root.resolve("service.pid");
+		ReadinessProbe probe = ReadinessProbe.fileExists(pid.toString());
+		assertThat(probe.isReady(), is(false));
+		Files.createFile(pid);
+		assertThat(probe.isReady(), is(true));
+	}
+	
+	@Test
+	public void logMatchesOnlyNewLines() throws Exception {
+		Path log = root.resolve("server.log");
+		Files.write(log, "old: Started in 10ms\n".getBytes(StandardCharsets.UTF_8));
+		ReadinessProbe probe = ReadinessProbe.logMatches(log.toString(), "Started in \\d+ms");
+		assertThat(probe.isReady(), is(false));
+		
+		append(log, "Starting...\nStarted in ");
+		assertThat(probe.isReady(), is(false));
+		append(log, "1234ms\n");
+		assertThat(probe.isReady(), is(true));
+	}
+	
+	@Test(expected = RuntimeException.class)
+	public void serviceNotRunningFailsAfterTheDeadline() throws Exception {
+		ReadinessProbe probe = ReadinessProbe.serviceRunning("scd4j-no-such-service");
+		assertThat(probe.isReady(), is(false));
+		Command.get().awaitReady(100, probe);
+	}
+	
+	@Test
+	public void logStaysReadyOnceMatched() throws Exception {
+		Path log = root.resolve("server.log");
+		Files.createFile(log);
+		ReadinessProbe probe = ReadinessProbe.logMatches(log.toString(), "Started");
+		append(log, "Started\n");
+		assertThat(probe.isReady(), is(true));
+		// awaitReady checks all the probes again while the others are not ready
+		append(log, "Serving requests\n");
+		assertThat(probe.isReady(), is(true));
+	}
+	
+	@Test
+	public void logDecodesCharactersSplitBetweenReads() throws Exception {
+		Path log = root.resolve("server.log");
+		ReadinessProbe probe = ReadinessProbe.logMatches(log.toString(), "Serviço iniciado");
+		byte[] line = "Serviço iniciado\n".getBytes(StandardCharsets.UTF_8);
+		int split = "Servi".length() + 1; // in the middle of the two bytes of 'ç'
+		Files.write(log, Arrays.copyOfRange(line, 0, split), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		assertThat(probe.isReady(), is(false));
+		Files.write(log, Arrays.copyOfRange(line, split, line.length), StandardOpenOption.APPEND);
+		assertThat(probe.isReady(), is(true));
+	}
+	
+	@Test
+	public void httpOk() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		AtomicInteger status = new AtomicInteger(503);
+		server.createContext("/health", exchange -> {
+			exchange.sendResponseHeaders(status.get(), -1);
+			exchange.close();
+		});
+		server.start();
+		try {
+			String url = "http://localhost:" + server.getAddress().getPort() + "/health";
+			ReadinessProbe probe = ReadinessProbe.httpOk(url);
+			assertThat(probe.isReady(), is(false));
+			
+			new Thread(() -> {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+				}
+				status.set(200);
+			}).start();
+			Command.get().awaitReady(5000, probe);
+			assertThat(probe.isReady(), is(true));
+		} finally {
+			server.stop(0);
+		}
+	}
+	
+	private void append(Path log, String content) throws Exception {
+		Files.write(log, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+	}
+}
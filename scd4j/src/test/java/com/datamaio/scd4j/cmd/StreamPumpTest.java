@@ -0,0 +1,77 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * @author Fernando Rubbo
+ */
+public class StreamPumpTest {
+
+	@Test
+	public void linesAreNormalized() throws Exception {
+		assertThat(drain("a\r\nb\nc\rd"), is("a\nb\nc\nd\n"));
+		assertThat(drain("a\n\nb\n"), is("a\n\nb\n"));
+		assertThat(drain(""), is(""));
+	}
+	
+	@Test
+	public void linesBiggerThanTheBuffer() throws Exception {
+		StringBuilder big = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			big.append(i % 10);
+		}
+		String line = big.toString();
+		assertThat(drain(line + "\r\n" + line), is(line + "\n" + line + "\n"));
+	}
+	
+	@Test
+	public void manyStreamsAtTheSameTime() throws Exception {
+		List<Future<String>> futures = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			futures.add(StreamPump.pump(stream("line " + i + "\n"), false));
+		}
+		for (int i = 0; i < 100; i++) {
+			assertThat(futures.get(i).get(), is("line " + i + "\n"));
+		}
+	}
+
+	private String drain(String content) throws Exception {
+		return StreamPump.drain(stream(content), StandardCharsets.UTF_8, false);
+	}
+	
+	private ByteArrayInputStream stream(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+}
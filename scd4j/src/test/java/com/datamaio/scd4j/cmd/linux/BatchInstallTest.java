@@ -0,0 +1,130 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd.linux;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.datamaio.scd4j.cmd.Interaction;
+import com.datamaio.scd4j.cmd.linux.debian.DebianCommand;
+import com.datamaio.scd4j.cmd.linux.redhat.CentosCommand;
+
+/**
+ *
+ * @author Fernando Rubbo
+ */
+public class BatchInstallTest {
+	
+	@Test
+	public void oneTransactionPerBatch() throws Exception {
+		List<String> executed = new ArrayList<>();
+		DebianCommand cmd = new DebianCommand() {
+			@Override
+			public String run(List<String> cmdList, Interaction interact) {
+				executed.add(String.join(" ", cmdList));
+				return "";
+			}
+		};
+		
+		cmd.batch(() -> {
+			cmd.installRemotePack("nginx");
+			cmd.installLocalPack("/tmp/a.deb");
+			cmd.batch(() -> cmd.installRemotePack("postgresql", "9.3"));
+			cmd.installLocalPack("/tmp/b.deb");
+			assertThat(executed.isEmpty(), is(true));
+		});
+		
+		assertThat(executed, is(Arrays.asList(
+				"apt-get -y install nginx postgresql=9.3", 
+				"dpkg -i /tmp/a.deb /tmp/b.deb")));
+		
+		// out of a batch, packages are installed right away
+		executed.clear();
+		cmd.installRemotePack("nginx");
+		assertThat(executed, is(Arrays.asList("apt-get -y install nginx")));
+	}
+	
+	@Test
+	public void failuresAreReportedPerPackage() throws Exception {
+		List<String> executed = new ArrayList<>();
+		CentosCommand cmd = new CentosCommand() {
+			@Override
+			public String run(List<String> cmdList, Interaction interact) {
+				String line = String.join(" ", cmdList);
+				executed.add(line);
+				if (line.contains("bad")) {
+					throw new RuntimeException("Error executing command: " + line);
+				}
+				return "";
+			}
+		};
+		
+		try {
+			cmd.batch(() -> {
+				cmd.installRemotePack("good");
+				cmd.installRemotePack("bad");
+				cmd.installRemotePack("other");
+			});
+			fail("the failed package must be reported");
+		} catch (RuntimeException e) {
+			assertThat(e.getMessage(), containsString("[bad]"));
+			assertThat(e.getSuppressed().length, is(1));
+		}
+		assertThat(executed, is(Arrays.asList(
+				"yum -y install good bad other", 
+				"yum -y install good", 
+				"yum -y install bad", 
+				"yum -y install other")));
+	}
+	
+	@Test
+	public void nothingIsInstalledIfTheBlockFails() throws Exception {
+		List<String> executed = new ArrayList<>();
+		DebianCommand cmd = new DebianCommand() {
+			@Override
+			public String run(List<String> cmdList, Interaction interact) {
+				executed.add(String.join(" ", cmdList));
+				return "";
+			}
+		};
+		
+		try {
+			cmd.batch(() -> {
+				cmd.installRemotePack("nginx");
+				throw new IllegalStateException("block failed");
+			});
+			fail();
+		} catch (IllegalStateException e) {
+			assertThat(executed.isEmpty(), is(true));
+		}
+	}
+}
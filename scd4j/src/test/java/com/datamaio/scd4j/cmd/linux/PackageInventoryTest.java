@@ -0,0 +1,123 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd.linux;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Fernando Rubbo
+ */
+public class PackageInventoryTest {
+	private static final String DPKG_STATUS = 
+			  "Package: bash\n"
+			+ "Essential: yes\n"
+			+ "Status: install ok installed\n"
+			+ "Architecture: amd64\n"
+			+ "Version: 4.3-7ubuntu1\n"
+			+ "Description: GNU Bourne Again SHell\n"
+			+ " Bash is an sh-compatible command language interpreter.\n"
+			+ "\n"
+			+ "Package: lxde\n"
+			+ "Status: deinstall ok config-files\n"
+			+ "Architecture: all\n"
+			+ "Version: 0.5.0-4ubuntu4\n"
+			+ "\n"
+			+ "Package: openjdk-7-jre\n"
+			+ "Status: hold ok installed\n"
+			+ "Architecture: amd64\n"
+			+ "Version: 7u55-2.4.7-1ubuntu1\n";
+
+	@Test
+	public void dpkgStatus() throws Exception {
+		Map<String, String> packs = PackageInventory.parseDpkgStatus(new BufferedReader(new StringReader(DPKG_STATUS)));
+		assertThat(packs.get("bash"), is("4.3-7ubuntu1"));
+		assertThat(packs.get("bash:amd64"), is("4.3-7ubuntu1"));
+		assertThat(packs.get("openjdk-7-jre"), is("7u55-2.4.7-1ubuntu1"));
+		assertThat(packs.containsKey("lxde"), is(false));
+	}
+	
+	@Test
+	public void rpmList() throws Exception {
+		Map<String, String> packs = PackageInventory.parseRpmList("bash 4.2.45-5.el7\nyum 3.4.3-118.el7\n\n");
+		assertThat(packs.size(), is(2));
+		assertThat(packs.get("bash"), is("4.2.45-5.el7"));
+		assertThat(packs.get("yum"), is("3.4.3-118.el7"));
+	}
+	
+	@Test
+	public void loadedOnceUntilInvalidated() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		Map<String, String> installed = new HashMap<>();
+		installed.put("bash", "4.3");
+		PackageInventory inventory = new PackageInventory(() -> {
+			loads.incrementAndGet();
+			return installed;
+		});
+		
+		for (int i = 0; i < 50; i++) {
+			assertThat(inventory.isInstalled("bash"), is(true));
+			assertThat(inventory.isInstalled("nginx"), is(false));
+		}
+		assertThat(loads.get(), is(1));
+		
+		installed.put("nginx", "1.4.6");
+		assertThat(inventory.isInstalled("nginx"), is(false));
+		inventory.invalidate();
+		assertThat(inventory.getVersion("nginx"), is("1.4.6"));
+		assertThat(loads.get(), is(2));
+	}
+	
+	@Test
+	public void globs() throws Exception {
+		Map<String, String> installed = new HashMap<>();
+		installed.put("openjdk-7-jre", "7u55");
+		PackageInventory inventory = new PackageInventory(() -> installed);
+		assertThat(inventory.isInstalled("openjdk-*"), is(true));
+		assertThat(inventory.isInstalled("openjdk-?-jre"), is(true));
+		assertThat(inventory.isInstalled("oracle-*"), is(false));
+		assertThat(inventory.getVersion("openjdk-*"), is(nullValue()));
+	}
+	
+	@Test
+	public void containing() throws Exception {
+		Map<String, String> installed = new HashMap<>();
+		installed.put("java-1.8.0-openjdk", "1.8.0.65-3.b17.el7");
+		PackageInventory inventory = new PackageInventory(() -> installed);
+		assertThat(inventory.isInstalledContaining("openjdk"), is(true));
+		assertThat(inventory.isInstalledContaining("openjdk-1.8.0.65"), is(true));
+		assertThat(inventory.isInstalledContaining("oracle"), is(false));
+		assertThat(inventory.isInstalled("openjdk"), is(false));
+	}
+}
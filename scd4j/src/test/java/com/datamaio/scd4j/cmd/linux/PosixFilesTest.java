@@ -0,0 +1,164 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd.linux;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.datamaio.junit.IsLinux;
+import com.datamaio.junit.RunIfRule;
+import com.datamaio.junit.RunIfRule.RunIf;
+import com.datamaio.scd4j.cmd.Command;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ *
+ * @author Fernando Rubbo
+ */
+public class PosixFilesTest {
+	@Rule
+	public RunIfRule rule = new RunIfRule();
+	private Path root;
+	
+	@Before
+	public void before() throws Exception {
+		root = Files.createTempDirectory("POSIX_FILES");
+	}
+	
+	@After
+	public void after() throws Exception {
+		if(new IsLinux().condition()) {
+			Command.get().chmod("755", root.toString(), true);
+		}
+		FileUtils.delete(root);
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void chmodOctal() throws Exception {
+		Path file = Files.createFile(root.resolve("a.txt"));
+		assertThat(PosixFiles.chmod("640", file, false), is(true));
+		assertThat(mode(file), is("rw-r-----"));
+		assertThat(PosixFiles.chmod("0751", file, false), is(true));
+		assertThat(mode(file), is("rwxr-x--x"));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void chmodSymbolic() throws Exception {
+		Path file = Files.createFile(root.resolve("a.txt"));
+		PosixFiles.chmod("644", file, false);
+		assertThat(PosixFiles.chmod("u+x,go-r", file, false), is(true));
+		assertThat(mode(file), is("rwx------"));
+		assertThat(PosixFiles.chmod("a=r", file, false), is(true));
+		assertThat(mode(file), is("r--r--r--"));
+		assertThat(PosixFiles.chmod("ug+w,o=X", file, false), is(true));
+		assertThat(mode(file), is("rw-rw----"));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void notSupportedModes() throws Exception {
+		Path file = Files.createFile(root.resolve("a.txt"));
+		assertThat(PosixFiles.chmod("u+s", file, false), is(false));
+		assertThat(PosixFiles.chmod("rwxr-xr-x", file, false), is(false));
+		assertThat(PosixFiles.chown("no_such_user_scd4j", null, file, false), is(false));
+		assertThat(PosixFiles.chown("root:root", null, file, false), is(false));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void chmodRecursive() throws Exception {
+		Path dir = Files.createDirectories(root.resolve("a/b/c"));
+		Path file = Files.createFile(dir.resolve("file.txt"));
+		Path link = Files.createSymbolicLink(root.resolve("a/link"), file);
+		PosixFiles.chmod("644", file, false);
+		
+		// directories are changed after their content, so the walk is not blocked
+		assertThat(PosixFiles.chmod("700", root.resolve("a"), true), is(true));
+		assertThat(mode(file), is("rwx------"));
+		assertThat(mode(dir), is("rwx------"));
+		
+		PosixFiles.chmod("644", file, false);
+		assertThat(PosixFiles.chmod("go+rX", root.resolve("a"), true), is(true));
+		assertThat(mode(file), is("rw-r--r--"));
+		assertThat(mode(dir), is("rwxr-xr-x"));
+		assertThat(Files.isSymbolicLink(link), is(true));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void chmodKeepsSetgidOfDirectories() throws Exception {
+		Path dir = Files.createDirectory(root.resolve("shared"));
+		assertThat(PosixFiles.chmod("2770", dir, false), is(true));
+		assertThat(PosixFiles.chmod("775", dir, false), is(true));
+		assertThat((Integer) Files.getAttribute(dir, "unix:mode") & 07777, is(02775));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void chownToTheCurrentUser() throws Exception {
+		Path dir = Files.createDirectories(root.resolve("a/b"));
+		Path file = Files.createFile(dir.resolve("file.txt"));
+		String user = Files.getOwner(file).getName();
+		String group = Files.readAttributes(file, PosixFileAttributes.class).group().getName();
+		
+		assertThat(PosixFiles.chown(user, group, root.resolve("a"), true), is(true));
+		assertThat(PosixFiles.chown(user, null, file, false), is(true));
+		assertThat(Files.getOwner(file).getName(), is(user));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void ln() throws Exception {
+		Path target = Files.createFile(root.resolve("target.txt"));
+		Path link = root.resolve("link.txt");
+		Command.get().ln(link.toString(), target.toString());
+		assertThat(Files.readSymbolicLink(link), is(target));
+		
+		// -f: replaces an existing link
+		Path other = Files.createFile(root.resolve("other.txt"));
+		Command.get().ln(link.toString(), other.toString());
+		assertThat(Files.readSymbolicLink(link), is(other));
+		
+		// an existing directory: the link is created inside it
+		Path dir = Files.createDirectory(root.resolve("dir"));
+		Command.get().ln(dir.toString(), target.toString());
+		assertThat(Files.readSymbolicLink(dir.resolve("target.txt")), is(target));
+	}
+	
+	private String mode(Path path) throws Exception {
+		return PosixFilePermissions.toString(Files.getPosixFilePermissions(path));
+	}
+}
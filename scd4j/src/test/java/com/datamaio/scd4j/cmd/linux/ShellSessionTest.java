@@ -0,0 +1,162 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.cmd.linux;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.datamaio.junit.IsLinux;
+import com.datamaio.junit.RunIfRule;
+import com.datamaio.junit.RunIfRule.RunIf;
+import com.datamaio.scd4j.cmd.Command;
+import com.datamaio.scd4j.cmd.Interaction;
+import com.datamaio.scd4j.cmd.OutputBuffer;
+
+/**
+ *
+ * @author Fernando Rubbo
+ */
+public class ShellSessionTest {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	private static final Interaction QUIET = new Interaction() {
+		@Override
+		public boolean shouldPrintCommand() {
+			return false;
+		}
+		@Override
+		public boolean shouldPrintOutput() {
+			return false;
+		}
+	};
+	
+	@Rule
+	public RunIfRule rule = new RunIfRule();
+	private ShellSession session;
+	
+	@Before
+	public void before() {
+		if(new IsLinux().condition()) {
+			session = new ShellSession();
+		}
+	}
+	
+	@After
+	public void after() {
+		if(session!=null) {
+			session.close();
+		}
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void runKeepsArguments() {
+		assertThat(session.run(Arrays.asList("echo", "it's", "a  b", "$HOME"), QUIET), is("it's a  b $HOME\n"));
+		assertThat(session.run(Arrays.asList("printf", "no new line"), QUIET), is("no new line\n"));
+		assertThat(session.run(Arrays.asList("printf", "l1\\nl2\\n"), QUIET), is("l1\nl2\n"));
+		assertThat(session.run(Arrays.asList("true"), QUIET), is(""));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void runKeepsOnlyTheTail() {
+		String tail = session.run(Arrays.asList("seq", "1", "200000"), QUIET);
+		assertThat(tail.length() <= OutputBuffer.DEFAULT_CAPACITY, is(true));
+		assertThat(tail.endsWith("199999\n200000\n"), is(true));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void failures() {
+		try {
+			session.run(Arrays.asList("bash", "-c", "echo out; echo err >&2; exit 3"), QUIET);
+			fail();
+		} catch (RuntimeException e) {
+			assertThat(e.getCause().getMessage(), containsString("status: 3"));
+			assertThat(e.getCause().getMessage(), containsString("err"));
+		}
+		
+		// merged output if there is no interaction
+		try {
+			session.run(Arrays.asList("bash", "-c", "echo merged >&2; exit 1"), null);
+			fail();
+		} catch (RuntimeException e) {
+			assertThat(e.getCause().getMessage(), containsString("merged"));
+		}
+		
+		// neither exit nor cd change the session and the session input is never read
+		session.run(Arrays.asList("bash", "-c", "cd /tmp; cat; exit 0"), QUIET);
+		assertThat(session.run(Arrays.asList("bash", "-c", "echo alive"), QUIET), is("alive\n"));
+		assertThat(session.getExecuted(), is(4L));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void canRun() {
+		assertThat(ShellSession.canRun(null), is(true));
+		assertThat(ShellSession.canRun(QUIET), is(true));
+		assertThat(ShellSession.canRun(new Interaction() {
+			@Override
+			public void interact(java.io.OutputStream out) throws Exception {
+			}
+		}), is(false));
+	}
+	
+	/** Compares one process per command (the default) with a shell session */
+	@Test
+	@RunIf(IsLinux.class)
+	public void benchmark() {
+		final int times = 200;
+		Command command = Command.get();
+		
+		long start = System.nanoTime();
+		for (int i = 0; i < times; i++) {
+			command.run(Arrays.asList("id", "-u"), QUIET);
+		}
+		long spawn = System.nanoTime() - start;
+		
+		command.openSession();
+		try {
+			start = System.nanoTime();
+			for (int i = 0; i < times; i++) {
+				command.run(Arrays.asList("id", "-u"), QUIET);
+			}
+		} finally {
+			command.closeSession();
+		}
+		long multiplexed = System.nanoTime() - start;
+		
+		LOGGER.fine(String.format("%d commands. Spawn: %d ms. Session: %d ms", 
+				times, spawn / 1000000, multiplexed / 1000000));
+	}
+}
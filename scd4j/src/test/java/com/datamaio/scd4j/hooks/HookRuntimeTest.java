@@ -0,0 +1,102 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.hooks;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import groovy.lang.Binding;
+import groovy.lang.Script;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.hooks.file.FileHook;
+import com.datamaio.scd4j.hooks.file.FileHookEvaluator;
+import com.datamaio.scd4j.hooks.module.ModuleHook;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * @author Fernando Rubbo
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class HookRuntimeTest {
+	
+	@Mock
+	private Configuration conf;
+	
+	@Test
+	public void sameBaseClassSharesTheClassLoader() {
+		HookRuntime runtime = new HookRuntime(null);
+		Script s1 = runtime.parse(FileHook.class.getName(), "1", "a.hook", new Binding());
+		Script s2 = runtime.parse(FileHook.class.getName(), "2", "b.hook", new Binding());
+		Script s3 = runtime.parse(ModuleHook.class.getName(), "3", "Module.hook", new Binding());
+		
+		assertThat(s1 instanceof FileHook, is(true));
+		assertThat(s3 instanceof ModuleHook, is(true));
+		assertThat(s1.getClass().getClassLoader().getParent() == s2.getClass().getClassLoader().getParent(), is(true));
+		assertThat(s1.getClass().getClassLoader().getParent() == s3.getClass().getClassLoader().getParent(), is(false));
+	}
+	
+	@Test
+	public void eachScriptHasItsOwnBinding() {
+		HookRuntime runtime = new HookRuntime(null);
+		Binding b1 = new Binding();
+		b1.setVariable("x", 1);
+		Binding b2 = new Binding();
+		b2.setVariable("x", 2);
+		
+		assertThat(runtime.parse(Script.class.getName(), "x", "a.hook", b1).run(), is((Object) 1));
+		assertThat(runtime.parse(Script.class.getName(), "x", "a.hook", b2).run(), is((Object) 2));
+	}
+	
+	@Test
+	public void fileWithoutHookDoesNotTouchTheRuntime() throws Exception {
+		Path root = Files.createTempDirectory("nohook");
+		Path module = Files.createDirectories(root.resolve("modules").resolve("mymodule"));
+		try {
+			when(conf.getProps()).thenReturn(new HashMap<>());
+			when(conf.getModule()).thenReturn(module);
+			
+			FileHookEvaluator evaluator = new FileHookEvaluator(module.resolve("f.txt"), root.resolve("f.txt"), conf);
+			assertThat(evaluator.pre(), is(true));
+			evaluator.post();
+			evaluator.finish();
+			
+			verify(conf, never()).getHookRuntime();
+		} finally {
+			FileUtils.delete(root);
+		}
+	}
+}
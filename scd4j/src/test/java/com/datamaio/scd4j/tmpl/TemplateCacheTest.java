@@ -0,0 +1,84 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.tmpl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * @author Fernando Rubbo
+ */
+public class TemplateCacheTest {
+
+	@Test
+	public void compilesEachTextOncePerEngine() {
+		TemplateCache cache = new TemplateCache(10);
+		AtomicInteger compilations = new AtomicInteger();
+		
+		Template a = cache.get("groovy", "${key}", () -> compile(compilations));
+		Template b = cache.get("groovy", "${key}", () -> compile(compilations));
+		Template c = cache.get("velocity", "${key}", () -> compile(compilations));
+		
+		assertThat(b, is(sameInstance(a)));
+		assertThat(c == a, is(false));
+		assertThat(compilations.get(), is(2));
+		assertThat(cache.getHits(), is(1L));
+		assertThat(cache.getMisses(), is(2L));
+	}
+	
+	@Test
+	public void evictsTheLeastRecentlyUsed() {
+		TemplateCache cache = new TemplateCache(2);
+		AtomicInteger compilations = new AtomicInteger();
+		
+		Template one = cache.get("e", "1", () -> compile(compilations));
+		cache.get("e", "2", () -> compile(compilations));
+		cache.get("e", "1", () -> compile(compilations));
+		cache.get("e", "3", () -> compile(compilations));
+		
+		assertThat(cache.size(), is(2));
+		assertThat(cache.get("e", "1", () -> compile(compilations)), is(sameInstance(one)));
+		cache.get("e", "2", () -> compile(compilations));
+		assertThat(compilations.get(), is(4));
+	}
+
+	private Template compile(AtomicInteger compilations) {
+		compilations.incrementAndGet();
+		return new Template() {
+			@Override
+			public Writable make() {
+				return out -> out;
+			}
+			@Override
+			public Writable make(java.util.Map<String, ? extends Object> binding) {
+				return out -> out;
+			}
+		};
+	}
+}
@@ -23,7 +23,21 @@
  */
 package com.datamaio.scd4j.tmpl.impl;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
 import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.tmpl.TemplateEngine;
+import com.datamaio.scd4j.tmpl.TemplateEngineConfig;
+import com.datamaio.scd4j.util.io.FileUtils;
 
 /**
  * 
@@ -34,4 +48,32 @@ public class MustacheTemplateEngineTest extends TemplateEngineTest {
 	public void setUp() {
 		setUp("mustache");
 	}
+	
+	@Test
+	public void testIdenticalTemplatesWithPartialsOfOtherDirectories() throws Exception {
+		// mustache only reads partials under the working directory
+		Path root = Files.createTempDirectory(Paths.get("").toAbsolutePath(), "MUSTACHE");
+		try {
+			Path one = template(root.resolve("one"), "first");
+			Path two = template(root.resolve("two"), "second");
+			
+			TemplateEngine engine = TemplateEngine.get(new TemplateEngineConfig("mustache"));
+			assertThat(render(engine, one), is("[first]"));
+			assertThat(render(engine, two), is("[second]"));
+		} finally {
+			FileUtils.delete(root);
+		}
+	}
+	
+	private Path template(Path dir, String partial) throws Exception {
+		Files.createDirectories(dir);
+		Files.write(dir.resolve("part.tmpl"), partial.getBytes());
+		return Files.write(dir.resolve("main.tmpl"), "[{{> part}}]".getBytes());
+	}
+	
+	private String render(TemplateEngine engine, Path template) throws Exception {
+		StringWriter writer = new StringWriter();
+		engine.createTemplate(template).make(new HashMap<>()).writeTo(writer);
+		return writer.toString();
+	}
 }
@@ -25,14 +25,24 @@ package com.datamaio.scd4j.tmpl.impl;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -40,12 +50,14 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.datamaio.scd4j.exception.MissingPropertyException;
+import com.datamaio.scd4j.tmpl.Template;
 import com.datamaio.scd4j.tmpl.TemplateEngine;
 import com.datamaio.scd4j.tmpl.TemplateEngineConfig;
 import com.datamaio.scd4j.util.io.FileUtils;
 import com.datamaio.scd4j.util.io.PathUtils;
 
 public abstract class TemplateEngineTest {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
 	private TemplateEngine engine;
 	private static Path root;
 	private String dir;	
@@ -88,6 +100,19 @@ public abstract class TemplateEngineTest {
 		Assert.fail("should give an error. Because 'key' is not set");
 	}
 	
+	@Test
+	public void testMissingPropertyLine(){
+		Path path = PathUtils.get(root, dir, "MissingProperty.tmpl");
+		try {
+			engine.createTemplate(path)
+				.make()
+				.writeTo(new StringWriter());
+			Assert.fail("should give an error. Because 'key' is not set");
+		} catch (MissingPropertyException e) {
+			assertThat(engine.getLine(path, e), is(1));
+		}
+	}
+	
 	@Test
 	public void testWithProperty(){
 		Path path = PathUtils.get(root, dir, "WithProperty.tmpl");
@@ -127,6 +152,100 @@ public abstract class TemplateEngineTest {
 		assertThat(result, is(equalTo("Person = fernando\nPerson = mateus\n")));
 	}
 	
+	@Test
+	public void testIdenticalTemplatesAreCompiledOnce() throws Exception {
+		Path path = PathUtils.get(root, dir, "WithProperty.tmpl");
+		// same directory: some engines look up partials relative to the template
+		Path copy = path.resolveSibling("Other.tmpl");
+		Files.copy(path, copy);
+		
+		Template template = engine.createTemplate(path);
+		Template other = TemplateEngine.get(new TemplateEngineConfig(dir)).createTemplate(copy);
+		assertThat(other, is(sameInstance(template)));
+		
+		Files.write(copy, ("changed " + FileUtils.read(path)).getBytes());
+		assertThat(engine.createTemplate(copy), is(not(sameInstance(template))));
+		Files.delete(copy);
+	}
+	
+	@Test
+	public void testCompiledTemplateIsRenderedWithManyBindings(){
+		Path path = PathUtils.get(root, dir, "WithProperty.tmpl");
+		Template template = engine.createTemplate(path);
+		StringWriter first = new StringWriter();
+		StringWriter second = new StringWriter();
+		Map<String, String> map = new HashMap<>();
+		map.put("key", "first");
+		template.make(map).writeTo(first);
+		map = new HashMap<>();
+		map.put("key", "second");
+		template.make(map).writeTo(second);
+		assertThat(first.toString(), is(equalTo("ok key is set to first")));
+		assertThat(second.toString(), is(equalTo("ok key is set to second")));
+	}
+	
+	@Test
+	public void testConcurrentRendering() throws Exception {
+		final int cpus = Runtime.getRuntime().availableProcessors();
+		final int renders = 2000;
+		
+		// warm up: compile the templates and the JIT paths once
+		render(1, 200);
+		
+		double single = render(1, renders);
+		double parallel = render(cpus, renders);
+		render(cpus * 4, renders / 4);
+		LOGGER.fine(String.format("%s: %.0f renders/s with 1 thread, %.0f renders/s with %d threads (%.1fx)", 
+				dir, single, parallel, cpus, parallel / single));
+	}
+	
+	/** 
+	 * Renders different templates with different bindings in many threads, checking every output
+	 * 
+	 * @return the number of renders per second
+	 */
+	private double render(int threads, final int rendersPerThread) throws Exception {
+		final Path simple = PathUtils.get(root, dir, "WithProperty.tmpl");
+		final Path complex = PathUtils.get(root, dir, "WithComplexProperty.tmpl");
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				final int thread = t;
+				futures.add(pool.submit(() -> {
+					start.await();
+					for (int i = 0; i < rendersPerThread; i++) {
+						String value = thread + "-" + i;
+						StringWriter writer = new StringWriter();
+						if(i % 2 == 0) {
+							Map<String, String> map = new HashMap<>();
+							map.put("key", value);
+							engine.createTemplate(simple).make(map).writeTo(writer);
+							assertThat(writer.toString(), is(equalTo("ok key is set to " + value)));
+						} else {
+							Map<String, Person> map = new HashMap<>();
+							map.put("person", new Person(value));
+							engine.createTemplate(complex).make(map).writeTo(writer);
+							assertThat(writer.toString(), is(equalTo("ok person.name is set to " + value)));
+						}
+					}
+					return null;
+				}));
+			}
+			
+			long begin = System.nanoTime();
+			start.countDown();
+			for (Future<?> f : futures) {
+				f.get();
+			}
+			long elapsed = System.nanoTime() - begin;
+			return threads * (double) rendersPerThread / elapsed * TimeUnit.SECONDS.toNanos(1);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
 	public static final class Person {
 		private String name;
 		public Person(String name) {
@@ -0,0 +1,81 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.datamaio.scd4j.cmd.Command;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class LogContextTest {
+	
+	@After
+	public void after() {
+		LogContext.remove();
+	}
+	
+	@Test
+	public void asyncTasksLogThroughTheHandlerOfTheCaller() throws Exception {
+		Handler handler = new ConsoleHandler();
+		LogContext.set(handler);
+		assertThat(Command.get().async(LogContext::get).join(), is(sameInstance(handler)));
+		
+		// the pool threads were created by a thread with a handler. They must not keep it
+		LogContext.remove();
+		List<CompletableFuture<Handler>> futures = new ArrayList<>();
+		for (int i = 0; i < Command.ASYNC_THREADS * 2; i++) {
+			futures.add(Command.get().async(LogContext::get));
+		}
+		for (Handler h : Command.joinAll(futures)) {
+			assertThat(h, is(nullValue()));
+		}
+	}
+	
+	@Test
+	public void restoresThePreviousHandler() throws Exception {
+		Handler outer = new ConsoleHandler();
+		Handler inner = new ConsoleHandler();
+		LogContext.set(inner);
+		Runnable task = LogContext.runnable(() -> assertThat(LogContext.get(), is(sameInstance(inner))));
+		
+		LogContext.set(outer);
+		task.run();
+		assertThat(LogContext.get(), is(sameInstance(outer)));
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.util.Manifest.Entry;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ *
+ * @author Fernando Rubbo
+ */
+public class ManifestTest {
+	private Path dir;
+	
+	@Before
+	public void before() throws IOException {
+		dir = Files.createTempDirectory("manifest");
+	}
+	
+	@After
+	public void after() {
+		FileUtils.delete(dir);
+	}
+	
+	@Test
+	public void saveAndLoad() throws Exception {
+		Path f1 = Files.write(dir.resolve("f1.txt"), "abc".getBytes());
+		Path f2 = Files.write(dir.resolve("with\ttab and space.txt"), "".getBytes());
+		
+		Manifest manifest = new Manifest();
+		manifest.record(f1);
+		manifest.record(f2);
+		manifest.record(dir.resolve("does_not_exist"));
+		Path file = dir.resolve("sub/m.manifest");
+		manifest.save(file);
+		
+		Manifest loaded = Manifest.load(file);
+		assertThat(loaded.size(), is(2));
+		Entry e1 = loaded.get(f1);
+		assertThat(e1.getHash(), is("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad"));
+		assertThat(e1.getSize(), is(3L));
+		assertThat(e1.getMtime(), is(Files.getLastModifiedTime(f1).toMillis()));
+		assertThat(e1.toString(), is(manifest.get(f1).toString()));
+		assertThat(loaded.get(f2).getPath(), is(f2.toAbsolutePath()));
+	}
+	
+	@Test
+	public void loadNotExistingManifest() {
+		assertThat(Manifest.load(dir.resolve("none")).size(), is(0));
+	}
+	
+	@Test
+	public void recordRemovesTargetsThatDoNotExistAnymore() throws Exception {
+		Path f1 = Files.write(dir.resolve("f1.txt"), "abc".getBytes());
+		Manifest manifest = new Manifest();
+		manifest.record(f1);
+		Files.delete(f1);
+		manifest.record(f1);
+		assertThat(manifest.size(), is(0));
+	}
+	
+	@Test
+	public void recordKeepsTheHashWhileTheStatMatches() throws Exception {
+		Path f1 = Files.write(dir.resolve("f1.txt"), "abc".getBytes());
+		Manifest manifest = new Manifest();
+		manifest.record(f1);
+		String hash = manifest.get(f1).getHash();
+		
+		// same size and mtime: the content is not read again
+		FileTime mtime = Files.getLastModifiedTime(f1);
+		Files.write(f1, "xyz".getBytes());
+		Files.setLastModifiedTime(f1, mtime);
+		manifest.record(f1);
+		assertThat(manifest.get(f1).getHash(), is(hash));
+		
+		Files.setLastModifiedTime(f1, FileTime.fromMillis(mtime.toMillis() - 10000));
+		manifest.record(f1);
+		assertThat(manifest.get(f1).getHash(), is(Manifest.hash(f1)));
+	}
+	
+	@Test
+	public void recordCopyTakesTheHashFromTheSource() throws Exception {
+		Path source = Files.write(dir.resolve("source.txt"), "abc".getBytes());
+		Path target = Files.copy(source, dir.resolve("target.txt"));
+		Manifest manifest = new Manifest();
+		manifest.recordCopy(source, target);
+		assertThat(manifest.get(target).getHash(), is(Manifest.hash(source)));
+		assertThat(manifest.get(target).getSize(), is(3L));
+		
+		manifest.record(target);
+		assertThat(manifest.get(target).getHash(), is(Manifest.hash(source)));
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ *
+ * @author Fernando Rubbo
+ */
+public class ScriptCacheTest {
+	private static final String SCRIPT = "def c = { a -> a * 2 }\n c(x)";
+	private Path dir;
+	
+	@Before
+	public void before() throws IOException {
+		dir = Files.createTempDirectory("scriptcache");
+	}
+	
+	@After
+	public void after() {
+		FileUtils.delete(dir);
+	}
+	
+	@Test
+	public void compileOnceAndLoadFromDiskInTheNextRun() throws Exception {
+		assertThat(evaluate(new ScriptCache(dir, 1024 * 1024), SCRIPT, 2), is((Object) 4));
+		assertThat(countEntries(), is(1));
+		
+		Path entry = firstEntry();
+		FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+		Files.setLastModifiedTime(entry, old);
+		
+		// a new cache instance simulates a new run: the entry must be read (and touched) from disk
+		assertThat(evaluate(new ScriptCache(dir, 1024 * 1024), SCRIPT, 5), is((Object) 10));
+		assertThat(countEntries(), is(1));
+		assertThat(Files.getLastModifiedTime(entry), is(not(old)));
+	}
+	
+	@Test
+	public void sameScriptInSameRunIsLoadedOnlyOnce() throws Exception {
+		ScriptCache cache = new ScriptCache(dir, 1024 * 1024);
+		CompilerConfiguration config = new CompilerConfiguration();
+		GroovyShell shell1 = new CachedGroovyShell(getClass().getClassLoader(), new Binding(), config, cache);
+		GroovyShell shell2 = new CachedGroovyShell(getClass().getClassLoader(), new Binding(), config, cache);
+		assertThat(shell1.parse(SCRIPT, "a.hook").getClass() == shell2.parse(SCRIPT, "b.hook").getClass(), is(true));
+	}
+	
+	@Test
+	public void differentBaseClassesAreDifferentEntries() throws Exception {
+		ScriptCache cache = new ScriptCache(dir, 1024 * 1024);
+		evaluate(cache, SCRIPT, 1);
+		
+		CompilerConfiguration config = new CompilerConfiguration();
+		config.setScriptBaseClass(CustomScript.class.getName());
+		new CachedGroovyShell(getClass().getClassLoader(), new Binding(), config, cache).parse(SCRIPT, "test.hook");
+		assertThat(countEntries(), is(2));
+	}
+	
+	@Test
+	public void evictLeastRecentlyUsedEntries() throws Exception {
+		ScriptCache cache = new ScriptCache(dir, 1);
+		evaluate(cache, SCRIPT, 1);
+		evaluate(cache, "x + 1", 1);
+		evaluate(cache, "x + 2", 1);
+		assertThat(countEntries(), is(0));
+		
+		cache = new ScriptCache(dir, 1024 * 1024);
+		evaluate(cache, SCRIPT, 1);
+		Files.setLastModifiedTime(firstEntry(), FileTime.fromMillis(System.currentTimeMillis() - 60000));
+		long size = Files.size(firstEntry());
+		cache = new ScriptCache(dir, size + 1);
+		evaluate(cache, "x + 1", 1);
+		assertThat(countEntries(), is(1));
+		assertThat(evaluate(cache, "x + 1", 1), is((Object) 2));
+	}
+	
+	private Object evaluate(ScriptCache cache, String script, int x) {
+		Binding binding = new Binding();
+		binding.setVariable("x", x);
+		GroovyShell shell = new CachedGroovyShell(getClass().getClassLoader(), binding, new CompilerConfiguration(), cache);
+		return shell.evaluate(script, "test.hook");
+	}
+	
+	private int countEntries() throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.gcache")) {
+			for (@SuppressWarnings("unused") Path p : stream) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	private Path firstEntry() throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.gcache")) {
+			return stream.iterator().next();
+		}
+	}
+	
+	public static abstract class CustomScript extends groovy.lang.Script {
+	}
+}
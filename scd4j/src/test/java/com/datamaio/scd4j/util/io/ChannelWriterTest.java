@@ -0,0 +1,193 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util.io;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.tmpl.Template;
+import com.datamaio.scd4j.tmpl.TemplateCache;
+import com.datamaio.scd4j.tmpl.TemplateEngine;
+import com.datamaio.scd4j.tmpl.TemplateEngineConfig;
+
+/**
+ * @author Fernando Rubbo
+ */
+public class ChannelWriterTest {
+	private static final Logger LOGGER = Logger.getLogger(ChannelWriterTest.class);
+	private static final int MB = 1024 * 1024;
+	
+	private Path dir;
+	
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("writer");
+	}
+	
+	@After
+	public void tearDown() {
+		FileUtils.delete(dir);
+	}
+	
+	@Test
+	public void encodesWithTheGivenCharset() throws IOException {
+		// 'ç' takes two bytes and the clef (a surrogate pair) four bytes in UTF-8. 
+		// Many of them do not fit in the buffers, so they are split at their boundaries 
+		StringBuilder text = new StringBuilder();
+		while(text.length() < 300 * 1024) {
+			text.append("configuração 𝄞 ");
+		}
+		
+		Path utf8 = dir.resolve("utf8.txt");
+		try (Writer out = ChannelWriter.open(utf8, StandardCharsets.UTF_8)) {
+			out.write(text.toString());
+			out.write('!');
+		}
+		assertThat(new String(Files.readAllBytes(utf8), StandardCharsets.UTF_8), is(equalTo(text + "!")));
+		
+		Path latin1 = dir.resolve("latin1.txt");
+		try (Writer out = ChannelWriter.open(latin1, StandardCharsets.ISO_8859_1)) {
+			out.write("configuração".toCharArray());
+		}
+		assertThat(Files.readAllBytes(latin1), is(equalTo("configuração".getBytes(StandardCharsets.ISO_8859_1))));
+	}
+	
+	@Test
+	public void writersOpenAtTheSameTimeDoNotShareBuffers() throws IOException {
+		Path first = dir.resolve("first.txt");
+		Path second = dir.resolve("second.txt");
+		try (Writer out1 = ChannelWriter.open(first, StandardCharsets.UTF_8);
+			 Writer out2 = ChannelWriter.open(second, StandardCharsets.UTF_8)) {
+			out1.write("first");
+			out2.write("second");
+			out1.flush();
+			assertThat(new String(Files.readAllBytes(first), StandardCharsets.UTF_8), is("first"));
+		}
+		assertThat(new String(Files.readAllBytes(first), StandardCharsets.UTF_8), is("first"));
+		assertThat(new String(Files.readAllBytes(second), StandardCharsets.UTF_8), is("second"));
+	}
+	
+	/**
+	 * Renders a 10 MB template with the former write path (platform charset
+	 * {@link FileWriter} behind a default {@link BufferedWriter}) and with the
+	 * {@link ChannelWriter}, printing the throughput and the allocations of
+	 * both. It also checks that looking a cached template up by its file does
+	 * not copy the file in memory, as looking it up by its text did.
+	 */
+	@Test
+	public void benchmark10MbTemplate() throws IOException {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		final Charset charset = Charset.defaultCharset();
+		Path source = createTemplate(10 * MB);
+		Map<String, String> binding = Collections.singletonMap("key", "value");
+		TemplateEngine engine = TemplateEngine.get(new TemplateEngineConfig("mustache"));
+		Template template = engine.createTemplate(source, charset);
+		
+		Path former = dir.resolve("former.txt");
+		Path current = dir.resolve("current.txt");
+		long[] formerStats = new long[2];
+		long[] currentStats = new long[2];
+		for (int i = 0; i < 3; i++) {
+			// the first round only warms up
+			measure(i==0 ? new long[2] : formerStats, () -> {
+				try (Writer out = new BufferedWriter(new FileWriter(former.toFile()))) {
+					template.make(binding).writeTo(out);
+				}
+			});
+			measure(i==0 ? new long[2] : currentStats, () -> {
+				try (Writer out = ChannelWriter.open(current, charset)) {
+					template.make(binding).writeTo(out);
+				}
+			});
+		}
+		assertThat(FileUtils.contentEquals(former, current), is(true));
+		long size = 2L * Files.size(current);
+		LOGGER.debug(String.format("FileWriter: %.1f MB/s, %d KB allocated. ChannelWriter: %.1f MB/s, %d KB allocated", 
+				mbPerSecond(size, formerStats[0]), formerStats[1] / 1024, 
+				mbPerSecond(size, currentStats[0]), currentStats[1] / 1024));
+		
+		TemplateCache cache = TemplateEngine.getCache();
+		long[] byText = new long[2];
+		long[] byFile = new long[2];
+		measure(byText, () -> cache.get("mustache", FileUtils.read(source, charset), () -> template));
+		measure(byFile, () -> engine.createTemplate(source, charset));
+		LOGGER.debug(String.format("Cached template looked up by text: %d KB allocated. By file: %d KB allocated", 
+				byText[1] / 1024, byFile[1] / 1024));
+		assertTrue(byFile[1] < byText[1] / 10);
+	}
+	
+	private Path createTemplate(int size) throws IOException {
+		Path source = dir.resolve("big.tmpl");
+		StringBuilder line = new StringBuilder("key is {{key}}.");
+		while(line.length() < 1023) {
+			line.append(' ').append(line.length());
+		}
+		line.append('\n');
+		try (Writer out = ChannelWriter.open(source, Charset.defaultCharset())) {
+			for (int written = 0; written < size; written += line.length()) {
+				out.write(line.toString());
+			}
+		}
+		return source;
+	}
+	
+	/** Adds the elapsed nanos and the bytes allocated by this thread to the given stats */
+	private void measure(long[] stats, IoRunnable task) throws IOException {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long allocated = bean.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		task.run();
+		stats[0] += System.nanoTime() - start;
+		stats[1] += bean.getThreadAllocatedBytes(thread) - allocated;
+	}
+	
+	private double mbPerSecond(long bytes, long nanos) {
+		return bytes / (double) MB / (nanos / 1e9);
+	}
+	
+	private interface IoRunnable {
+		void run() throws IOException;
+	}
+}
@@ -36,6 +36,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.List;
 
 import org.junit.Test;
@@ -47,6 +48,54 @@ import org.junit.Test;
  */
 public class FileUtilsTest {
 	
+	@Test
+	public void contentEquals() throws IOException{
+		Path dir = Files.createTempDirectory("DIR");
+		try {
+			byte[] big = new byte[20000];
+			big[19999] = 1;
+			Path f1 = Files.write(dir.resolve("f1"), big);
+			Path f2 = Files.write(dir.resolve("f2"), big);
+			big[19999] = 2;
+			Path f3 = Files.write(dir.resolve("f3"), big);
+			Path f4 = Files.write(dir.resolve("f4"), new byte[10]);
+			
+			assertThat(FileUtils.contentEquals(f1, f2), is(true));
+			assertThat(FileUtils.contentEquals(f1, f3), is(false));
+			assertThat(FileUtils.contentEquals(f1, f4), is(false));
+			assertThat(FileUtils.contentEquals(f1, dir.resolve("none")), is(false));
+			assertThat(FileUtils.contentEquals(f3, big), is(true));
+			assertThat(FileUtils.contentEquals(f4, big), is(false));
+		} finally {
+			FileUtils.delete(dir);
+		}
+	}
+	
+	@Test
+	public void replaceKeepsThePermissionsOfTheTarget() throws IOException{
+		Path dir = Files.createTempDirectory("DIR");
+		try {
+			Path target = Files.write(dir.resolve("target.conf"), "old".getBytes());
+			boolean posix = Files.getFileStore(target).supportsFileAttributeView("posix");
+			if(posix) {
+				Files.setPosixFilePermissions(target, PosixFilePermissions.fromString("rw-r-----"));
+			}
+			
+			Path tmp = FileUtils.createSiblingTempFile(target);
+			assertThat(tmp.getParent(), is(dir));
+			Files.write(tmp, "new".getBytes());
+			FileUtils.replace(tmp, target);
+			
+			assertThat(exists(tmp), is(false));
+			assertThat(new String(Files.readAllBytes(target)), is("new"));
+			if(posix) {
+				assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(target)), is("rw-r-----"));
+			}
+		} finally {
+			FileUtils.delete(dir);
+		}
+	}
+	
 	@Test
 	public void deleteFile() throws IOException{
 		Path file = createTempFile("FILE", ".tmp");
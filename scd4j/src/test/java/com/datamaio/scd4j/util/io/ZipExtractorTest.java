@@ -0,0 +1,224 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util.io;
+
+import static java.nio.file.Files.exists;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.datamaio.junit.IsLinux;
+import com.datamaio.junit.RunIfRule;
+import com.datamaio.junit.RunIfRule.RunIf;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class ZipExtractorTest {
+	@Rule
+	public RunIfRule rule = new RunIfRule();
+	private Path targetDir;
+	
+	@Before
+	public void before() throws Exception {
+		targetDir = Files.createTempDirectory("DIR");
+	}
+	
+	@After
+	public void after() throws Exception {
+		FileUtils.delete(targetDir);
+	}
+	
+	@Test
+	public void extract() throws Exception {
+		Path zipFile = resource("zip2test.zip");
+		
+		ZipExtractor.Stats stats = new ZipExtractor(4).extract(zipFile, targetDir);
+		assertThat(exists(PathUtils.get(targetDir, "/dir/subdir/img.jpg")), is(true));
+		assertThat(exists(PathUtils.get(targetDir, "/root.txt")), is(true));
+		assertThat(stats.getExtracted(), is(3));
+		assertThat(stats.getSkipped(), is(0));
+	}
+	
+	@Test
+	public void unchangedFilesAreSkipped() throws Exception {
+		Path zipFile = resource("zip2test.zip");
+		new ZipExtractor().extract(zipFile, targetDir);
+		Path changed = PathUtils.get(targetDir, "/root.txt");
+		Files.write(changed, "changed".getBytes());
+		
+		ZipExtractor.Stats stats = new ZipExtractor().extract(zipFile, targetDir);
+		assertThat(stats.getExtracted(), is(1));
+		assertThat(stats.getSkipped(), is(2));
+		assertThat(new String(Files.readAllBytes(changed)).equals("changed"), is(false));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void unixPermissionsAndLinks() throws Exception {
+		ZipExtractor.Stats stats = new ZipExtractor().extract(resource("unix.zip"), targetDir);
+		assertThat(stats.getExtracted(), is(3));
+		assertThat(mode(targetDir.resolve("bin/run.sh")), is("rwxr-xr-x"));
+		assertThat(mode(targetDir.resolve("conf/app.conf")), is("rw-r-----"));
+		assertThat(mode(targetDir.resolve("conf")), is("rwxr-x---"));
+		assertThat(Files.readSymbolicLink(targetDir.resolve("bin/current")), is(Paths.get("run.sh")));
+		assertThat(Files.getLastModifiedTime(targetDir.resolve("bin/run.sh")).toMillis() < System.currentTimeMillis() - 1000000, is(true));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void permissionsFromExtraFields() throws Exception {
+		Path zipFile = targetDir.resolve("extra.zip");
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+			ZipEntry entry = new ZipEntry("script.sh");
+			// ASi unix extra field: id, length, crc, mode (0100700), size of link, uid, gid
+			entry.setExtra(new byte[] { 0x6e, 0x75, 14, 0, 0, 0, 0, 0, (byte) 0xc0, (byte) 0x81, 0, 0, 0, 0, 0, 0, 0, 0 });
+			out.putNextEntry(entry);
+			out.write("echo hi".getBytes());
+			out.closeEntry();
+		}
+		
+		Path dest = targetDir.resolve("dest");
+		new ZipExtractor().extract(zipFile, dest);
+		assertThat(mode(dest.resolve("script.sh")), is("rwx------"));
+	}
+	
+	@Test(expected = RuntimeException.class)
+	public void entriesOutsideTheDestinationAreRejected() throws Exception {
+		Path zipFile = targetDir.resolve("slip.zip");
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+			out.putNextEntry(new ZipEntry("../evil.txt"));
+			out.write("evil".getBytes());
+			out.closeEntry();
+		}
+		new ZipExtractor().extract(zipFile, targetDir.resolve("dest"));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void entriesAreNotWrittenThroughLinksOfTheZip() throws Exception {
+		Path outside = Files.createDirectories(targetDir.resolve("outside"));
+		Path zipFile = targetDir.resolve("links.zip");
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+			out.putNextEntry(new ZipEntry("link"));
+			out.write(outside.toString().getBytes());
+			out.closeEntry();
+			out.putNextEntry(new ZipEntry("link/evil.txt"));
+			out.write("evil".getBytes());
+			out.closeEntry();
+		}
+		setUnixMode(zipFile, "link", 0120777);
+		
+		Path dest = targetDir.resolve("dest");
+		try {
+			new ZipExtractor(1).extract(zipFile, dest);
+			fail();
+		} catch (RuntimeException e) {
+			// the link is created last, where the directory of evil.txt already is
+		}
+		assertThat(exists(dest.resolve("link/evil.txt")), is(true));
+		assertThat(exists(outside.resolve("evil.txt")), is(false));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void entriesAreNotWrittenThroughExistingLinks() throws Exception {
+		Path outside = Files.createDirectories(targetDir.resolve("outside"));
+		Path dest = Files.createDirectories(targetDir.resolve("dest"));
+		Files.createSymbolicLink(dest.resolve("link"), outside);
+		Path zipFile = targetDir.resolve("slip.zip");
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+			out.putNextEntry(new ZipEntry("link/evil.txt"));
+			out.write("evil".getBytes());
+			out.closeEntry();
+		}
+		
+		try {
+			new ZipExtractor().extract(zipFile, dest);
+			fail();
+		} catch (RuntimeException e) {
+			assertThat(e.getMessage().contains("symbolic link"), is(true));
+		}
+		assertThat(exists(outside.resolve("evil.txt")), is(false));
+	}
+	
+	@Test
+	@RunIf(IsLinux.class)
+	public void existingLinksAreReplacedByFiles() throws Exception {
+		Path outside = Files.write(targetDir.resolve("outside.txt"), "outside".getBytes());
+		Path dest = Files.createDirectories(targetDir.resolve("dest"));
+		Files.createSymbolicLink(dest.resolve("file.txt"), outside);
+		Path zipFile = targetDir.resolve("file.zip");
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+			out.putNextEntry(new ZipEntry("file.txt"));
+			out.write("zip".getBytes());
+			out.closeEntry();
+		}
+		
+		new ZipExtractor().extract(zipFile, dest);
+		assertThat(Files.isSymbolicLink(dest.resolve("file.txt")), is(false));
+		assertThat(new String(Files.readAllBytes(dest.resolve("file.txt"))), is("zip"));
+		assertThat(new String(Files.readAllBytes(outside)), is("outside"));
+	}
+	
+	private Path resource(String name) throws Exception {
+		return Paths.get(ZipExtractorTest.class.getResource("/com/datamaio/fwk/io/" + name).toURI());
+	}
+	
+	/** Marks the entry as created on unix with the given mode, as {@link ZipOutputStream} does not */
+	private void setUnixMode(Path zipFile, String name, int mode) throws Exception {
+		byte[] bytes = Files.readAllBytes(zipFile);
+		ByteBuffer buff = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		byte[] entryName = name.getBytes(StandardCharsets.UTF_8);
+		for (int pos = 0; pos + 46 + entryName.length <= bytes.length; pos++) {
+			if (buff.getInt(pos) == 0x02014b50 && buff.getShort(pos + 28) == entryName.length
+					&& Arrays.equals(Arrays.copyOfRange(bytes, pos + 46, pos + 46 + entryName.length), entryName)) {
+				buff.put(pos + 5, (byte) 3);
+				buff.putInt(pos + 38, mode << 16);
+			}
+		}
+		Files.write(zipFile, bytes);
+	}
+	
+	private String mode(Path path) throws Exception {
+		return PosixFilePermissions.toString(Files.getPosixFilePermissions(path));
+	}
+}